@@ -0,0 +1,86 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Random;
+
+
+/**
+   Approximates the repulsion between the nodes of a graph layout
+   with a Barnes-Hut quadtree, treating groups of distant nodes as
+   single bodies.
+**/
+class BarnesHutRepulsion implements RepulsionAlgorithm
+{
+    private double theta;
+    private double cutoff;
+
+    // the tree over the points present, and the index of each of
+    // these points
+    private BarnesHutTree tree;
+    private int[] points;
+
+
+    /**
+       Creates the algorithm with the given accuracy parameter;
+       smaller values of theta give more accurate results.
+    **/
+    BarnesHutRepulsion(double theta)
+    {
+	this.theta = theta;
+    }
+
+
+    /**
+       Builds the quadtree over the points present. The work items
+       are these points.
+    **/
+    public int prepare(double[] x, double[] y, boolean[] present, int count,
+		       double cutoff)
+    {
+	this.cutoff = cutoff;
+	points = new int[count];
+	double[] xs = new double[count];
+	double[] ys = new double[count];
+	int n = 0;
+	for (int i = 0; i < count; i++) {
+	    if (! present[i])
+		continue;
+	    points[n] = i;
+	    xs[n] = x[i];
+	    ys[n] = y[i];
+	    n++;
+	}
+
+	tree = new BarnesHutTree(xs, ys, n);
+	return n;
+    }
+
+
+    public void addForces(int first, int last, double strength,
+			  Random random, double[] fx, double[] fy)
+    {
+	double[] force = new double[2];
+	for (int k = first; k < last; k++) {
+	    force[0] = 0;
+	    force[1] = 0;
+	    tree.addRepulsion(k, cutoff, theta, strength, random, force);
+	    fx[points[k]] += force[0];
+	    fy[points[k]] += force[1];
+	}
+    }
+}
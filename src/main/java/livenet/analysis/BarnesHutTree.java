@@ -0,0 +1,258 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Random;
+
+
+/**
+   A Barnes-Hut quadtree over a set of points, used to approximate the
+   repulsion forces between the nodes of a graph layout. Each cell of
+   the tree records the number of points inside it and their centre
+   of mass. When the repulsion on a point is calculated, a cell that
+   is far away relative to its size is treated as a single body at
+   its centre of mass, so that a whole layout can be processed in
+   O(n log n) rather than O(n^2) time.
+
+   As in the exact calculation, repulsion only acts between points
+   closer than a cutoff distance, and is inversely proportional to
+   their distance. Cells lying entirely within the cutoff are
+   approximated as a whole. Of small cells straddling it, only the
+   estimated share within the cutoff is counted; larger ones have
+   their points visited. The approximation therefore pays off when
+   many points lie within the cutoff distance of each other, as in
+   dense layouts. With about one point per cutoff distance squared,
+   as at the default edge length, the exact grid is just as fast.
+**/
+class BarnesHutTree
+{
+    // limits subdivision in case of (nearly) coincident points
+    private static final int MAX_DEPTH = 24;
+
+    // a cell straddling the cutoff distance is only approximated if
+    // its size is below this fraction of the cutoff distance
+    private static final double STRADDLE_FRACTION = 0.25;
+
+    private double[] x;
+    private double[] y;
+    private Cell root;
+
+
+    /**
+       Builds the tree over the first count points of the given
+       coordinate arrays.
+    **/
+    BarnesHutTree(double[] x, double[] y, int count)
+    {
+	this.x = x;
+	this.y = y;
+	if (count == 0)
+	    return;
+
+	double minX = x[0];
+	double minY = y[0];
+	double maxX = x[0];
+	double maxY = y[0];
+	for (int i = 1; i < count; i++) {
+	    minX = Math.min(minX, x[i]);
+	    minY = Math.min(minY, y[i]);
+	    maxX = Math.max(maxX, x[i]);
+	    maxY = Math.max(maxY, y[i]);
+	}
+	double size = Math.max(maxX - minX, maxY - minY) + 1;
+
+	root = new Cell(minX, minY, size);
+	for (int i = 0; i < count; i++)
+	    insert(root, i, 0);
+    }
+
+
+    private void insert(Cell cell, int i, int depth)
+    {
+	cell.mass++;
+	cell.sumX += x[i];
+	cell.sumY += y[i];
+
+	if (cell.children == null) {
+	    if (cell.bodyCount == 0 || depth == MAX_DEPTH) {
+		cell.addBody(i);
+		return;
+	    }
+	    // split the leaf and push its bodies down
+	    cell.children = new Cell[4];
+	    for (int b = 0; b < cell.bodyCount; b++)
+		insertIntoChild(cell, cell.bodies[b], depth);
+	    cell.bodies = null;
+	    cell.bodyCount = 0;
+	}
+	insertIntoChild(cell, i, depth);
+    }
+
+
+    private void insertIntoChild(Cell cell, int i, int depth)
+    {
+	double half = cell.size / 2;
+	int q = 0;
+	double cx = cell.x0;
+	double cy = cell.y0;
+	if (x[i] >= cell.x0 + half) {
+	    q += 1;
+	    cx += half;
+	}
+	if (y[i] >= cell.y0 + half) {
+	    q += 2;
+	    cy += half;
+	}
+	if (cell.children[q] == null)
+	    cell.children[q] = new Cell(cx, cy, half);
+	insert(cell.children[q], i, depth + 1);
+    }
+
+
+    /**
+       Adds the repulsion acting on point i to force[0] and force[1].
+       Points within the cutoff distance contribute strength * v /
+       |v|^2, where v is the vector from the other point to point i;
+       points coinciding with point i contribute a random nudge
+       instead. A cell is approximated by its centre of mass if its
+       size divided by its distance is below theta.
+    **/
+    void addRepulsion(int i, double cutoff, double theta, double strength,
+		      Random random, double[] force)
+    {
+	if (root != null)
+	    addRepulsion(root, i, cutoff * cutoff, theta * theta, strength,
+			 random, force);
+    }
+
+
+    private void addRepulsion(Cell cell, int i, double cutoff2,
+			      double theta2, double strength,
+			      Random random, double[] force)
+    {
+	double px = x[i];
+	double py = y[i];
+
+	// skip cells lying entirely beyond the cutoff distance
+	double bx = Math.max(0, Math.max(cell.x0 - px,
+					 px - (cell.x0 + cell.size)));
+	double by = Math.max(0, Math.max(cell.y0 - py,
+					 py - (cell.y0 + cell.size)));
+	if (bx * bx + by * by >= cutoff2)
+	    return;
+
+	if (cell.children == null) {
+	    for (int b = 0; b < cell.bodyCount; b++) {
+		int j = cell.bodies[b];
+		if (j == i)
+		    continue;
+		double vx = px - x[j];
+		double vy = py - y[j];
+		double len = vx * vx + vy * vy;
+		if (len == 0) {
+		    force[0] += random.nextDouble();
+		    force[1] += random.nextDouble();
+		} else if (len < cutoff2) {
+		    force[0] += strength * vx / len;
+		    force[1] += strength * vy / len;
+		}
+	    }
+	    return;
+	}
+
+	// A cell far enough away is approximated by its centre of mass;
+	// a cell containing the point itself is never far enough away.
+	// Of a small cell straddling the cutoff distance, the share
+	// within the cutoff is estimated from how far its centre of mass
+	// lies inside or beyond the cutoff, relative to the cell's size.
+	// Larger straddling cells have their points visited instead.
+	if (bx > 0 || by > 0) {
+	    double vx = px - cell.sumX / cell.mass;
+	    double vy = py - cell.sumY / cell.mass;
+	    double len = vx * vx + vy * vy;
+	    double fx = Math.max(Math.abs(px - cell.x0),
+				 Math.abs(px - (cell.x0 + cell.size)));
+	    double fy = Math.max(Math.abs(py - cell.y0),
+				 Math.abs(py - (cell.y0 + cell.size)));
+	    double share = 1;
+	    if (fx * fx + fy * fy >= cutoff2) {
+		double cutoff = Math.sqrt(cutoff2);
+		if (cell.size < STRADDLE_FRACTION * cutoff)
+		    share = (cutoff - Math.sqrt(len)) / cell.size + 0.5;
+		else
+		    share = -1;
+	    }
+	    if (share >= 0 && cell.size * cell.size < theta2 * len) {
+		if (share > 0) {
+		    double f = Math.min(share, 1) * cell.mass * strength / len;
+		    force[0] += f * vx;
+		    force[1] += f * vy;
+		}
+		return;
+	    }
+	}
+
+	for (int q = 0; q < 4; q++)
+	    if (cell.children[q] != null)
+		addRepulsion(cell.children[q], i, cutoff2, theta2, strength,
+			     random, force);
+    }
+
+
+    private static class Cell
+    {
+	// lower left corner and side length
+	double x0;
+	double y0;
+	double size;
+
+	// number of points in the cell, and the sums of their
+	// coordinates
+	int mass;
+	double sumX;
+	double sumY;
+
+	// the quadrants of an inner cell, or null for a leaf
+	Cell[] children;
+
+	// the points in a leaf; only leaves at the maximum depth
+	// hold more than one
+	int[] bodies;
+	int bodyCount;
+
+
+	Cell(double x0, double y0, double size)
+	{
+	    this.x0 = x0;
+	    this.y0 = y0;
+	    this.size = size;
+	}
+
+
+	void addBody(int i)
+	{
+	    if (bodies == null)
+		bodies = new int[1];
+	    else if (bodyCount == bodies.length) {
+		int[] more = new int[bodyCount * 2];
+		System.arraycopy(bodies, 0, more, 0, bodyCount);
+		bodies = more;
+	    }
+	    bodies[bodyCount++] = i;
+	}
+    }
+}
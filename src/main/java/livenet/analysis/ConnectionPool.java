@@ -0,0 +1,163 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.sql.*;
+import java.util.Vector;
+
+
+/**
+   A small pool of database connections, all opened with the same
+   connection parameters. Connections are opened on demand, up to the
+   maximum pool size; once that many are in use, callers wait until
+   one is released.
+
+   A connection the caller already has open can be lent to the pool,
+   so that it counts toward the pool size rather than sitting idle
+   while the pool opens another one. The pool never closes a lent
+   connection; that is left to its owner.
+**/
+public class ConnectionPool
+{
+    private String url;
+    private String user;
+    private String password;
+    private int maxConnections;
+
+    // a connection lent to the pool by its owner, or null
+    private Connection lent;
+
+    private Vector idle = new Vector();
+    private int open = 0;
+    private boolean closed = false;
+
+
+    public ConnectionPool(String url, String user, String password,
+			  int maxConnections)
+    {
+	this.url = url;
+	this.user = user;
+	this.password = password;
+	this.maxConnections = maxConnections;
+    }
+
+
+    /**
+       Creates a pool that hands out the given open connection as the
+       first of its connections.
+    **/
+    public ConnectionPool(Connection lent, String url, String user,
+			  String password, int maxConnections)
+    {
+	this(url, user, password, maxConnections);
+	this.lent = lent;
+	idle.addElement(lent);
+	open = 1;
+    }
+
+
+    public int getMaxConnections()
+    {
+	return maxConnections;
+    }
+
+
+    /**
+       Returns an idle connection, or opens a new one if there is room
+       in the pool. New connections are opened outside the pool's
+       lock, so that several can log in at once.
+    **/
+    public Connection getConnection() throws SQLException
+    {
+	synchronized (this) {
+	    while (true) {
+		if (closed)
+		    throw new SQLException("connection pool is closed");
+		if (idle.size() > 0) {
+		    Connection c = (Connection) idle.lastElement();
+		    idle.removeElementAt(idle.size() - 1);
+		    return c;
+		}
+		if (open < maxConnections) {
+		    // reserve the slot for the new connection
+		    open++;
+		    break;
+		}
+		try {
+		    wait();
+		}
+		catch (InterruptedException ex) {
+		    throw new SQLException("interrupted while waiting for " +
+					   "a connection");
+		}
+	    }
+	}
+
+	try {
+	    return DriverManager.getConnection(url, user, password);
+	}
+	catch (SQLException ex) {
+	    synchronized (this) {
+		open--;
+		notifyAll();
+	    }
+	    throw ex;
+	}
+    }
+
+
+    public synchronized void releaseConnection(Connection c)
+    {
+	if (c == null)
+	    return;
+	if (closed) {
+	    if (c != lent)
+		closeQuietly(c);
+	    open--;
+	    return;
+	}
+	idle.addElement(c);
+	notifyAll();
+    }
+
+
+    /**
+       Closes all idle connections. Connections still in use are
+       closed as they are released. A lent connection is left open.
+    **/
+    public synchronized void close()
+    {
+	closed = true;
+	for (int i = 0; i < idle.size(); i++)
+	    if (idle.elementAt(i) != lent)
+		closeQuietly((Connection) idle.elementAt(i));
+	open -= idle.size();
+	idle.removeAllElements();
+	notifyAll();
+    }
+
+
+    private static void closeQuietly(Connection c)
+    {
+	try {
+	    c.close();
+	}
+	catch (SQLException ex) {
+	    System.err.println("ConnectionPool: " + ex.getMessage());
+	}
+    }
+}
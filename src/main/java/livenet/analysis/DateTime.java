@@ -16,36 +16,92 @@ package livenet.analysis;
  * permissions and limitations under the License.
  */
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.sql.Date;
 import java.sql.Time;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
 
+/**
+   A point in time, to the second, kept as the number of seconds since
+   the "epoch" (1970/1/1,00:00:00). A calendar is only set up when the
+   date and time are read from the database, or shown.
+**/
 public class DateTime implements java.io.Serializable
 {
-    GregorianCalendar calendar;
+    // keeps serialized workspace trees saved by earlier versions readable
+    private static final long serialVersionUID = 2120131604742901629L;
+
+    // earlier versions kept a calendar, which is still what gets
+    // serialized
+    private static final ObjectStreamField[] serialPersistentFields = {
+	new ObjectStreamField("calendar", GregorianCalendar.class)
+    };
+
+    // the time the latest load of workspace data started at, which the
+    // ages of all the elements loaded are taken relative to
+    private static DateTime loadTime = new DateTime();
+
+    // used to combine the dates and times read from the database, which
+    // may be on several threads at once
+    private static final GregorianCalendar combiner = new GregorianCalendar();
+
+    private transient long seconds;
 
     public DateTime(Date date, Time time)
     {
-	GregorianCalendar dateCal = new GregorianCalendar();
-	dateCal.setTime(date);
-
-	GregorianCalendar timeCal = new GregorianCalendar();
-	timeCal.setTime(time);
-
-	calendar = new GregorianCalendar(dateCal.get(Calendar.YEAR),
-					 dateCal.get(Calendar.MONTH),
-					 dateCal.get(Calendar.DATE),
-					 timeCal.get(Calendar.HOUR),
-					 timeCal.get(Calendar.MINUTE),
-					 timeCal.get(Calendar.SECOND));
+	synchronized (combiner) {
+	    combiner.setTime(time);
+	    int hour = combiner.get(Calendar.HOUR);
+	    int minute = combiner.get(Calendar.MINUTE);
+	    int second = combiner.get(Calendar.SECOND);
+
+	    combiner.setTime(date);
+	    combiner.set(Calendar.HOUR_OF_DAY, hour);
+	    combiner.set(Calendar.MINUTE, minute);
+	    combiner.set(Calendar.SECOND, second);
+	    combiner.set(Calendar.MILLISECOND, 0);
+	    seconds = combiner.getTime().getTime() / 1000;
+	}
+    }
+
+
+    /**
+       Creates a DateTime object for the given number of seconds since
+       the "epoch" (1970/1/1,00:00:00).
+    **/
+    public DateTime(long seconds)
+    {
+	this.seconds = seconds;
     }
 
 
     public DateTime()
     {
-	calendar = new GregorianCalendar();
+	this(System.currentTimeMillis() / 1000);
+    }
+
+
+    /**
+       Takes the current time as the time that the ages of the elements
+       about to be loaded are taken relative to.
+    **/
+    static void startLoad()
+    {
+	loadTime = new DateTime();
+    }
+
+
+    /**
+       Returns the time the latest load of workspace data started at.
+    **/
+    static DateTime getLoadTime()
+    {
+	return loadTime;
     }
 
 
@@ -55,7 +111,7 @@ public class DateTime implements java.io.Serializable
     **/
     public long getSeconds()
     {
-	return (long) (calendar.getTime().getTime() / 1000);
+	return seconds;
     }
 
 
@@ -65,9 +121,7 @@ public class DateTime implements java.io.Serializable
     **/
     public int getDaysDiff(DateTime datetime)
     {
-	long mySeconds = this.getSeconds();
-	long otherSeconds = datetime.getSeconds();
-	long difference = Math.abs(otherSeconds - mySeconds);
+	long difference = Math.abs(datetime.seconds - seconds);
 	return (int) (difference / (60 * 60 * 24));
     }
 
@@ -78,15 +132,26 @@ public class DateTime implements java.io.Serializable
     **/
     public int getWeeksDiff(DateTime datetime)
     {
-	long mySeconds = this.getSeconds();
-	long otherSeconds = datetime.getSeconds();
-	long difference = Math.abs(otherSeconds - mySeconds);
+	long difference = Math.abs(datetime.seconds - seconds);
 	return (int) (difference / (60 * 60 * 24 * 7));
     }
 
 
+    /**
+       Returns the date of this DateTime object, without the time.
+    **/
+    public String toDateString()
+    {
+	GregorianCalendar calendar = toCalendar();
+	return calendar.get(Calendar.DATE) + "/" +
+	    (calendar.get(Calendar.MONTH) + 1) + "/" +
+	    calendar.get(Calendar.YEAR);
+    }
+
+
     public String toString()
     {
+	GregorianCalendar calendar = toCalendar();
 	return calendar.get(Calendar.DATE) + "/" +
 	    (calendar.get(Calendar.MONTH) + 1) + "/" +
 	    calendar.get(Calendar.YEAR) + " " +
@@ -94,4 +159,31 @@ public class DateTime implements java.io.Serializable
 	    calendar.get(Calendar.MINUTE) + ":" +
 	    calendar.get(Calendar.SECOND);
     }
+
+
+    private GregorianCalendar toCalendar()
+    {
+	GregorianCalendar calendar = new GregorianCalendar();
+	calendar.setTime(new java.util.Date(seconds * 1000));
+	return calendar;
+    }
+
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+	ObjectOutputStream.PutField fields = out.putFields();
+	fields.put("calendar", toCalendar());
+	out.writeFields();
+    }
+
+
+    private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException
+    {
+	ObjectInputStream.GetField fields = in.readFields();
+	GregorianCalendar calendar =
+	    (GregorianCalendar) fields.get("calendar", null);
+	if (calendar != null)
+	    seconds = calendar.getTime().getTime() / 1000;
+    }
 }
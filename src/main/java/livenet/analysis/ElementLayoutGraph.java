@@ -0,0 +1,182 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+
+/**
+   A graph of workspace element nodes, as seen by the layout engine.
+   Its edges are WorkspaceElementEdges, including the weighted
+   DiscussionParticipantEdges, which all exert a spring force as long
+   as both of their end nodes are visible.
+**/
+class ElementLayoutGraph implements LayoutGraph
+{
+    private Vector nodes;
+    private Vector edges;
+    private Component panel;
+
+    // node -> index in the node vector
+    private IdentityHashMap index = new IdentityHashMap();
+
+    // the nodes, visible or not, filed by position
+    private PointGrid grid =
+	new PointGrid(TreeGraphConstants.initialEdgeLength);
+
+
+    /**
+       Creates the graph over the given vectors of
+       WorkspaceElementNodes and WorkspaceElementEdges, which are
+       shown in the given panel.
+    **/
+    ElementLayoutGraph(Vector nodes, Vector edges, Component panel)
+    {
+	this.nodes = nodes;
+	this.edges = edges;
+	this.panel = panel;
+	for (int i = 0; i < nodes.size(); i++) {
+	    index.put(nodes.elementAt(i), Integer.valueOf(i));
+	    grid.update(i, node(i).x, node(i).y, true);
+	}
+    }
+
+
+    /**
+       Returns the grid the nodes are filed in by position, which is
+       kept up to date as the layout moves them.
+    **/
+    PointGrid getGrid()
+    {
+	return grid;
+    }
+
+
+    private WorkspaceElementNode node(int i)
+    {
+	return (WorkspaceElementNode) nodes.elementAt(i);
+    }
+
+
+    private WorkspaceElementEdge edge(int i)
+    {
+	return (WorkspaceElementEdge) edges.elementAt(i);
+    }
+
+
+    public int getNodeCount()
+    {
+	return nodes.size();
+    }
+
+
+    public int indexOf(Object node)
+    {
+	return ((Integer) index.get(node)).intValue();
+    }
+
+
+    public double getX(int node)
+    {
+	return node(node).x;
+    }
+
+
+    public double getY(int node)
+    {
+	return node(node).y;
+    }
+
+
+    public void setLocation(int node, double x, double y)
+    {
+	WorkspaceElementNode n = node(node);
+	int shiftX = (int) x - (int) n.x;
+	int shiftY = (int) y - (int) n.y;
+	n.x = x;
+	n.y = y;
+	n.x1 += shiftX;
+	n.x2 += shiftX;
+	n.y1 += shiftY;
+	n.y2 += shiftY;
+	grid.update(node, x, y, true);
+    }
+
+
+    public boolean isVisible(int node)
+    {
+	return node(node).isVisible();
+    }
+
+
+    public boolean isFixed(int node)
+    {
+	return node(node).fixed;
+    }
+
+
+    public int getEdgeCount()
+    {
+	return edges.size();
+    }
+
+
+    public int getEdgeFrom(int edge)
+    {
+	return indexOf(edge(edge).fromNode);
+    }
+
+
+    public int getEdgeTo(int edge)
+    {
+	return indexOf(edge(edge).toNode);
+    }
+
+
+    public boolean isEdgeActive(int edge)
+    {
+	WorkspaceElementEdge e = edge(edge);
+	return e.fromNode.isVisible() && e.toNode.isVisible();
+    }
+
+
+    public double getEdgeLength(int edge)
+    {
+	return edge(edge).length;
+    }
+
+
+    public double getEdgeElasticity(int edge)
+    {
+	return 10;
+    }
+
+
+    public Rectangle getArea()
+    {
+	return new Rectangle(panel.getSize());
+    }
+
+
+    public void layoutChanged()
+    {
+	panel.repaint();
+    }
+}
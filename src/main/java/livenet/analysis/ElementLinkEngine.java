@@ -0,0 +1,605 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+   Derives the links between workspaces that share elements such as
+   goals, documents or participants.
+
+   For each link type, the elements are collected into a sparse
+   workspace x element incidence matrix A, whose entries count how
+   often a workspace has an element. The matrix is kept in compressed
+   sparse row form, along with its transpose. The weights of the
+   links are then the entries of the product A x A^T above the
+   diagonal: the number of pairs of occurrences of the shared
+   elements. A workspace that has an element more than once is
+   linked to itself, with a weight of the number of pairs among its
+   own occurrences of the elements.
+
+   The link types are multiplied in parallel. Within a type, the
+   links are ordered by their first shared element, in order of first
+   occurrence of the elements, and then by workspace, so that they
+   come out in the same order as when the occurrences of each element
+   are linked pairwise.
+
+   The link objects, i.e. the keys of the shared elements, are only
+   produced when they are first accessed (see loadLinkObjects()).
+
+   Instead of deriving all links, the incidence matrices can also
+   serve as a hypergraph, in which each element is a hyperedge over
+   the workspaces that have it: the links of single pairs of
+   workspaces are then derived on demand (see WorkspaceHypergraph).
+**/
+class ElementLinkEngine implements LinkObjectLoader
+{
+    // link types, in the order in which their links are created
+    private int[] types;
+
+    private TypeMatrix[] matrices;
+
+    // id of the first link of each type
+    private int[] firstLink;
+
+
+    ElementLinkEngine(int[] types)
+    {
+	this.types = types;
+	matrices = new TypeMatrix[types.length];
+	for (int t = 0; t < types.length; t++)
+	    matrices[t] = new TypeMatrix();
+    }
+
+
+    int getTypeCount()
+    {
+	return types.length;
+    }
+
+
+    int getType(int t)
+    {
+	return types[t];
+    }
+
+
+    /**
+       Records that the workspace of the given number has the element
+       of the given key, for the link type of the given index. The
+       elements must be added in order of workspace number.
+    **/
+    void addElement(int t, String key, int workspace)
+    {
+	matrices[t].addElement(key, workspace);
+    }
+
+
+    /**
+       Returns the index of the given link type, or -1 if the links
+       of that type aren't derived here.
+    **/
+    int getTypeIndex(int type)
+    {
+	for (int t = 0; t < types.length; t++)
+	    if (types[t] == type)
+		return t;
+	return -1;
+    }
+
+
+    /**
+       Builds the incidence matrices of all types, the types in
+       parallel. Once built, no more elements can be added.
+    **/
+    void buildMatrices()
+    {
+	forEachType(false);
+    }
+
+
+    /**
+       Returns an upper bound on the number of links deriveLinks()
+       would derive: the number of pairs of occurrences of each
+       element.
+    **/
+    long getPairBound()
+    {
+	buildMatrices();
+	long pairs = 0;
+	for (int t = 0; t < types.length; t++)
+	    pairs += matrices[t].getPairBound();
+	return pairs;
+    }
+
+
+    /**
+       Derives the links of all types, the types in parallel.
+    **/
+    void deriveLinks()
+    {
+	forEachType(true);
+
+	firstLink = new int[types.length + 1];
+	for (int t = 0; t < types.length; t++)
+	    firstLink[t + 1] = firstLink[t] + matrices[t].linkCount;
+    }
+
+
+    /**
+       Builds the matrices of all types, and derives their links if
+       requested, on a thread per type.
+    **/
+    private void forEachType(final boolean derive)
+    {
+	int threads = Math.min(types.length,
+			       Runtime.getRuntime().availableProcessors());
+	if (threads <= 1) {
+	    for (int t = 0; t < types.length; t++)
+		matrices[t].build(derive);
+	}
+	else {
+	    ExecutorService executor = Executors.newFixedThreadPool(threads);
+	    try {
+		Future[] results = new Future[types.length];
+		for (int t = 0; t < types.length; t++) {
+		    final TypeMatrix matrix = matrices[t];
+		    results[t] = executor.submit(new Callable() {
+			    public Object call()
+			    {
+				matrix.build(derive);
+				return null;
+			    }
+			});
+		}
+		for (int t = 0; t < types.length; t++)
+		    results[t].get();
+	    }
+	    catch (InterruptedException ex) {
+		throw new RuntimeException(ex);
+	    }
+	    catch (ExecutionException ex) {
+		throw new RuntimeException(ex.getCause());
+	    }
+	    finally {
+		executor.shutdown();
+	    }
+	}
+    }
+
+
+    int getLinkCount(int t)
+    {
+	return matrices[t].linkCount;
+    }
+
+
+    /**
+       Returns the lower workspace number of a link; the workspace
+       that appears first in the occurrences of the first shared
+       element.
+    **/
+    int getFrom(int t, int link)
+    {
+	return matrices[t].linkFrom[link];
+    }
+
+
+    int getTo(int t, int link)
+    {
+	return matrices[t].linkTo[link];
+    }
+
+
+    int getWeight(int t, int link)
+    {
+	return matrices[t].linkWeight[link];
+    }
+
+
+    /**
+       Returns the loader id of a link of the given type.
+    **/
+    int getLinkId(int t, int link)
+    {
+	return firstLink[t] + link;
+    }
+
+
+    /**
+       Adds the keys of the elements shared by the workspaces of a
+       link to the given vector, each key as often as the link's
+       weight counts it.
+    **/
+    public void loadLinkObjects(int link, Vector objects)
+    {
+	int t = 0;
+	while (link >= firstLink[t + 1])
+	    t++;
+	TypeMatrix matrix = matrices[t];
+	link -= firstLink[t];
+	matrix.loadLinkObjects(matrix.linkFrom[link], matrix.linkTo[link],
+			       objects);
+    }
+
+
+    /**
+       Returns the weight of the link of the given type between the
+       workspaces of the given numbers, which is 0 if they share no
+       element of that type.
+    **/
+    int getWeight(int t, int one, int other)
+    {
+	return matrices[t].getWeight(one, other);
+    }
+
+
+    /**
+       Adds the link objects of the link of the given type between
+       the workspaces of the given numbers to the given vector.
+    **/
+    void loadLinkObjects(int t, int one, int other, Vector objects)
+    {
+	matrices[t].loadLinkObjects(one, other, objects);
+    }
+
+
+    /**
+       Adds the numbers of the workspaces linked to the workspace of
+       the given number by elements of the given type to the given
+       vector, including the workspace itself if it has an element
+       more than once. Not to be called by more than one thread at
+       a time.
+    **/
+    void addLinkedWorkspaces(int t, int workspace, IntVector linked)
+    {
+	matrices[t].addLinkedWorkspaces(workspace, linked);
+    }
+
+
+
+    /**
+       The incidence matrix and the derived links of one link type.
+    **/
+    private static class TypeMatrix
+    {
+	// element key -> Integer element number
+	private HashMap elementIndex = new HashMap();
+
+	// element keys by element number
+	private Vector keys = new Vector();
+
+	// occurrences of the elements, in the order they were added
+	private IntVector occurrenceWorkspaces = new IntVector();
+	private IntVector occurrenceElements = new IntVector();
+
+	// the incidence matrix by row, i.e. by workspace: the
+	// elements of each workspace in ascending order, and how
+	// often the workspace has them
+	private int[] rowStart;
+	private int[] rowElements;
+	private int[] rowCounts;
+
+	// the incidence matrix by column, i.e. by element: the
+	// workspaces having each element in ascending order
+	private int[] columnStart;
+	private int[] columnWorkspaces;
+	private int[] columnCounts;
+
+	// the derived links
+	int linkCount;
+	int[] linkFrom;
+	int[] linkTo;
+	int[] linkWeight;
+
+	// marks the workspaces found by addLinkedWorkspaces()
+	private int[] mark;
+	private int markStamp = 0;
+
+
+	void addElement(String key, int workspace)
+	{
+	    Integer element = (Integer) elementIndex.get(key);
+	    if (element == null) {
+		element = Integer.valueOf(keys.size());
+		elementIndex.put(key, element);
+		keys.addElement(key);
+	    }
+	    occurrenceWorkspaces.addElement(workspace);
+	    occurrenceElements.addElement(element.intValue());
+	}
+
+
+	void build(boolean derive)
+	{
+	    if (rowStart == null) {
+		buildRows();
+		buildColumns();
+	    }
+	    if (derive && linkFrom == null)
+		multiply();
+	}
+
+
+	long getPairBound()
+	{
+	    long pairs = 0;
+	    for (int e = 0; e < keys.size(); e++) {
+		long occurrences = 0;
+		for (int c = columnStart[e]; c < columnStart[e + 1]; c++)
+		    occurrences += columnCounts[c];
+		pairs += occurrences * (occurrences - 1) / 2;
+	    }
+	    return pairs;
+	}
+
+
+	void addLinkedWorkspaces(int a, IntVector linked)
+	{
+	    int workspaceCount = rowStart.length - 1;
+	    if (a >= workspaceCount)
+		return;
+	    if (mark == null)
+		mark = new int[workspaceCount];
+	    if (++markStamp == 0) {
+		Arrays.fill(mark, 0);
+		markStamp = 1;
+	    }
+	    for (int i = rowStart[a]; i < rowStart[a + 1]; i++) {
+		int e = rowElements[i];
+		for (int c = columnStart[e]; c < columnStart[e + 1]; c++) {
+		    int b = columnWorkspaces[c];
+		    if (mark[b] == markStamp ||
+			(b == a && rowCounts[i] < 2))
+			continue;
+		    mark[b] = markStamp;
+		    linked.addElement(b);
+		}
+	    }
+	}
+
+
+	/**
+	   Builds the rows of the incidence matrix from the
+	   occurrences, which come ordered by workspace.
+	**/
+	private void buildRows()
+	{
+	    int occurrences = occurrenceWorkspaces.size();
+	    int workspaceCount = (occurrences == 0) ? 0 :
+		occurrenceWorkspaces.elementAt(occurrences - 1) + 1;
+
+	    rowStart = new int[workspaceCount + 1];
+	    rowElements = new int[occurrences];
+	    rowCounts = new int[occurrences];
+
+	    // rowStart is set up to this workspace
+	    int filled = 0;
+	    int entries = 0;
+	    int[] elements = new int[occurrences];
+	    for (int first = 0; first < occurrences; ) {
+		int workspace = occurrenceWorkspaces.elementAt(first);
+		if (workspace < 0 ||
+		    (first > 0 &&
+		     workspace < occurrenceWorkspaces.elementAt(first - 1)))
+		    throw new IllegalStateException("elements not added " +
+						    "in workspace order");
+
+		int last = first;
+		while (last < occurrences &&
+		       occurrenceWorkspaces.elementAt(last) == workspace) {
+		    elements[last] = occurrenceElements.elementAt(last);
+		    last++;
+		}
+		Arrays.sort(elements, first, last);
+
+		while (filled < workspace)
+		    rowStart[++filled] = entries;
+		for (int i = first; i < last; i++) {
+		    if (i > first && elements[i] == elements[i - 1])
+			rowCounts[entries - 1]++;
+		    else {
+			rowElements[entries] = elements[i];
+			rowCounts[entries] = 1;
+			entries++;
+		    }
+		}
+		rowStart[++filled] = entries;
+		first = last;
+	    }
+
+	    occurrenceWorkspaces = null;
+	    occurrenceElements = null;
+	}
+
+
+	/**
+	   Builds the transpose of the incidence matrix by counting
+	   sort; walking the rows in order leaves the workspaces of
+	   each column in ascending order.
+	**/
+	private void buildColumns()
+	{
+	    int workspaceCount = rowStart.length - 1;
+	    int entries = rowStart[workspaceCount];
+
+	    columnStart = new int[keys.size() + 1];
+	    for (int i = 0; i < entries; i++)
+		columnStart[rowElements[i] + 1]++;
+	    for (int e = 0; e < keys.size(); e++)
+		columnStart[e + 1] += columnStart[e];
+
+	    columnWorkspaces = new int[entries];
+	    columnCounts = new int[entries];
+	    int[] next = (int[]) columnStart.clone();
+	    for (int w = 0; w < workspaceCount; w++)
+		for (int i = rowStart[w]; i < rowStart[w + 1]; i++) {
+		    int j = next[rowElements[i]]++;
+		    columnWorkspaces[j] = w;
+		    columnCounts[j] = rowCounts[i];
+		}
+	}
+
+
+	/**
+	   Multiplies the incidence matrix with its transpose, keeping
+	   the entries on and above the diagonal.
+	**/
+	private void multiply()
+	{
+	    int workspaceCount = rowStart.length - 1;
+
+	    // the links found so far, by row
+	    IntVector from = new IntVector();
+	    IntVector to = new IntVector();
+	    IntVector weight = new IntVector();
+	    IntVector firstElement = new IntVector();
+
+	    // accumulator of the current row
+	    int[] rowWeight = new int[workspaceCount];
+	    int[] rowFirst = new int[workspaceCount];
+	    int[] mark = new int[workspaceCount];
+	    int[] touched = new int[workspaceCount];
+
+	    for (int a = 0; a < workspaceCount; a++) {
+		int touchedCount = 0;
+		for (int i = rowStart[a]; i < rowStart[a + 1]; i++) {
+		    int e = rowElements[i];
+		    int countA = rowCounts[i];
+		    int c = firstAtOrAbove(e, a);
+		    for (; c < columnStart[e + 1]; c++) {
+			int b = columnWorkspaces[c];
+			int w = (b == a) ? countA * (countA - 1) / 2 :
+			    countA * columnCounts[c];
+			if (w == 0)
+			    continue;
+			if (mark[b] != a + 1) {
+			    mark[b] = a + 1;
+			    rowWeight[b] = 0;
+			    rowFirst[b] = e;
+			    touched[touchedCount++] = b;
+			}
+			rowWeight[b] += w;
+		    }
+		}
+		for (int k = 0; k < touchedCount; k++) {
+		    int b = touched[k];
+		    from.addElement(a);
+		    to.addElement(b);
+		    weight.addElement(rowWeight[b]);
+		    firstElement.addElement(rowFirst[b]);
+		}
+	    }
+
+	    // order the links by first shared element; within a row
+	    // they are touched in order of first shared element and
+	    // workspace, and the rows are in order of workspace
+	    linkCount = from.size();
+	    int[] start = new int[keys.size() + 1];
+	    for (int k = 0; k < linkCount; k++)
+		start[firstElement.elementAt(k) + 1]++;
+	    for (int e = 0; e < keys.size(); e++)
+		start[e + 1] += start[e];
+
+	    linkFrom = new int[linkCount];
+	    linkTo = new int[linkCount];
+	    linkWeight = new int[linkCount];
+	    for (int k = 0; k < linkCount; k++) {
+		int j = start[firstElement.elementAt(k)]++;
+		linkFrom[j] = from.elementAt(k);
+		linkTo[j] = to.elementAt(k);
+		linkWeight[j] = weight.elementAt(k);
+	    }
+	}
+
+
+	/**
+	   Returns the position of the first workspace in the column
+	   of the given element whose number is at least the given
+	   one.
+	**/
+	private int firstAtOrAbove(int e, int workspace)
+	{
+	    int low = columnStart[e];
+	    int high = columnStart[e + 1];
+	    while (low < high) {
+		int mid = (low + high) >>> 1;
+		if (columnWorkspaces[mid] < workspace)
+		    low = mid + 1;
+		else
+		    high = mid;
+	    }
+	    return low;
+	}
+
+
+	int getWeight(int a, int b)
+	{
+	    return mergeRows(a, b, null);
+	}
+
+
+	void loadLinkObjects(int a, int b, Vector objects)
+	{
+	    mergeRows(a, b, objects);
+	}
+
+
+	/**
+	   Returns the weight of the link between the given
+	   workspaces by merging their rows, and adds the keys of the
+	   shared elements to the given vector unless it is null.
+	**/
+	private int mergeRows(int a, int b, Vector objects)
+	{
+	    int workspaceCount = rowStart.length - 1;
+	    if (a >= workspaceCount || b >= workspaceCount)
+		return 0;
+
+	    int weight = 0;
+	    int i = rowStart[a];
+	    int j = rowStart[b];
+	    while (i < rowStart[a + 1] && j < rowStart[b + 1]) {
+		if (rowElements[i] < rowElements[j])
+		    i++;
+		else if (rowElements[i] > rowElements[j])
+		    j++;
+		else {
+		    int w = (a == b) ? rowCounts[i] * (rowCounts[i] - 1) / 2 :
+			rowCounts[i] * rowCounts[j];
+		    weight += w;
+		    if (objects != null) {
+			Object key = keys.elementAt(rowElements[i]);
+			for (int k = 0; k < w; k++)
+			    objects.addElement(key);
+		    }
+		    i++;
+		    j++;
+		}
+	    }
+	    return weight;
+	}
+    }
+}
@@ -17,23 +17,204 @@ package livenet.analysis;
  */
 
 import java.awt.*;
+import java.text.NumberFormat;
 import javax.swing.*;
 
 
+/**
+   Plots the cumulative growth of a workspace over time: the number of
+   workspace elements (roles, participants, documents, discussions and
+   actions) and the number of messages sent and received, from the
+   creation of the workspace up to the time of the latest load.
+**/
 public class EvolutionGraph extends JFrame
 {
+    // series of the graph
+    static final int ELEMENTS = 0;
+    static final int MESSAGES = 1;
+
+    // the element types counting toward each series
+    private static final int[][] seriesTypes = {
+	{ EvolutionIndex.ROLE, EvolutionIndex.PARTICIPANT,
+	  EvolutionIndex.DOCUMENT, EvolutionIndex.DISCUSSION,
+	  EvolutionIndex.ACTION },
+	{ EvolutionIndex.SENT_MESSAGE, EvolutionIndex.RECEIVED_MESSAGE }
+    };
+
+    private static final String[] seriesNames = { "Elements", "Messages" };
+    private static final Color[] seriesColours = { Color.red, Color.blue };
+
+    private static final long SECONDS_PER_DAY = 60 * 60 * 24;
+
+    // number of intervals the time span of the graph is divided into
+    private int numIntervals = 100;
+
     private WorkspaceNode node;
+
+    // for each series, the number of elements at the start of the
+    // graph's time span and at the end of each interval
     private int[][] evolutionData;
+    private long startTime;
+    private long endTime;
 
     public EvolutionGraph(WorkspaceNode node)
     {
+	super("Evolution of " + node.getWorkspace() + "[" + node.getOwner() +
+	      "]");
 	this.node = node;
 	prepareEvolutionData(node);
+
+	EvolutionIndex index = node.getEvolutionIndex();
+	int days = node.getRecencyInterval();
+	float evolR = 0;
+	for (int i = 0; i < seriesTypes[ELEMENTS].length; i++)
+	    evolR += index.getRecency(seriesTypes[ELEMENTS][i], days);
+	float msgR = 0;
+	for (int i = 0; i < seriesTypes[MESSAGES].length; i++)
+	    msgR += index.getRecency(seriesTypes[MESSAGES][i], days);
+
+	NumberFormat formatter = NumberFormat.getNumberInstance();
+	JLabel recency = new JLabel("Recency over the last " + days +
+				    " days: elements " +
+				    formatter.format(evolR) + ", messages " +
+				    formatter.format(msgR));
+
+	this.getContentPane().add(BorderLayout.CENTER, new EvolutionPanel());
+	this.getContentPane().add(BorderLayout.SOUTH, recency);
+	this.setSize(500, 350);
     }
 
 
+    /**
+       Counts the elements of each series at the ends of the intervals
+       of the graph's time span, which runs from the creation of the
+       workspace, or its earliest element if that is older, to the
+       time of the latest load.
+    **/
     private void prepareEvolutionData(WorkspaceNode node)
     {
-	
+	EvolutionIndex index = node.getEvolutionIndex();
+
+	endTime = index.getNow();
+	startTime = index.getFirstTime();
+	DateTime created = node.getCreationDateTime();
+	if (created != null && created.getSeconds() < startTime)
+	    startTime = created.getSeconds();
+	if (endTime - startTime < SECONDS_PER_DAY)
+	    startTime = endTime - SECONDS_PER_DAY;
+
+	evolutionData = new int[seriesTypes.length][numIntervals + 1];
+	for (int i = 0; i <= numIntervals; i++) {
+	    long time = startTime + (endTime - startTime) * i / numIntervals;
+	    for (int s = 0; s < seriesTypes.length; s++)
+		for (int j = 0; j < seriesTypes[s].length; j++)
+		    evolutionData[s][i] +=
+			index.countBefore(seriesTypes[s][j], time + 1);
+	}
+    }
+
+
+    /**
+       Draws the series as lines over time, with the number of elements
+       on the left and the dates of the start and end of the time span
+       at the bottom.
+    **/
+    class EvolutionPanel extends JPanel
+    {
+	int numYTicks = 10;   // number of tick marks on y axis
+
+	// various measures (in pixels)
+	int xMargin = 10;     // base horizontal margin
+	int yMargin = 10;     // base vertical margin
+	int markLength = 5;   // length of the tick mark
+	int labelGap = 2;     // gap between the tick mark and number label
+
+	Font scaleFont = new Font("SansSerif", Font.PLAIN, 8);
+	Font labelFont = new Font("SansSerif", Font.PLAIN, 10);
+
+
+	public void paintComponent(Graphics g)
+	{
+	    super.paintComponent(g);
+
+	    int maxCount = 1;
+	    for (int s = 0; s < evolutionData.length; s++)
+		if (evolutionData[s][numIntervals] > maxCount)
+		    maxCount = evolutionData[s][numIntervals];
+
+	    g.setFont(scaleFont);
+	    FontMetrics fm1 = g.getFontMetrics();
+	    g.setFont(labelFont);
+	    FontMetrics fm2 = g.getFontMetrics();
+
+	    Insets insets = this.getInsets();
+	    int leftX = insets.left + xMargin +
+		fm1.stringWidth(String.valueOf(maxCount)) + labelGap +
+		markLength;
+	    int topY = insets.top + yMargin;
+	    int graphWidth = this.getWidth() - insets.right - xMargin - leftX;
+	    int graphHeight = this.getHeight() - insets.bottom - yMargin -
+		fm2.getHeight() - labelGap - fm1.getHeight() - labelGap -
+		markLength - topY;
+	    if (graphWidth <= 0 || graphHeight <= 0)
+		return;
+
+	    // box around the graph
+	    g.setColor(Color.black);
+	    g.drawRect(leftX - 1, topY - 1, graphWidth + 1, graphHeight + 1);
+
+	    // scale on left edge of graph
+	    g.setFont(scaleFont);
+	    int yFontOffset = (int) (fm1.getAscent() / 2);
+	    int increment = 1;
+	    if (maxCount > numYTicks)
+		increment = (maxCount + numYTicks - 1) / numYTicks;
+	    for (int i = 0; i <= maxCount; i += increment) {
+		int markY = topY + (graphHeight - 1) -
+		    (int) (((long) i * (graphHeight - 1)) / maxCount);
+		g.drawLine(leftX, markY, leftX - markLength, markY);
+		String label = String.valueOf(i);
+		g.drawString(label, leftX - (markLength + labelGap +
+					     fm1.stringWidth(label)),
+			     markY + yFontOffset);
+	    }
+
+	    // dates of the start and end of the time span at the bottom
+	    int dateY = topY + graphHeight + markLength + labelGap +
+		fm1.getAscent();
+	    g.drawLine(leftX, topY + graphHeight,
+		       leftX, topY + graphHeight + markLength);
+	    g.drawLine(leftX + graphWidth - 1, topY + graphHeight,
+		       leftX + graphWidth - 1, topY + graphHeight + markLength);
+	    g.drawString(new DateTime(startTime).toDateString(), leftX, dateY);
+	    String endLabel = new DateTime(endTime).toDateString();
+	    g.drawString(endLabel, leftX + graphWidth - fm1.stringWidth(endLabel),
+			 dateY);
+
+	    // the series, with their names below the dates
+	    g.setFont(labelFont);
+	    int nameX = leftX;
+	    int nameY = dateY + fm1.getDescent() + labelGap + fm2.getAscent();
+	    for (int s = 0; s < evolutionData.length; s++) {
+		g.setColor(seriesColours[s]);
+		int prevX = leftX;
+		int prevY = topY + (graphHeight - 1) -
+		    (int) (((long) evolutionData[s][0] * (graphHeight - 1)) /
+			   maxCount);
+		for (int i = 1; i <= numIntervals; i++) {
+		    int x = leftX + (i * (graphWidth - 1)) / numIntervals;
+		    int y = topY + (graphHeight - 1) -
+			(int) (((long) evolutionData[s][i] * (graphHeight - 1)) /
+			       maxCount);
+		    g.drawLine(prevX, prevY, x, y);
+		    prevX = x;
+		    prevY = y;
+		}
+		String name = seriesNames[s] + " (" +
+		    evolutionData[s][numIntervals] + ")";
+		g.drawString(name, nameX, nameY);
+		nameX += fm2.stringWidth(name) + 4 * labelGap + xMargin;
+	    }
+	}
     }
 }
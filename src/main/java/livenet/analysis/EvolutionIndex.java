@@ -0,0 +1,199 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Vector;
+
+
+/**
+   Time index of the evolution of a workspace. For each type of
+   element, it holds the times at which the workspace's elements of
+   that type were created, or sent for messages, in ascending order.
+   A binary search then finds how many elements there were at any
+   time, or were added in any period.
+
+   For the recency measures, the index also keeps running totals of
+   the log-deflated ages of the elements. The ages are taken relative
+   to the time the index is built for, so the recency over any number
+   of days is found by binary search as well.
+**/
+class EvolutionIndex
+{
+    // element types
+    static final int ROLE = 0;
+    static final int PARTICIPANT = 1;
+    static final int DOCUMENT = 2;
+    static final int DISCUSSION = 3;
+    static final int ACTION = 4;
+    static final int SENT_MESSAGE = 5;
+    static final int RECEIVED_MESSAGE = 6;
+    static final int TYPES = 7;
+
+    private static final long SECONDS_PER_DAY = 60 * 60 * 24;
+
+    // the time the ages of the elements are taken relative to
+    private long now;
+
+    // for each type, the times of the elements in seconds since the
+    // epoch, in ascending order
+    private long[][] times = new long[TYPES][];
+
+    // for each type, the sum of log(age + 1) of the first i elements at
+    // index i, with the age in whole days
+    private double[][] logAgeSums = new double[TYPES][];
+
+
+    EvolutionIndex(WorkspaceNode node, DateTime now)
+    {
+	this.now = now.getSeconds();
+	index(ROLE, node.getRoles());
+	index(PARTICIPANT, node.getParticipants());
+	index(DOCUMENT, node.getDocuments());
+	index(DISCUSSION, node.getDiscussions());
+	index(ACTION, node.getActions());
+	index(SENT_MESSAGE, node.getSentMessages());
+	index(RECEIVED_MESSAGE, node.getReceivedMessages());
+    }
+
+
+    private void index(int type, Vector elements)
+    {
+	long[] t = new long[elements.size()];
+	int n = 0;
+	for (int i = 0; i < elements.size(); i++) {
+	    DateTime datetime = timeOf(elements.elementAt(i));
+	    if (datetime != null)
+		t[n++] = datetime.getSeconds();
+	}
+	if (n < t.length) {
+	    long[] all = t;
+	    t = new long[n];
+	    System.arraycopy(all, 0, t, 0, n);
+	}
+	Arrays.sort(t);
+
+	double[] sums = new double[n + 1];
+	for (int i = 0; i < n; i++) {
+	    long age = Math.abs(now - t[i]) / SECONDS_PER_DAY;
+	    sums[i + 1] = sums[i] + Math.log(age + 1);
+	}
+
+	times[type] = t;
+	logAgeSums[type] = sums;
+    }
+
+
+    private static DateTime timeOf(Object element)
+    {
+	if (element instanceof Role)
+	    return ((Role) element).creationDateTime;
+	else if (element instanceof Participant)
+	    return ((Participant) element).creationDateTime;
+	else if (element instanceof WorkspaceObject)
+	    return ((WorkspaceObject) element).creationDateTime;
+	else if (element instanceof Message)
+	    return ((Message) element).sentDateTime;
+	return null;
+    }
+
+
+    /**
+       Returns the time the ages of the elements are taken relative
+       to, in seconds since the epoch.
+    **/
+    long getNow()
+    {
+	return now;
+    }
+
+
+    /**
+       Returns the number of elements of the given type.
+    **/
+    int getCount(int type)
+    {
+	return times[type].length;
+    }
+
+
+    /**
+       Returns the time of the earliest element of any type, or of the
+       reference time if there are no elements, in seconds since the
+       epoch.
+    **/
+    long getFirstTime()
+    {
+	long first = now;
+	for (int type = 0; type < TYPES; type++)
+	    if (times[type].length > 0 && times[type][0] < first)
+		first = times[type][0];
+	return first;
+    }
+
+
+    /**
+       Returns the number of elements of the given type that are dated
+       before the given time, in seconds since the epoch.
+    **/
+    int countBefore(int type, long time)
+    {
+	long[] t = times[type];
+	int low = 0;
+	int high = t.length;
+	while (low < high) {
+	    int mid = (low + high) >>> 1;
+	    if (t[mid] < time)
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+	return low;
+    }
+
+
+    /**
+       Returns the number of elements of the given type that are dated
+       from the first up to, but excluding, the second of the given
+       times.
+    **/
+    int count(int type, long from, long to)
+    {
+	if (to <= from)
+	    return 0;
+	return countBefore(type, to) - countBefore(type, from);
+    }
+
+
+    /**
+       Returns the recency of the elements of the given type over the
+       given number of days, as the evolution and message recency of
+       workspace nodes are worked out: each element less than that
+       many days old counts for 1 - log(age + 1) / log(days).
+    **/
+    float getRecency(int type, int days)
+    {
+	long limit = days * SECONDS_PER_DAY;
+	int first = countBefore(type, now - limit + 1);
+	int last = countBefore(type, now + limit);
+	if (last <= first)
+	    return (float) 0.0;
+	double deflation = (logAgeSums[type][last] - logAgeSums[type][first]) /
+	    Math.log(days);
+	return (float) ((last - first) - deflation);
+    }
+}
@@ -0,0 +1,750 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+   A spring embedder that lays out a graph in a background thread.
+   In each iteration, the edges of the graph pull their end nodes
+   towards the edge's natural length, and nodes closer than a cutoff
+   distance push each other apart. Every node is then moved a few
+   pixels according to the accumulated forces, which decay by half
+   from one iteration to the next.
+
+   The engine runs for a given number of iterations after each
+   (re)start. Optionally it keeps running beyond that until no node
+   moves by more than a fraction of the cutoff distance.
+
+   The state of the nodes and edges is kept in flat arrays indexed by
+   node and edge, which are loaded from the graph whenever it has
+   been changed. The node positions in these arrays are owned by the
+   layout thread: the initial positions are taken from the graph, and
+   after that other threads can only change them by posting commands
+   (see moveNode()), which the layout thread carries out before its
+   next iteration. Restarting the engine and telling it about changes
+   to the graph are posted the same way, so that the flags and the
+   iteration count are only touched by the layout thread. Likewise the layout thread never reads the boxes
+   of the nodes, which the painting code changes; instead the painting
+   code posts the size of each box as it paints it (see
+   setNodeSize()). After each iteration and each batch of commands,
+   the layout thread publishes an immutable snapshot of the
+   positions. The painting code copies the latest snapshot into the
+   graph's nodes (see applyLayout()), so that painting never has to
+   wait for an iteration to finish.
+
+   On large graphs, the forces are calculated in parallel: the edges
+   and the work items of the repulsion algorithm are divided into one
+   chunk per thread, and the chunks are processed in a shared
+   fork/join pool. Spring forces are accumulated in a buffer per
+   chunk, and the buffers are added up in chunk order afterwards.
+   Each chunk draws its random numbers from its own generator, seeded
+   from the engine's generator, so that for a given seed and thread
+   count the layout doesn't depend on the scheduling of the threads.
+**/
+class ForceLayoutEngine implements LayoutEngine, Runnable, TreeGraphConstants
+{
+    // largest distance a node is moved in one iteration
+    private static final double MAX_STEP = 5;
+
+    // graphs with fewer visible nodes are laid out in the relaxer
+    // thread alone, as forking would cost more than it saves
+    private static final int PARALLEL_THRESHOLD = 1000;
+
+    // pool shared by the engines of all panels
+    private static ForkJoinPool pool;
+
+    private LayoutGraph graph;
+
+    private Thread relaxer;
+
+    // commands posted to the layout thread
+    private LinkedBlockingQueue commands = new LinkedBlockingQueue();
+
+    // the latest published layout, and the one last copied into the
+    // graph by applyLayout()
+    private AtomicReference published = new AtomicReference();
+    private LayoutSnapshot applied;
+
+    // pause between iterations, in milliseconds
+    private long delay = 100;
+
+    // Number of times the relax() method has been called since the
+    // last restart
+    private long iterations = 0;
+
+    // Maximum number of iterations to recalculate spring forces after
+    // the last restart
+    private long maxIterations;
+
+    // should the engine keep running after maxIterations until the
+    // layout has settled?
+    private boolean settle = false;
+
+    // Have major changes to node positions occurred in the last loop?
+    private boolean noMajorChanges = false;
+
+    // Fraction of the cutoff distance that constitutes a major change
+    private double majorChangeFraction = 0.02;
+
+    // repulsion parameters: the cutoff distance, the strength of a
+    // single node's repulsion, and the length that the total
+    // repulsion on a node is scaled to
+    private RepulsionAlgorithm repulsion = new RepulsionGrid(initialEdgeLength);
+    private double cutoff = initialEdgeLength;
+    private double repulsionStrength = 1;
+    private double repulsionMagnitude = 10;
+
+    // number of chunks the force calculation is divided into, and
+    // the generator of the random numbers used by the calculation
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Random random = new Random(0);
+
+    // do the arrays below have to be (re)loaded from the graph?
+    private boolean nodesChanged = true;
+    private boolean edgesChanged = true;
+
+    // node positions, visibility and fixedness, the node's extent
+    // from its centre to the sides of its bounding box (if it has
+    // been painted yet), repulsion forces, and the forces accumulated
+    // over iterations
+    private int nodeCount;
+    private int visibleCount;
+    private double[] x;
+    private double[] y;
+    private boolean[] visible;
+    private boolean[] fixed;
+    private double[] left;
+    private double[] right;
+    private double[] top;
+    private double[] bottom;
+    private double[] fx;
+    private double[] fy;
+    private double[] dx;
+    private double[] dy;
+
+    // size of each node's box as last posted; only accessed by the
+    // painting thread
+    private int[] postedWidth;
+    private int[] postedHeight;
+
+    // end nodes of all edges
+    private int[] edgeFrom;
+    private int[] edgeTo;
+
+    // the edges currently exerting a spring force: end nodes,
+    // natural length and elasticity
+    private int springCount;
+    private int[] springFrom;
+    private int[] springTo;
+    private double[] springLength;
+    private double[] springElasticity;
+
+    // spring forces accumulated by each chunk
+    private double[][] chunkDx;
+    private double[][] chunkDy;
+
+    // number of work items of the repulsion algorithm, and random
+    // seeds of the chunks, in the current iteration
+    private int repulsionItems;
+    private long[] chunkSeeds;
+
+
+    ForceLayoutEngine(LayoutGraph graph, long maxIterations)
+    {
+	this.graph = graph;
+	this.maxIterations = maxIterations;
+
+	nodeCount = graph.getNodeCount();
+	x = new double[nodeCount];
+	y = new double[nodeCount];
+	visible = new boolean[nodeCount];
+	fixed = new boolean[nodeCount];
+	left = new double[nodeCount];
+	right = new double[nodeCount];
+	top = new double[nodeCount];
+	bottom = new double[nodeCount];
+	fx = new double[nodeCount];
+	fy = new double[nodeCount];
+	dx = new double[nodeCount];
+	dy = new double[nodeCount];
+	postedWidth = new int[nodeCount];
+	postedHeight = new int[nodeCount];
+
+	for (int i = 0; i < nodeCount; i++) {
+	    x[i] = graph.getX(i);
+	    y[i] = graph.getY(i);
+	}
+    }
+
+
+    /**
+       Keeps the engine running after its maximum number of
+       iterations for as long as nodes still move noticeably.
+    **/
+    void setSettle(boolean settle)
+    {
+	this.settle = settle;
+    }
+
+
+    synchronized void setRepulsion(RepulsionAlgorithm repulsion)
+    {
+	this.repulsion = repulsion;
+    }
+
+
+    void setCutoff(double cutoff)
+    {
+	this.cutoff = cutoff;
+    }
+
+
+    void setRepulsionStrength(double strength, double magnitude)
+    {
+	this.repulsionStrength = strength;
+	this.repulsionMagnitude = magnitude;
+    }
+
+
+    /**
+       Sets the number of threads to calculate the forces with; 1
+       calculates them in the relaxer thread alone.
+    **/
+    synchronized void setThreads(int threads)
+    {
+	this.threads = Math.max(1, threads);
+    }
+
+
+    synchronized void setSeed(long seed)
+    {
+	random = new Random(seed);
+    }
+
+
+    public void start()
+    {
+	relaxer = new Thread(this);
+	relaxer.start();
+    }
+
+
+    public void stop()
+    {
+	relaxer = null;
+    }
+
+
+    public boolean isRunning()
+    {
+	return relaxer != null;
+    }
+
+
+    public void restart()
+    {
+	post(new ReloadCommand(false, 0));
+    }
+
+
+    public void refresh()
+    {
+	post(new ReloadCommand(false, maxIterations - 1));
+    }
+
+
+    public void nodesChanged()
+    {
+	post(new ReloadCommand(false, -1));
+    }
+
+
+    public void graphChanged()
+    {
+	post(new ReloadCommand(true, -1));
+    }
+
+
+    public void moveNode(Object node, double x, double y)
+    {
+	post(new MoveCommand(graph.indexOf(node), x, y));
+    }
+
+
+    public void setNodeSize(Object node, int width, int height)
+    {
+	int i = graph.indexOf(node);
+	if (width == postedWidth[i] && height == postedHeight[i])
+	    return;
+	postedWidth[i] = width;
+	postedHeight[i] = height;
+	post(new SizeCommand(i, width, height));
+    }
+
+
+    /**
+       Hand a command to the layout thread, or carry it out directly
+       if the layout thread isn't running.
+    **/
+    private void post(Command command)
+    {
+	if (isRunning())
+	    commands.add(command);
+	else {
+	    // nobody to hand the command to, so carry it out directly
+	    synchronized (this) {
+		command.execute();
+		publish();
+	    }
+	    graph.layoutChanged();
+	}
+    }
+
+
+    public void applyLayout()
+    {
+	LayoutSnapshot snapshot = (LayoutSnapshot) published.get();
+	if (snapshot == null || snapshot == applied)
+	    return;
+	for (int i = 0; i < snapshot.x.length; i++)
+	    if (applied == null || snapshot.x[i] != applied.x[i] ||
+		snapshot.y[i] != applied.y[i])
+		graph.setLocation(i, snapshot.x[i], snapshot.y[i]);
+	applied = snapshot;
+    }
+
+
+    /**
+       Relax the layout every few milliseconds, carrying out commands
+       as soon as they are posted in between.
+    **/
+    public void run()
+    {
+	Thread me = Thread.currentThread();
+	long next = System.currentTimeMillis();
+	while (relaxer == me) {
+	    long wait = next - System.currentTimeMillis();
+	    if (wait <= 0) {
+		relax();
+		next = System.currentTimeMillis() + delay;
+		continue;
+	    }
+	    try {
+		Command command = (Command)
+		    commands.poll(wait, TimeUnit.MILLISECONDS);
+		if (command != null) {
+		    synchronized (this) {
+			command.execute();
+			executeCommands();
+			publish();
+		    }
+		    graph.layoutChanged();
+		}
+	    } catch (InterruptedException e) {
+		break;
+	    }
+	}
+    }
+
+
+    /**
+       Perform the calculation of spring forces and repulsion forces
+       that apply to edges and nodes respectively.
+    **/
+    void relax()
+    {
+	synchronized (this) {
+	    boolean moved = executeCommands();
+	    if (++iterations <= maxIterations || (settle && ! noMajorChanges)) {
+		if (nodesChanged)
+		    load();
+		calculateForces();
+		moveNodes();
+		moved = true;
+	    }
+	    if (! moved)
+		return;
+	    publish();
+	}
+	graph.layoutChanged();
+    }
+
+
+    /**
+       Carry out the commands posted so far, and return true if there
+       were any.
+    **/
+    private boolean executeCommands()
+    {
+	boolean any = false;
+	Command command;
+	while ((command = (Command) commands.poll()) != null) {
+	    command.execute();
+	    any = true;
+	}
+	return any;
+    }
+
+
+    /**
+       Publish a snapshot of the current node positions.
+    **/
+    private void publish()
+    {
+	published.set(new LayoutSnapshot(x.clone(), y.clone()));
+    }
+
+
+    /**
+       Load the state of the nodes and edges from the graph.
+    **/
+    private void load()
+    {
+	nodesChanged = false;
+
+	visibleCount = 0;
+	for (int i = 0; i < nodeCount; i++) {
+	    visible[i] = graph.isVisible(i);
+	    fixed[i] = graph.isFixed(i);
+	    if (visible[i])
+		visibleCount++;
+	}
+
+	if (edgesChanged) {
+	    edgesChanged = false;
+	    int count = graph.getEdgeCount();
+	    edgeFrom = new int[count];
+	    edgeTo = new int[count];
+	    for (int e = 0; e < count; e++) {
+		edgeFrom[e] = graph.getEdgeFrom(e);
+		edgeTo[e] = graph.getEdgeTo(e);
+	    }
+	    springFrom = new int[count];
+	    springTo = new int[count];
+	    springLength = new double[count];
+	    springElasticity = new double[count];
+	}
+
+	springCount = 0;
+	for (int e = 0; e < edgeFrom.length; e++) {
+	    if (! graph.isEdgeActive(e))
+		continue;
+	    springFrom[springCount] = edgeFrom[e];
+	    springTo[springCount] = edgeTo[e];
+	    springLength[springCount] = graph.getEdgeLength(e);
+	    springElasticity[springCount] = graph.getEdgeElasticity(e);
+	    springCount++;
+	}
+    }
+
+
+    /**
+       Calculate the spring and repulsion forces, in parallel if the
+       graph is large enough.
+    **/
+    private void calculateForces()
+    {
+	for (int i = 0; i < nodeCount; i++) {
+	    fx[i] = 0;
+	    fy[i] = 0;
+	}
+	repulsionItems = repulsion.prepare(x, y, visible, nodeCount, cutoff);
+
+	int chunks = (visibleCount < PARALLEL_THRESHOLD) ? 1 : threads;
+	chunkSeeds = new long[chunks];
+	for (int c = 0; c < chunks; c++)
+	    chunkSeeds[c] = random.nextLong();
+
+	if (chunks == 1) {
+	    addSpringForces(0, springCount, dx, dy);
+	    repulsion.addForces(0, repulsionItems, repulsionStrength,
+				new Random(chunkSeeds[0]), fx, fy);
+	} else {
+	    if (chunkDx == null || chunkDx.length != chunks) {
+		chunkDx = new double[chunks][nodeCount];
+		chunkDy = new double[chunks][nodeCount];
+	    }
+	    getPool().invoke(new ForceTask(0, chunks));
+	    for (int c = 0; c < chunks; c++) {
+		double[] cdx = chunkDx[c];
+		double[] cdy = chunkDy[c];
+		for (int i = 0; i < nodeCount; i++) {
+		    dx[i] += cdx[i];
+		    dy[i] += cdy[i];
+		}
+	    }
+	}
+
+	// only the direction of the total repulsion counts
+	for (int i = 0; i < nodeCount; i++) {
+	    double dlen = fx[i] * fx[i] + fy[i] * fy[i];
+	    if (dlen > 0) {
+		dlen = Math.sqrt(dlen) / repulsionMagnitude;
+		dx[i] += fx[i] / dlen;
+		dy[i] += fy[i] / dlen;
+	    }
+	}
+    }
+
+
+    /**
+       Calculate the forces of chunk c of the given number of chunks.
+    **/
+    private void calculateForces(int c, int chunks)
+    {
+	double[] cdx = chunkDx[c];
+	double[] cdy = chunkDy[c];
+	for (int i = 0; i < nodeCount; i++) {
+	    cdx[i] = 0;
+	    cdy[i] = 0;
+	}
+	addSpringForces((int) ((long) springCount * c / chunks),
+			(int) ((long) springCount * (c + 1) / chunks),
+			cdx, cdy);
+	repulsion.addForces((int) ((long) repulsionItems * c / chunks),
+			    (int) ((long) repulsionItems * (c + 1) / chunks),
+			    repulsionStrength, new Random(chunkSeeds[c]),
+			    fx, fy);
+    }
+
+
+    private static synchronized ForkJoinPool getPool()
+    {
+	if (pool == null)
+	    pool = new ForkJoinPool();
+	return pool;
+    }
+
+
+    /**
+       Add the forces of the springs from first (inclusive) to last
+       (exclusive) to the given force arrays.
+    **/
+    private void addSpringForces(int first, int last, double[] dx,
+				 double[] dy)
+    {
+	for (int e = first; e < last; e++) {
+	    int from = springFrom[e];
+	    int to = springTo[e];
+	    double vx = x[to] - x[from];
+	    double vy = y[to] - y[from];
+	    double len = Math.sqrt(vx * vx + vy * vy);
+	    len = (len == 0) ? .0001 : len;
+
+	    double f = (springLength[e] - len) / (len * springElasticity[e]);
+	    double ex = f * vx;
+	    double ey = f * vy;
+
+	    dx[to] += ex;
+	    dy[to] += ey;
+	    dx[from] += -ex;
+	    dy[from] += -ey;
+	}
+    }
+
+
+    private void moveNodes()
+    {
+	Rectangle area = graph.getArea();
+	double minX = area.x + marginGap;
+	double minY = area.y + marginGap;
+	double maxX = area.x + area.width - marginGap;
+	double maxY = area.y + area.height - marginGap;
+	double maxDx = 0.0;
+	double maxDy = 0.0;
+
+	for (int i = 0; i < nodeCount; i++) {
+	    if (! visible[i])
+		continue;
+
+	    if (dx[i] > maxDx)
+		maxDx = dx[i];
+	    if (dy[i] > maxDy)
+		maxDy = dy[i];
+
+	    // If it's a movable node, move it a few pixels according
+	    // to dx, dy
+	    double nx = x[i];
+	    double ny = y[i];
+	    if (! fixed[i]) {
+		nx += Math.max(-MAX_STEP, Math.min(MAX_STEP, dx[i]));
+		ny += Math.max(-MAX_STEP, Math.min(MAX_STEP, dy[i]));
+	    }
+
+	    // If the node is (partly) outside the allowable area,
+	    // move it back in; nodes that haven't been painted yet
+	    // have no known size
+	    if (nx - left[i] < minX)
+		nx = minX + left[i];
+	    else if (nx + right[i] > maxX)
+		nx = maxX - right[i];
+	    if (ny - top[i] < minY)
+		ny = minY + top[i];
+	    else if (ny + bottom[i] > maxY)
+		ny = maxY - bottom[i];
+
+	    x[i] = nx;
+	    y[i] = ny;
+
+	    dx[i] /= 2;
+	    dy[i] /= 2;
+	}
+
+	// if there hasn't been significant movement in the graph
+	// the layout has settled
+	noMajorChanges = ((maxDx < cutoff * majorChangeFraction) &&
+			  (maxDy < cutoff * majorChangeFraction));
+    }
+
+
+    /**
+       A request posted to the layout thread.
+    **/
+    private abstract class Command
+    {
+	abstract void execute();
+    }
+
+
+    /**
+       A request to move a node to a given position.
+    **/
+    private class MoveCommand extends Command
+    {
+	private int node;
+	private double x;
+	private double y;
+
+
+	MoveCommand(int node, double x, double y)
+	{
+	    this.node = node;
+	    this.x = x;
+	    this.y = y;
+	}
+
+
+	void execute()
+	{
+	    ForceLayoutEngine.this.x[node] = x;
+	    ForceLayoutEngine.this.y[node] = y;
+	}
+    }
+
+
+    /**
+       A request to reload the nodes, and possibly the edges, from the
+       graph before the next iteration, and optionally to set the
+       number of iterations done so far (unless it is negative).
+    **/
+    private class ReloadCommand extends Command
+    {
+	private boolean edges;
+	private long iterations;
+
+
+	ReloadCommand(boolean edges, long iterations)
+	{
+	    this.edges = edges;
+	    this.iterations = iterations;
+	}
+
+
+	void execute()
+	{
+	    nodesChanged = true;
+	    if (edges)
+		edgesChanged = true;
+	    if (iterations >= 0)
+		ForceLayoutEngine.this.iterations = iterations;
+	}
+    }
+
+
+    /**
+       A request to set the size of a node's box, from which the
+       extent of the box around the node's centre follows.
+    **/
+    private class SizeCommand extends Command
+    {
+	private int node;
+	private int width;
+	private int height;
+
+
+	SizeCommand(int node, int width, int height)
+	{
+	    this.node = node;
+	    this.width = width;
+	    this.height = height;
+	}
+
+
+	void execute()
+	{
+	    if (width > 1) {
+		left[node] = width / 2;
+		right[node] = width - 1 - width / 2;
+		top[node] = height / 2;
+		bottom[node] = height - 1 - height / 2;
+	    } else {
+		left[node] = 0;
+		right[node] = 0;
+		top[node] = 0;
+		bottom[node] = 0;
+	    }
+	}
+    }
+
+
+    /**
+       Calculates the forces of a range of chunks, splitting the range
+       in half until single chunks remain.
+    **/
+    private class ForceTask extends RecursiveAction
+    {
+	private int first;
+	private int last;
+
+
+	ForceTask(int first, int last)
+	{
+	    this.first = first;
+	    this.last = last;
+	}
+
+
+	protected void compute()
+	{
+	    if (last - first == 1)
+		calculateForces(first, chunkDx.length);
+	    else {
+		int middle = (first + last) / 2;
+		invokeAll(new ForceTask(first, middle),
+			  new ForceTask(middle, last));
+	    }
+	}
+    }
+}
@@ -46,7 +46,7 @@ import java.sql.*;
 import javax.swing.*;
 
 
-public class GraphWeightPanel extends JPanel implements Runnable, Printable,
+public class GraphWeightPanel extends JPanel implements Printable,
     ItemListener, MouseListener, MouseMotionListener, TreeGraphConstants,
     ControlListener
 {
@@ -59,11 +59,9 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
     Vector nodes = new Vector();
     Vector edges = new Vector();
 
-    Thread relaxer;
-
-    // Number of times the relax() method has been called since the
-    // last user action
-    long iterations = 0;
+    // the graph as seen by the engine, and the engine laying it out
+    ElementLayoutGraph layoutGraph;
+    ForceLayoutEngine engine;
 
     // Maximum number of iterations to recalculate spring forces after
     // the last user action
@@ -76,6 +74,10 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
     Image offscreen;
     Dimension offscreensize;
     Graphics offgraphics;
+
+    // largest extent of a node from its centre to the sides of its
+    // box, as painted so far
+    int maxNodeExtent = 0;
     WorkspaceElementNode focusNode;
     WorkspaceElementNode fixedNode;
     boolean printing = false;
@@ -163,6 +165,10 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 
 	this.node = node;
 
+	layoutGraph = new ElementLayoutGraph(nodes, edges, this);
+	engine = new ForceLayoutEngine(layoutGraph, maxIterations);
+	engine.setCutoff(edgeLength);
+
 	controls.addControlListener(this);
     }
 
@@ -328,129 +334,6 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
     }
 
 
-    public void run()
-    {
-        Thread me = Thread.currentThread();
-	while (relaxer == me) {
-	    relax();
-	    try {
-		Thread.sleep(100);
-	    } catch (InterruptedException e) {
-		break;
-	    }
-	}
-    }
-
-
-    /**
-       Perform the calculation of spring forces and repulsion forces
-       that apply to edges and nodes respectively.
-    **/
-    synchronized void relax()
-    {
-	if (++iterations > maxIterations) // && noMajorChanges)
-	    return;
-
-	// recalculate spring force
-	for (int i = 0 ; i < edges.size() ; i++) {
-	    WorkspaceElementEdge e = (WorkspaceElementEdge) edges.elementAt(i);
-	    if (! (e.fromNode.isVisible() && e.toNode.isVisible()))
-		continue;
-	    double vx = e.toNode.x - e.fromNode.x;
-	    double vy = e.toNode.y - e.fromNode.y;
-	    double len = Math.sqrt(vx * vx + vy * vy);
-            len = (len == 0) ? .0001 : len;
-	    //double f = (e.length - len) / (len * 3);
-	    double f = (e.length - len) / (len * 10);
-	    double dx = f * vx;
-	    double dy = f * vy;
-
-	    e.toNode.dx += dx;
-	    e.toNode.dy += dy;
-	    e.fromNode.dx += -dx;
-	    e.fromNode.dy += -dy;
-	}
-
-	// recalculate repulsion force
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceElementNode n1 =
-		(WorkspaceElementNode) nodes.elementAt(i);
-	    if (! n1.isVisible())
-		continue;
-	    double dx = 0;
-	    double dy = 0;
-
-	    for (int j = 0 ; j < nodes.size() ; j++) {
-
-		if (i == j)
-		    continue;
-
-		WorkspaceElementNode n2 =
-		    (WorkspaceElementNode) nodes.elementAt(j);
-
-		if (! n2.isVisible())
-		    continue;
-
-		double vx = n1.x - n2.x;
-		double vy = n1.y - n2.y;
-		double len = vx * vx + vy * vy;
-		if (len == 0) {
-		    dx += Math.random();
-		    dy += Math.random();
-		} else if (len < edgeLength * edgeLength) {
-		    dx += vx / len;
-		    dy += vy / len;
-		}
-	    }
-	    double dlen = dx * dx + dy * dy;
-	    if (dlen > 0) {
-		dlen = Math.sqrt(dlen) / 10;  //2
-		n1.dx += dx / dlen;
-		n1.dy += dy / dlen;
-	    }
-	}
-
-	Dimension d = this.getSize();
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceElementNode n = (WorkspaceElementNode) nodes.elementAt(i);
-
-	    if (! n.isVisible())
-		continue;
-
-	    // If it's a movable node, move it a few pixels according to dx, dy
-	    if (! n.fixed) {
-		n.x += Math.max(-5, Math.min(5, n.dx));
-		n.y += Math.max(-5, Math.min(5, n.dy));
-            }
-
-	    // If the node is (partly) outside the allowable bounds,
-	    // move it back in
-            if (n.x1 < marginGap) {
-		n.x += marginGap - n.x1;
-		n.x2 += marginGap - n.x1;
-                n.x1 = 0 + marginGap;
-            } else if (n.x2 > d.width - marginGap) {
-		n.x -= n.x2 - (d.width - marginGap);
-		n.x1 -= n.x2 - (d.width - marginGap);
-                n.x2 = d.width - marginGap;
-            }
-            if (n.y1 < marginGap) {
-		n.y += marginGap - n.y1;
-		n.y2 += marginGap - n.y1;
-                n.y1 = marginGap;
-            } else if (n.y2 > d.height - marginGap) {
-		n.y -= n.y2 - (d.height - marginGap);
-		n.y1 -= n.y2 - (d.height - marginGap);
-                n.y2 = d.height - marginGap;
-            }
-
-	    n.dx /= 2;
-	    n.dy /= 2;
-	}
-	repaint();
-    }
-
-
     /**
        Draw a node in the panel.
     **/
@@ -467,12 +350,15 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 	// width and height of the box
 	int w = fm.stringWidth(n.displayName) + 10;
 	int h = fm.getHeight() + 4;
+	if (Math.max(w, h) / 2 + 1 > maxNodeExtent)
+	    maxNodeExtent = Math.max(w, h) / 2 + 1;
 
 	// coordinates of the box's top left and bottom right corner
 	n.x1 = x - w / 2;
 	n.y1 = y - h / 2;
 	n.x2 = n.x1 + w - 1;
 	n.y2 = n.y1 + h - 1;
+	engine.setNodeSize(n, w, h);
 
 	// draw the box, its border and the text label inside it
 	g.fillRect(n.x1, n.y1, w, h);
@@ -540,8 +426,11 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
     /**
       Redraw the whole graph offscreen and then show it.
     **/
-    public synchronized void paint(Graphics g)
+    public void paint(Graphics g)
     {
+	// show the nodes at their latest positions
+	engine.applyLayout();
+
 	Dimension d = this.getSize();
 
 	if ((offscreen == null) || (d.width != offscreensize.width) ||
@@ -715,6 +604,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 	    if (node.type == type)
 		node.setVisible(state);
 	}
+	engine.nodesChanged();
     }
 
 
@@ -740,7 +630,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 	if (DEBUG)
 	    System.out.println("[MouseClicked] mouse clicked " +
 			       e.getClickCount() + " times.");
-	iterations = 0;
+	engine.restart();
     }
 
 
@@ -760,13 +650,19 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 	    System.out.println("[MousePressed] mouse pressed " +
 			       e.getClickCount() + " times.");
 
-	// Pick the node that was clicked on
+	// Pick the node that was clicked on, looking only at the nodes
+	// close enough for their boxes to contain the point
 	double bestdist = Double.MAX_VALUE;
 	int x = e.getX();
 	int y = e.getY();
 	Point p = e.getPoint();
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceElementNode n = (WorkspaceElementNode) nodes.elementAt(i);
+	IntVector near = new IntVector();
+	layoutGraph.getGrid().query(x - maxNodeExtent, y - maxNodeExtent,
+				    x + maxNodeExtent, y + maxNodeExtent, near);
+	near.sort();
+	for (int i = 0 ; i < near.size() ; i++) {
+	    WorkspaceElementNode n =
+		(WorkspaceElementNode) nodes.elementAt(near.elementAt(i));
 	    if (! n.contains(p))
 		continue;
 	    double dist = (n.x - x) * (n.x - x) + (n.y - y) * (n.y - y);
@@ -779,8 +675,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 	if (pick != null) {
 	    pickfixed = pick.fixed;
 	    pick.fixed = true;
-	    pick.x = x;
-	    pick.y = y;
+	    engine.moveNode(pick, x, y);
 	}
 
 	addMouseMotionListener(this);
@@ -790,7 +685,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 
 	repaint();
 	e.consume();
-	iterations = 0;
+	engine.restart();
     }
 
 
@@ -801,8 +696,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 			       e.getClickCount() + " times.");
 
 	if (pick != null) {
-	    pick.x = e.getX();
-	    pick.y = e.getY();
+	    engine.moveNode(pick, e.getX(), e.getY());
 	    pick.fixed = pickfixed;
 	}
 
@@ -814,7 +708,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 	pick = null;
 	repaint();
 	e.consume();
-	iterations = 0;
+	engine.restart();
     }
 
 
@@ -823,8 +717,7 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
     public void mouseDragged(MouseEvent e)
     {
 	if (pick != null) {
-	    pick.x = e.getX();
-	    pick.y = e.getY();
+	    engine.moveNode(pick, e.getX(), e.getY());
 	}
 	repaint();
 	e.consume();
@@ -891,14 +784,13 @@ public class GraphWeightPanel extends JPanel implements Runnable, Printable,
 
     public void start()
     {
-	relaxer = new Thread(this);
-	relaxer.start();
+	engine.start();
     }
 
 
     public void stop()
     {
-	relaxer = null;
+	engine.stop();
     }
 
 
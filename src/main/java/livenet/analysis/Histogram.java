@@ -16,15 +16,40 @@ package livenet.analysis;
  * permissions and limitations under the License.
  */
 
+import java.util.Arrays;
+
+
+/**
+   A histogram of int keys, which adds up a value (1 by default) for
+   each key. The distinct keys are kept in ascending order along with
+   their totals, in a pair of arrays, so that a key is looked up by
+   binary search.
+
+   Entries put into the histogram are only collected at first. The
+   next time the histogram is read, they are sorted and counted into
+   the arrays all in one go.
+**/
 public class Histogram
 {
-    private int[][] histData;
-    private int size;
+    // the distinct keys in ascending order, and the total of each
+    private int[] keys = new int[0];
+    private int[] values = new int[0];
+    private int size = 0;
+
+    // the entries put since the arrays were last brought up to date
+    private int[] newKeys;
+    private int[] newValues;
+    private int newCount = 0;
 
+
+    /**
+       Creates a histogram expected to be put about the given number
+       of entries into.
+    **/
     public Histogram(int maxSize)
     {
-	histData = new int[maxSize][2];
-	size = 0;
+	newKeys = new int[Math.max(1, maxSize)];
+	newValues = new int[Math.max(1, maxSize)];
     }
 
 
@@ -34,66 +59,46 @@ public class Histogram
     **/
     public int get(int key)
     {
-	for (int i = 0; i < size; i++) {
-	    if (histData[i][0] < key)
-		continue;
-	    else if (histData[i][0] == key)
-		return histData[i][1];
-	    else if (histData[i][0] > key)
-		break;
-	}
-	return -1;
+	int index = getIndex(key);
+	return (index < 0) ? -1 : values[index];
     }
 
 
     public int getKeyAt(int index)
     {
+	update();
 	if (index >= 0 && index < size)
-	    return histData[index][0];
+	    return keys[index];
 	return -1;
     }
 
 
     public int getValueAt(int index)
     {
+	update();
 	if (index >= 0 && index < size)
-	    return histData[index][1];
+	    return values[index];
 	return -1;
     }
 
 
     /**
-       Inserts the specified key-value pair into the histogram at the
-       appropriate position, or adds the value to the existing value
-       for that key if the key is already in the histogram.
+       Adds the specified value to the value for the specified key,
+       which is entered into the histogram if it isn't there yet.
     **/
     public void put(int key, int value)
     {
-	boolean haveKey = false;
-	int index = -1;
-
-	while (++index < size) {
-	    if (histData[index][0] < key)
-		continue;
-	    if (histData[index][0] == key) {
-		histData[index][1] += value;
-		haveKey = true;
-		break;
-	    }
-	    if (histData[index][0] > key) {
-		for (int i = size; i > index; i--) {
-		    histData[i][0] = histData[i - 1][0];
-		    histData[i][1] = histData[i - 1][1];
-		}
-		break;
-	    }
-	}
-
-	if (!haveKey) {
-	    histData[index][0] = key;
-	    histData[index][1] = value;
-	    size++;
+	if (newCount == newKeys.length) {
+	    int[] larger = new int[2 * newCount];
+	    System.arraycopy(newKeys, 0, larger, 0, newCount);
+	    newKeys = larger;
+	    larger = new int[2 * newCount];
+	    System.arraycopy(newValues, 0, larger, 0, newCount);
+	    newValues = larger;
 	}
+	newKeys[newCount] = key;
+	newValues[newCount] = value;
+	newCount++;
     }
 
 
@@ -105,58 +110,122 @@ public class Histogram
 
     public int getSize()
     {
+	update();
 	return size;
     }
 
 
+    /**
+       Returns the keys and their values as pairs, in ascending order
+       of the keys.
+    **/
     public int[][] getData()
     {
-	return histData;
+	update();
+	int[][] data = new int[size][2];
+	for (int i = 0; i < size; i++) {
+	    data[i][0] = keys[i];
+	    data[i][1] = values[i];
+	}
+	return data;
     }
 
 
     public int getMinKey()
     {
-	return histData[0][0];
+	update();
+	return (size > 0) ? keys[0] : 0;
     }
 
 
     public int getMaxKey()
     {
-	return histData[size - 1][0];
+	update();
+	return keys[size - 1];
     }
 
 
     public int getMinValue()
     {
+	update();
 	int minValue = Integer.MAX_VALUE;
 	for (int i = 0; i < size; i++)
-	    if (histData[i][1] < minValue)
-		minValue = histData[i][1];
+	    if (values[i] < minValue)
+		minValue = values[i];
 	return minValue;
     }
 
 
     public int getMaxValue()
     {
+	update();
 	int maxValue = Integer.MIN_VALUE;
 	for (int i = 0; i < size; i++)
-	    if (histData[i][1] > maxValue)
-		maxValue = histData[i][1];
+	    if (values[i] > maxValue)
+		maxValue = values[i];
 	return maxValue;
     }
 
 
+    /**
+       Returns the position of the supplied key among the keys of the
+       histogram, or -1 if the key does not exist in the histogram.
+    **/
     public int getIndex(int key)
     {
-	for (int i = 0; i < size; i++) {
-	    if (histData[i][0] < key)
-		continue;
-	    else if (histData[i][0] == key)
-		return i;
-	    else if (histData[i][0] > key)
-		break;
+	update();
+	int index = Arrays.binarySearch(keys, 0, size, key);
+	return (index < 0) ? -1 : index;
+    }
+
+
+    /**
+       Counts the entries put since the last time into the arrays:
+       sorts them by key, and merges them with the keys already
+       there, adding up the values of equal keys.
+    **/
+    private void update()
+    {
+	if (newCount == 0)
+	    return;
+
+	// sort the new entries by key, and those of equal keys in the
+	// order they were put, with the position of each entry in the
+	// lower half of a long
+	long[] order = new long[newCount];
+	for (int i = 0; i < newCount; i++)
+	    order[i] = ((long) newKeys[i] << 32) | i;
+	Arrays.sort(order);
+
+	int[] mergedKeys = new int[size + newCount];
+	int[] mergedValues = new int[size + newCount];
+	int merged = 0;
+	int old = 0;
+	for (int k = 0; k < newCount; k++) {
+	    int i = (int) order[k];
+	    int key = newKeys[i];
+	    while (old < size && keys[old] < key) {
+		mergedKeys[merged] = keys[old];
+		mergedValues[merged++] = values[old++];
+	    }
+	    if (merged > 0 && mergedKeys[merged - 1] == key)
+		mergedValues[merged - 1] += newValues[i];
+	    else if (old < size && keys[old] == key) {
+		mergedKeys[merged] = key;
+		mergedValues[merged++] = values[old++] + newValues[i];
+	    } else {
+		mergedKeys[merged] = key;
+		mergedValues[merged++] = newValues[i];
+	    }
 	}
-	return -1;
+	while (old < size) {
+	    mergedKeys[merged] = keys[old];
+	    mergedValues[merged++] = values[old++];
+	}
+
+	keys = mergedKeys;
+	values = mergedValues;
+	size = merged;
+	newCount = 0;
     }
 }
@@ -0,0 +1,82 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+
+
+/**
+   A growable array of ints, much like a Vector of Integers but
+   without an object per element.
+**/
+class IntVector
+{
+    private int[] elements;
+    private int count = 0;
+
+
+    IntVector()
+    {
+	this(4);
+    }
+
+
+    IntVector(int capacity)
+    {
+	elements = new int[Math.max(1, capacity)];
+    }
+
+
+    void addElement(int element)
+    {
+	if (count == elements.length) {
+	    int[] larger = new int[2 * count];
+	    System.arraycopy(elements, 0, larger, 0, count);
+	    elements = larger;
+	}
+	elements[count++] = element;
+    }
+
+
+    int elementAt(int index)
+    {
+	if (index >= count)
+	    throw new ArrayIndexOutOfBoundsException(index);
+	return elements[index];
+    }
+
+
+    int size()
+    {
+	return count;
+    }
+
+
+    void removeAllElements()
+    {
+	count = 0;
+    }
+
+
+    /**
+       Sorts the elements into ascending order.
+    **/
+    void sort()
+    {
+	Arrays.sort(elements, 0, count);
+    }
+}
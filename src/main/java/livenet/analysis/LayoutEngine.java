@@ -0,0 +1,97 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/**
+   An engine that lays out a graph in the background, such as the
+   graph shown in one of the map panels. After the user changes the
+   graph, the panel restarts the engine so that it runs for a number
+   of iterations until the layout has settled again.
+
+   The engine owns the positions of the nodes. The panel moves nodes
+   through moveNode(), tells the engine the size of each node as it
+   paints it with setNodeSize(), and before painting fetches the
+   current layout into the nodes with applyLayout().
+**/
+interface LayoutEngine
+{
+    /**
+       Starts the layout thread.
+    **/
+    void start();
+
+
+    /**
+       Stops the layout thread after its current iteration.
+    **/
+    void stop();
+
+
+    boolean isRunning();
+
+
+    /**
+       Runs the layout for its full number of iterations again.
+    **/
+    void restart();
+
+
+    /**
+       Runs the layout for one more iteration, e.g. to show a change
+       in the visibility of nodes or edges.
+    **/
+    void refresh();
+
+
+    /**
+       Tells the engine that the visibility, fixedness or position of
+       nodes has changed. Restarting or refreshing the layout implies
+       this.
+    **/
+    void nodesChanged();
+
+
+    /**
+       Tells the engine that the edges of the graph have changed.
+    **/
+    void graphChanged();
+
+
+    /**
+       Moves the given node of the graph to the given position, e.g.
+       while the user is dragging it. The move takes effect in the
+       layout thread, and becomes visible in the node with the next
+       call of applyLayout().
+    **/
+    void moveNode(Object node, double x, double y);
+
+
+    /**
+       Tells the engine the size of the given node's box as painted,
+       so that the layout keeps the whole box inside the panel. To be
+       called by the painting code; the size takes effect in the
+       layout thread like a move.
+    **/
+    void setNodeSize(Object node, int width, int height);
+
+
+    /**
+       Copies the node positions of the most recent layout into the
+       graph. To be called by the painting code before painting.
+    **/
+    void applyLayout();
+}
@@ -0,0 +1,96 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.awt.Rectangle;
+
+
+/**
+   The view of a graph that a layout engine works on. Nodes and edges
+   are identified by their index, from 0 to getNodeCount() - 1 and
+   getEdgeCount() - 1 respectively. The set of nodes is fixed; the
+   edges may change, in which case the engine has to be told through
+   LayoutEngine.graphChanged().
+**/
+interface LayoutGraph
+{
+    int getNodeCount();
+
+
+    /**
+       Returns the index of the given node object.
+    **/
+    int indexOf(Object node);
+
+
+    double getX(int node);
+
+
+    double getY(int node);
+
+
+    /**
+       Moves the node, and its bounding box along with it.
+    **/
+    void setLocation(int node, double x, double y);
+
+
+    boolean isVisible(int node);
+
+
+    boolean isFixed(int node);
+
+
+    int getEdgeCount();
+
+
+    int getEdgeFrom(int edge);
+
+
+    int getEdgeTo(int edge);
+
+
+    /**
+       Returns true if the edge currently exerts a spring force.
+    **/
+    boolean isEdgeActive(int edge);
+
+
+    /**
+       Returns the natural length of the edge's spring.
+    **/
+    double getEdgeLength(int edge);
+
+
+    /**
+       Returns the divisor applied to the edge's spring force; larger
+       values make the spring more stretchy.
+    **/
+    double getEdgeElasticity(int edge);
+
+
+    /**
+       Returns the area that the nodes have to be kept inside.
+    **/
+    Rectangle getArea();
+
+
+    /**
+       Called after each layout iteration that moved the nodes.
+    **/
+    void layoutChanged();
+}
@@ -0,0 +1,36 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/**
+   The node positions of a graph layout at one point in time, as
+   published by a layout engine. Snapshots are never modified once
+   they have been published, so they can be read without locking.
+**/
+class LayoutSnapshot
+{
+    // node positions, indexed by node
+    final double[] x;
+    final double[] y;
+
+
+    LayoutSnapshot(double[] x, double[] y)
+    {
+	this.x = x;
+	this.y = y;
+    }
+}
@@ -0,0 +1,237 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+
+
+/**
+   Decides which links between workspaces are shown on the workspace
+   map, so that the layout and painting only deal with the links
+   that matter on busy workgroups. Depending on its mode, a filter
+   keeps
+
+   - all links (MapControls.ALL_LINKS),
+   - the links of at least the threshold weight
+     (MapControls.MIN_WEIGHT_LINKS),
+   - the threshold number of strongest links of each type of each
+     workspace (MapControls.TOP_K_LINKS), or
+   - the backbone of the links of each type, as found by the
+     disparity filter of Serrano, Boguna and Vespignani, with a
+     significance level of the threshold in hundredths
+     (MapControls.BACKBONE_LINKS).
+
+   A link is kept by the last two modes if it is among the strongest
+   or significant links of either of its workspaces. Among links of
+   the same weight, those a workspace has had longest are counted as
+   the stronger ones. Parent/child links are always kept.
+
+   The links of each workspace, in the workspace network and in the
+   hypergraph, if any, are only looked at when one of them is first
+   asked about.
+**/
+class LinkFilter
+{
+    private int mode;
+    private int threshold;
+    private WorkspaceNetwork network;
+    private WorkspaceHypergraph hypergraph;
+
+    // workspace node -> LinkStrength[] by link type
+    private HashMap strengths = new HashMap();
+
+    private Vector others = new Vector();
+    private IntVector weights = new IntVector();
+
+
+    LinkFilter(int mode, int threshold, WorkspaceNetwork network,
+	       WorkspaceHypergraph hypergraph)
+    {
+	this.mode = mode;
+	this.threshold = threshold;
+	this.network = network;
+	this.hypergraph = hypergraph;
+    }
+
+
+    int getMode()
+    {
+	return mode;
+    }
+
+
+    int getThreshold()
+    {
+	return threshold;
+    }
+
+
+    /**
+       Returns true if the given link is to be shown.
+    **/
+    boolean accepts(WorkspaceLink link)
+    {
+	if (link.type == WorkspaceLink.CHILD)
+	    return true;
+
+	switch (mode) {
+	case MapControls.MIN_WEIGHT_LINKS :
+	    return link.weight >= threshold;
+	case MapControls.TOP_K_LINKS :
+	case MapControls.BACKBONE_LINKS :
+	    return accepts(link, link.fromNode, link.toNode) ||
+		accepts(link, link.toNode, link.fromNode);
+	}
+	return true;
+    }
+
+
+    /**
+       Returns true if the given link is among the strongest or
+       significant links of the given workspace, which it links to
+       the other given workspace.
+    **/
+    private boolean accepts(WorkspaceLink link, WorkspaceNode node,
+			    WorkspaceNode other)
+    {
+	LinkStrength s = getStrengths(node)[link.type];
+	if (s == null)
+	    return true;
+
+	if (mode == MapControls.TOP_K_LINKS)
+	    return link.weight > s.strongestWeight ||
+		(link.weight == s.strongestWeight &&
+		 s.strongestOthers.contains(other));
+
+	// the probability of a link at least this strong if the
+	// strength of the workspace were spread evenly over its
+	// links; a workspace with a single link keeps it
+	if (s.degree <= 1)
+	    return true;
+	double p = (double) link.weight / s.strength;
+	double alpha = Math.pow(1.0 - p, s.degree - 1);
+	return alpha < threshold / 100.0;
+    }
+
+
+    private LinkStrength[] getStrengths(WorkspaceNode node)
+    {
+	LinkStrength[] s = (LinkStrength[]) strengths.get(node);
+	if (s == null) {
+	    s = new LinkStrength[WorkspaceNetwork.TYPES];
+	    for (int type = 0; type < WorkspaceNetwork.TYPES; type++)
+		s[type] = getStrength(node, type);
+	    strengths.put(node, s);
+	}
+	return s;
+    }
+
+
+    /**
+       Returns the strength of the links of the given type of the
+       given workspace, or null if it has none.
+    **/
+    private LinkStrength getStrength(WorkspaceNode node, int type)
+    {
+	others.removeAllElements();
+	weights.removeAllElements();
+
+	// a link of a workspace to itself takes up two slots in a row
+	int id = network.idOf(node);
+	int selfLink = -1;
+	if (id >= 0)
+	    for (int slot = network.getSlotStart(id, type);
+		 slot < network.getSlotEnd(id, type); slot++) {
+		int l = network.getSlotLink(slot);
+		int other = network.getSlotTarget(slot);
+		if (other == id) {
+		    if (l == selfLink)
+			continue;
+		    selfLink = l;
+		}
+		others.addElement(network.getNode(other));
+		weights.addElement(network.getLinkWeight(l));
+	    }
+	if (hypergraph != null && hypergraph.hasLinkType(type)) {
+	    Vector linked = hypergraph.getLinkedWorkspaces(node, type);
+	    for (int i = 0; i < linked.size(); i++) {
+		WorkspaceNode other = (WorkspaceNode) linked.elementAt(i);
+		others.addElement(other);
+		weights.addElement(hypergraph.getLinkWeight(node, other,
+							    type));
+	    }
+	}
+
+	int degree = weights.size();
+	if (degree == 0)
+	    return null;
+
+	int[] w = new int[degree];
+	long strength = 0;
+	for (int i = 0; i < degree; i++) {
+	    w[i] = weights.elementAt(i);
+	    strength += w[i];
+	}
+	Arrays.sort(w);
+
+	// the weight of the k-th strongest link, and the workspaces
+	// linked by as many links of just that weight as are needed to
+	// make up k links, taking the earliest ones first
+	int k = Math.max(1, Math.min(threshold, degree));
+	int strongestWeight = w[degree - k];
+	int ties = k;
+	for (int i = degree - 1; i >= 0 && w[i] > strongestWeight; i--)
+	    ties--;
+	HashSet strongestOthers = new HashSet();
+	for (int i = 0; i < degree && ties > 0; i++)
+	    if (weights.elementAt(i) == strongestWeight) {
+		strongestOthers.add(others.elementAt(i));
+		ties--;
+	    }
+
+	return new LinkStrength(degree, strength, strongestWeight,
+				strongestOthers);
+    }
+
+
+    /**
+       The links of one type of a workspace: how many there are,
+       their total weight, and the weakest of the strongest links
+       kept in the TOP_K_LINKS mode, i.e. their weight and the
+       workspaces linked by those of them that have just that weight.
+    **/
+    private static class LinkStrength
+    {
+	int degree;
+	long strength;
+	int strongestWeight;
+	HashSet strongestOthers;
+
+
+	LinkStrength(int degree, long strength, int strongestWeight,
+		     HashSet strongestOthers)
+	{
+	    this.degree = degree;
+	    this.strength = strength;
+	    this.strongestWeight = strongestWeight;
+	    this.strongestOthers = strongestOthers;
+	}
+    }
+}
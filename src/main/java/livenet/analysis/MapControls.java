@@ -61,6 +61,11 @@ public class MapControls extends JFrame implements ActionListener,
     public static final int STOP_ANIMATION = 30;
     public static final int PRINT = 31;
     public static final int CLOSE = 32;
+    public static final int REPULSION_MODE = 33;
+    public static final int REPULSION_THETA = 34;
+    public static final int LINK_FILTER_MODE = 35;
+    public static final int LINK_FILTER_THRESHOLD = 36;
+    public static final int FIT_VIEW = 37;
 
     // static fields for edge pull / visibility values
     public static final int OFF = 0;
@@ -70,6 +75,15 @@ public class MapControls extends JFrame implements ActionListener,
     public static final int SHORT_LABELS = 0;
     public static final int LONG_LABELS = 1;
 
+    // static fields for repulsion mode values
+    public static final int EXACT_REPULSION = 0;
+    public static final int BARNES_HUT_REPULSION = 1;
+
+    // static fields for link filter mode values
+    public static final int ALL_LINKS = 0;
+    public static final int MIN_WEIGHT_LINKS = 1;
+    public static final int TOP_K_LINKS = 2;
+    public static final int BACKBONE_LINKS = 3;
     // panels for the different sections of the window
     JPanel nodeColourPanel = new JPanel(new GridLayout(0, 1, 5, 0));
     JPanel nodeLabelPanel = new JPanel(new GridLayout(1, 0, 5, 0));
@@ -77,6 +91,8 @@ public class MapControls extends JFrame implements ActionListener,
     JPanel nodeVisibPanel = new JPanel(new GridLayout(1, 0, 5, 0));
     JPanel edgeLengthPanel = new JPanel();
     JPanel animationPanel = new JPanel(new GridLayout(1, 0, 5, 0));
+    JPanel repulsionPanel = new JPanel();
+    JPanel linkFilterPanel = new JPanel();
     JPanel controlButtonPanel = new JPanel(new GridLayout(1, 0, 5, 0));
 
     // panels for the colour labels and check boxes
@@ -140,7 +156,25 @@ public class MapControls extends JFrame implements ActionListener,
     JRadioButton animationOnBut = new JRadioButton("On", true);
     JRadioButton animationOffBut = new JRadioButton("Off");
 
+    // radio buttons and theta slider for the repulsion panel
+    JRadioButton repulsionExactBut = new JRadioButton("Exact", true);
+    JRadioButton repulsionBHBut = new JRadioButton("Barnes-Hut");
+    JLabel repulsionThetaLabel = new JLabel("Theta:");
+    JSlider repulsionThetaSlider = new JSlider(JSlider.HORIZONTAL, 10, 150,
+					       TreeGraphConstants.initialTheta);
+
+    // radio buttons and threshold slider for the link filter panel
+    JRadioButton linkFilterAllBut = new JRadioButton("All", true);
+    JRadioButton linkFilterWeightBut = new JRadioButton("Min. weight");
+    JRadioButton linkFilterTopBut = new JRadioButton("Top k");
+    JRadioButton linkFilterBackboneBut = new JRadioButton("Backbone");
+    JLabel linkFilterThresholdLabel = new JLabel("Threshold:");
+    JSlider linkFilterThresholdSlider =
+	new JSlider(JSlider.HORIZONTAL, 1, 50,
+		    TreeGraphConstants.initialLinkThreshold);
+
     // the major control buttons for the control button panel
+    JButton fitViewBut = new JButton("Fit");
     JButton printBut = new JButton("Print");
     JButton closeBut = new JButton("Close");
 
@@ -197,6 +231,18 @@ public class MapControls extends JFrame implements ActionListener,
 
 	c.gridx = 0;
 	c.gridy = 3;
+	c.gridwidth = 2;
+	c.insets = new Insets(5, 10, 0, 10);
+	gbl.setConstraints(repulsionPanel, c);
+	cont.add(repulsionPanel);
+
+	c.gridy = 4;
+	gbl.setConstraints(linkFilterPanel, c);
+	cont.add(linkFilterPanel);
+
+	c.gridwidth = 1;
+	c.gridx = 0;
+	c.gridy = 5;
 	c.insets = new Insets(5, 10, 10, 0);
 	gbl.setConstraints(nodeVisibPanel, c);
 	cont.add(nodeVisibPanel);
@@ -220,6 +266,10 @@ public class MapControls extends JFrame implements ActionListener,
 				  createTitledBorder("Edge Length"));
 	animationPanel.setBorder(BorderFactory.
 				 createTitledBorder("Animation"));
+	repulsionPanel.setBorder(BorderFactory.
+				 createTitledBorder("Repulsion"));
+	linkFilterPanel.setBorder(BorderFactory.
+				  createTitledBorder("Links"));
 	controlButtonPanel.setBorder(BorderFactory.
 				     createTitledBorder("Map"));
 
@@ -244,6 +294,18 @@ public class MapControls extends JFrame implements ActionListener,
 	animationPanel.add(animationOnBut);
 	animationPanel.add(animationOffBut);
 
+	repulsionPanel.add(repulsionExactBut);
+	repulsionPanel.add(repulsionBHBut);
+	repulsionPanel.add(repulsionThetaLabel);
+	repulsionPanel.add(repulsionThetaSlider);
+
+	linkFilterPanel.add(linkFilterAllBut);
+	linkFilterPanel.add(linkFilterWeightBut);
+	linkFilterPanel.add(linkFilterTopBut);
+	linkFilterPanel.add(linkFilterBackboneBut);
+	linkFilterPanel.add(linkFilterThresholdLabel);
+	linkFilterPanel.add(linkFilterThresholdSlider);
+
 	// the edge visibility check boxes need to be arranged in panels with
 	// their colour indicators
 	JLabel edgeVisChildLab = new JLabel(" ");
@@ -338,6 +400,7 @@ public class MapControls extends JFrame implements ActionListener,
 
 	edgeLengthPanel.add(edgeLenSlider);
 
+	controlButtonPanel.add(fitViewBut);
 	controlButtonPanel.add(printBut);
 	controlButtonPanel.add(closeBut);
 
@@ -366,6 +429,16 @@ public class MapControls extends JFrame implements ActionListener,
 	animationGroup.add(animationOnBut);
 	animationGroup.add(animationOffBut);
 
+	ButtonGroup repulsionGroup = new ButtonGroup();
+	repulsionGroup.add(repulsionExactBut);
+	repulsionGroup.add(repulsionBHBut);
+
+	ButtonGroup linkFilterGroup = new ButtonGroup();
+	linkFilterGroup.add(linkFilterAllBut);
+	linkFilterGroup.add(linkFilterWeightBut);
+	linkFilterGroup.add(linkFilterTopBut);
+	linkFilterGroup.add(linkFilterBackboneBut);
+
 	// Configure the slider
 	edgeLenSlider.setMajorTickSpacing(50);
 	edgeLenSlider.setMinorTickSpacing(10);
@@ -374,6 +447,23 @@ public class MapControls extends JFrame implements ActionListener,
 	edgeLenSlider.setPaintTrack(true);
 	edgeLenSlider.setSnapToTicks(false);
 
+	// theta only applies to the Barnes-Hut approximation
+	repulsionThetaSlider.setMajorTickSpacing(50);
+	repulsionThetaSlider.setMinorTickSpacing(10);
+	repulsionThetaSlider.setPaintTicks(true);
+	repulsionThetaSlider.setEnabled(false);
+	repulsionThetaLabel.setEnabled(false);
+
+	// the threshold is a minimum weight, a number of links or a
+	// significance level in hundredths, depending on the mode; it
+	// is only reported once the slider comes to rest
+	linkFilterThresholdSlider.setMajorTickSpacing(10);
+	linkFilterThresholdSlider.setMinorTickSpacing(1);
+	linkFilterThresholdSlider.setPaintTicks(true);
+	linkFilterThresholdSlider.setPaintLabels(true);
+	linkFilterThresholdSlider.setEnabled(false);
+	linkFilterThresholdLabel.setEnabled(false);
+
 	// Set up item listeners for radio buttons and check boxes
 	nodeColParentBut.addItemListener(this);
 	nodeColAbsWDBut.addItemListener(this);
@@ -404,15 +494,24 @@ public class MapControls extends JFrame implements ActionListener,
 	nodeLabLongBut.addItemListener(this);
 	animationOnBut.addItemListener(this);
 	animationOffBut.addItemListener(this);
+	repulsionExactBut.addItemListener(this);
+	repulsionBHBut.addItemListener(this);
+	linkFilterAllBut.addItemListener(this);
+	linkFilterWeightBut.addItemListener(this);
+	linkFilterTopBut.addItemListener(this);
+	linkFilterBackboneBut.addItemListener(this);
 
 	// Set up action listeners for ordinary buttons
 	nodeVisExpBut.addActionListener(this);
 	nodeVisColBut.addActionListener(this);
+	fitViewBut.addActionListener(this);
 	printBut.addActionListener(this);
 	closeBut.addActionListener(this);
 
-	// Set up change listener for the slider
+	// Set up change listeners for the sliders
 	edgeLenSlider.addChangeListener(this);
+	repulsionThetaSlider.addChangeListener(this);
+	linkFilterThresholdSlider.addChangeListener(this);
 
 	// get the window up on the screen
 	this.pack();
@@ -434,6 +533,8 @@ public class MapControls extends JFrame implements ActionListener,
 	    type = EXPAND_ALL_NODES;
 	else if (source.equals(nodeVisColBut))
 	    type = COLLAPSE_ALL_NODES;
+	else if (source.equals(fitViewBut))
+	    type = FIT_VIEW;
 	else if (source.equals(printBut))
 	    type = PRINT;
 	else if (source.equals(closeBut))
@@ -459,6 +560,24 @@ public class MapControls extends JFrame implements ActionListener,
 		((ControlListener) listeners.elementAt(i)).
 		    controlActionPerformed(ce);
 	}
+	else if (source.equals(repulsionThetaSlider)) {
+	    ControlEvent ce = new ControlEvent(REPULSION_THETA,
+					       repulsionThetaSlider.getValue());
+	    for (int i = 0; i < listeners.size(); i++)
+		((ControlListener) listeners.elementAt(i)).
+		    controlActionPerformed(ce);
+	}
+	else if (source.equals(linkFilterThresholdSlider)) {
+	    // rebuilding the edges is too slow to follow the slider
+	    if (linkFilterThresholdSlider.getValueIsAdjusting())
+		return;
+	    ControlEvent ce =
+		new ControlEvent(LINK_FILTER_THRESHOLD,
+				 linkFilterThresholdSlider.getValue());
+	    for (int i = 0; i < listeners.size(); i++)
+		((ControlListener) listeners.elementAt(i)).
+		    controlActionPerformed(ce);
+	}
     }
 
 
@@ -644,6 +763,45 @@ public class MapControls extends JFrame implements ActionListener,
 	else if (source.equals(animationOffBut)) {
 	    type = STOP_ANIMATION;
 	}
+	else if (source.equals(repulsionExactBut)) {
+	    if (state == ItemEvent.DESELECTED)
+		return;
+	    type = REPULSION_MODE;
+	    value = EXACT_REPULSION;
+	    repulsionThetaSlider.setEnabled(false);
+	    repulsionThetaLabel.setEnabled(false);
+	}
+	else if (source.equals(repulsionBHBut)) {
+	    if (state == ItemEvent.DESELECTED)
+		return;
+	    type = REPULSION_MODE;
+	    value = BARNES_HUT_REPULSION;
+	    repulsionThetaSlider.setEnabled(true);
+	    repulsionThetaLabel.setEnabled(true);
+	}
+	else if (source.equals(linkFilterAllBut)) {
+	    if (state == ItemEvent.DESELECTED)
+		return;
+	    type = LINK_FILTER_MODE;
+	    value = ALL_LINKS;
+	    linkFilterThresholdSlider.setEnabled(false);
+	    linkFilterThresholdLabel.setEnabled(false);
+	}
+	else if (source.equals(linkFilterWeightBut) ||
+		 source.equals(linkFilterTopBut) ||
+		 source.equals(linkFilterBackboneBut)) {
+	    if (state == ItemEvent.DESELECTED)
+		return;
+	    type = LINK_FILTER_MODE;
+	    if (source.equals(linkFilterWeightBut))
+		value = MIN_WEIGHT_LINKS;
+	    else if (source.equals(linkFilterTopBut))
+		value = TOP_K_LINKS;
+	    else
+		value = BACKBONE_LINKS;
+	    linkFilterThresholdSlider.setEnabled(true);
+	    linkFilterThresholdLabel.setEnabled(true);
+	}
 
 	ControlEvent ce = new ControlEvent(type, value);
 
@@ -662,6 +820,30 @@ public class MapControls extends JFrame implements ActionListener,
     }
 
 
+    /**
+       Shows the given link filter mode and threshold, e.g. the ones
+       a map starts out with, telling the listeners about them.
+    **/
+    public void setLinkFilter(int mode, int threshold)
+    {
+	linkFilterThresholdSlider.setValue(threshold);
+	switch (mode) {
+	case ALL_LINKS :
+	    linkFilterAllBut.setSelected(true);
+	    break;
+	case MIN_WEIGHT_LINKS :
+	    linkFilterWeightBut.setSelected(true);
+	    break;
+	case TOP_K_LINKS :
+	    linkFilterTopBut.setSelected(true);
+	    break;
+	case BACKBONE_LINKS :
+	    linkFilterBackboneBut.setSelected(true);
+	    break;
+	}
+    }
+
+
     public void addControlListener(ControlListener listener)
     {
 	listeners.addElement(listener);
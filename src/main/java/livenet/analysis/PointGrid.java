@@ -0,0 +1,321 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/**
+   A uniform grid over a set of points, used to find the points near
+   a given location or inside a given area. Points are filed into
+   square cells of a given size. Only cells that actually contain
+   points are kept, in an open-addressing hash table with primitive
+   long keys made of the cell coordinates, so that looking up a cell
+   doesn't allocate.
+
+   The grid is kept up to date incrementally: points are identified
+   by index, and updating a point only moves it to another cell when
+   it has crossed a cell boundary since the previous update.
+**/
+class PointGrid
+{
+    double cellSize;
+
+    // hash table of cell keys and cells; a slot is empty if it has
+    // no cell, as any long is a valid key
+    private long[] keys;
+    private Cell[] cells;
+    private int cellCount = 0;
+
+    // position of each point, and the cell and slot it is filed in
+    // (null if it is not part of the grid)
+    double[] x = new double[0];
+    double[] y = new double[0];
+    Cell[] cellOf = new Cell[0];
+    int[] slotOf = new int[0];
+
+
+    PointGrid(double cellSize)
+    {
+	this.cellSize = cellSize;
+	allocate(64);
+    }
+
+
+    /**
+       Sets the size of the grid cells. If the size changes, all
+       points are dropped from the grid and have to be updated
+       again.
+    **/
+    void setCellSize(double cellSize)
+    {
+	if (cellSize == this.cellSize)
+	    return;
+	this.cellSize = cellSize;
+	allocate(64);
+	cellCount = 0;
+	for (int i = 0; i < cellOf.length; i++)
+	    cellOf[i] = null;
+    }
+
+
+    /**
+       Records the position of point i. Points that are not present
+       (e.g. invisible nodes) are removed from the grid.
+    **/
+    void update(int i, double px, double py, boolean present)
+    {
+	if (i >= x.length)
+	    grow(i + 1);
+	x[i] = px;
+	y[i] = py;
+
+	Cell current = cellOf[i];
+	Cell target = null;
+	if (present) {
+	    int cx = cellIndex(px);
+	    int cy = cellIndex(py);
+	    if (current != null && current.cx == cx && current.cy == cy)
+		return;
+	    target = getCell(cx, cy, true);
+	}
+	if (current == target)
+	    return;
+	if (current != null)
+	    remove(i);
+	if (target != null)
+	    add(target, i);
+    }
+
+
+    /**
+       Adds the points inside the given rectangle, borders included,
+       to the given vector, in no particular order.
+    **/
+    void query(double minX, double minY, double maxX, double maxY,
+	       IntVector result)
+    {
+	int cx1 = cellIndex(minX);
+	int cy1 = cellIndex(minY);
+	int cx2 = cellIndex(maxX);
+	int cy2 = cellIndex(maxY);
+
+	// a large area has fewer non-empty cells than cells in it
+	if ((double) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) > cellCount) {
+	    for (int i = 0; i < cells.length; i++) {
+		Cell cell = cells[i];
+		if (cell != null && cell.cx >= cx1 && cell.cx <= cx2 &&
+		    cell.cy >= cy1 && cell.cy <= cy2)
+		    query(cell, minX, minY, maxX, maxY, result);
+	    }
+	} else {
+	    for (int cx = cx1; cx <= cx2; cx++)
+		for (int cy = cy1; cy <= cy2; cy++) {
+		    Cell cell = getCell(cx, cy, false);
+		    if (cell != null)
+			query(cell, minX, minY, maxX, maxY, result);
+		}
+	}
+    }
+
+
+    private void query(Cell cell, double minX, double minY, double maxX,
+		       double maxY, IntVector result)
+    {
+	for (int k = 0; k < cell.count; k++) {
+	    int i = cell.points[k];
+	    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY)
+		result.addElement(i);
+	}
+    }
+
+
+    int cellIndex(double coord)
+    {
+	return (int) Math.floor(coord / cellSize);
+    }
+
+
+    Cell getCell(int cx, int cy, boolean create)
+    {
+	long key = key(cx, cy);
+	int i = slot(key);
+	for (; cells[i] != null; i = next(i))
+	    if (keys[i] == key)
+		return cells[i];
+	if (! create)
+	    return null;
+
+	Cell cell = new Cell(cx, cy);
+	keys[i] = key;
+	cells[i] = cell;
+	if (++cellCount > cells.length / 2)
+	    rehash();
+	return cell;
+    }
+
+
+    /**
+       Returns the non-empty cells, in no particular order.
+    **/
+    Cell[] getCells()
+    {
+	Cell[] result = new Cell[cellCount];
+	int n = 0;
+	for (int i = 0; i < cells.length; i++)
+	    if (cells[i] != null)
+		result[n++] = cells[i];
+	return result;
+    }
+
+
+    private static long key(int cx, int cy)
+    {
+	return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+
+    private int slot(long key)
+    {
+	long h = key * 0x9E3779B97F4A7C15L;
+	return (int) (h >>> 40) & (cells.length - 1);
+    }
+
+
+    private int next(int slot)
+    {
+	return (slot + 1) & (cells.length - 1);
+    }
+
+
+    private void allocate(int capacity)
+    {
+	keys = new long[capacity];
+	cells = new Cell[capacity];
+    }
+
+
+    private void rehash()
+    {
+	long[] oldKeys = keys;
+	Cell[] oldCells = cells;
+	allocate(2 * oldCells.length);
+	for (int j = 0; j < oldCells.length; j++) {
+	    if (oldCells[j] == null)
+		continue;
+	    int i = slot(oldKeys[j]);
+	    while (cells[i] != null)
+		i = next(i);
+	    keys[i] = oldKeys[j];
+	    cells[i] = oldCells[j];
+	}
+    }
+
+
+    /**
+       Removes a cell from the hash table, moving the cells after it
+       in its run back so that no lookup stops short at the gap.
+    **/
+    private void removeCell(Cell cell)
+    {
+	long key = key(cell.cx, cell.cy);
+	int gap = slot(key);
+	while (cells[gap] != cell)
+	    gap = next(gap);
+
+	for (int j = next(gap); cells[j] != null; j = next(j)) {
+	    // a cell may fill the gap unless its own slot lies
+	    // cyclically after the gap, up to where it is now
+	    int home = slot(keys[j]);
+	    boolean between = (gap <= j) ? (gap < home && home <= j)
+		: (gap < home || home <= j);
+	    if (! between) {
+		keys[gap] = keys[j];
+		cells[gap] = cells[j];
+		gap = j;
+	    }
+	}
+	cells[gap] = null;
+	cellCount--;
+    }
+
+
+    private void add(Cell cell, int i)
+    {
+	if (cell.count == cell.points.length) {
+	    int[] points = new int[cell.count * 2];
+	    System.arraycopy(cell.points, 0, points, 0, cell.count);
+	    cell.points = points;
+	}
+	cell.points[cell.count] = i;
+	cellOf[i] = cell;
+	slotOf[i] = cell.count;
+	cell.count++;
+    }
+
+
+    private void remove(int i)
+    {
+	Cell cell = cellOf[i];
+	int slot = slotOf[i];
+
+	// move the last point of the cell into the vacated slot
+	cell.count--;
+	int last = cell.points[cell.count];
+	cell.points[slot] = last;
+	slotOf[last] = slot;
+	cellOf[i] = null;
+
+	if (cell.count == 0)
+	    removeCell(cell);
+    }
+
+
+    private void grow(int size)
+    {
+	size = Math.max(size, x.length * 2);
+
+	double[] newX = new double[size];
+	double[] newY = new double[size];
+	Cell[] newCellOf = new Cell[size];
+	int[] newSlotOf = new int[size];
+	System.arraycopy(x, 0, newX, 0, x.length);
+	System.arraycopy(y, 0, newY, 0, y.length);
+	System.arraycopy(cellOf, 0, newCellOf, 0, cellOf.length);
+	System.arraycopy(slotOf, 0, newSlotOf, 0, slotOf.length);
+	x = newX;
+	y = newY;
+	cellOf = newCellOf;
+	slotOf = newSlotOf;
+    }
+
+
+    /**
+       The points filed in one grid cell.
+    **/
+    static class Cell
+    {
+	int cx;
+	int cy;
+	int[] points = new int[4];
+	int count;
+
+
+	Cell(int cx, int cy)
+	{
+	    this.cx = cx;
+	    this.cy = cy;
+	}
+    }
+}
@@ -0,0 +1,55 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Random;
+
+
+/**
+   A way of calculating the repulsion forces between the nodes of a
+   graph layout. Repulsion only acts between nodes closer than a
+   cutoff distance; each node closer than the cutoff contributes
+   strength times its offset divided by the squared distance, and
+   nodes at exactly the same position push each other apart
+   randomly. Implementations may approximate these forces.
+
+   The calculation is divided into work items, each covering a
+   distinct set of points, so that it can be spread over several
+   threads.
+**/
+interface RepulsionAlgorithm
+{
+    /**
+       Prepares the calculation for the current positions of the
+       first count points, and returns the number of work items.
+       Points whose present flag is false neither exert nor receive
+       any force.
+    **/
+    int prepare(double[] x, double[] y, boolean[] present, int count,
+		double cutoff);
+
+
+    /**
+       Adds the repulsion acting on the points of the work items from
+       first (inclusive) to last (exclusive) to fx and fy, drawing
+       the random pushes between coincident points from the given
+       generator. May be called concurrently for disjoint ranges of
+       work items.
+    **/
+    void addForces(int first, int last, double strength, Random random,
+		   double[] fx, double[] fy);
+}
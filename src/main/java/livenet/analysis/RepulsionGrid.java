@@ -0,0 +1,131 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Random;
+
+
+/**
+   A point grid used to find the pairs of nodes of a graph layout
+   that are close enough to repel each other. Points are filed into
+   cells the size of the repulsion cutoff, so that all points within
+   the cutoff of a given point lie in its own cell or one of the
+   eight cells around it.
+**/
+class RepulsionGrid extends PointGrid implements RepulsionAlgorithm
+{
+    private double cutoff;
+
+    // the non-empty cells as of the last call of prepare()
+    private Cell[] cellList = new Cell[0];
+
+
+    RepulsionGrid(double cellSize)
+    {
+	super(cellSize);
+    }
+
+
+    /**
+       Updates the grid with the current positions of the points. The
+       work items are the non-empty cells.
+    **/
+    public int prepare(double[] x, double[] y, boolean[] present, int count,
+		       double cutoff)
+    {
+	setCellSize(cutoff);
+	this.cutoff = cutoff;
+	for (int i = 0; i < count; i++)
+	    update(i, x[i], y[i], present[i]);
+
+	cellList = getCells();
+	return cellList.length;
+    }
+
+
+    public void addForces(int first, int last, double strength,
+			  Random random, double[] fx, double[] fy)
+    {
+	// all points of a cell share the same neighbouring cells, so
+	// look these up only once per cell
+	double limit = cutoff * cutoff;
+	double[] force = new double[2];
+	Cell[] around = new Cell[9];
+	for (int c = first; c < last; c++) {
+	    Cell home = cellList[c];
+	    int n = getNeighbours(home, around);
+	    for (int k = 0; k < home.count; k++) {
+		int i = home.points[k];
+		force[0] = 0;
+		force[1] = 0;
+		addRepulsion(i, around, n, limit, strength, random, force);
+		fx[i] += force[0];
+		fy[i] += force[1];
+	    }
+	}
+    }
+
+
+    /**
+       Stores the non-empty cells among the given cell and the eight
+       cells around it in the given array, and returns their number.
+    **/
+    private int getNeighbours(Cell home, Cell[] around)
+    {
+	int n = 0;
+	for (int cx = home.cx - 1; cx <= home.cx + 1; cx++) {
+	    for (int cy = home.cy - 1; cy <= home.cy + 1; cy++) {
+		Cell cell = getCell(cx, cy, false);
+		if (cell != null)
+		    around[n++] = cell;
+	    }
+	}
+	return n;
+    }
+
+
+    /**
+       Adds the repulsion acting on point i from the points in the
+       given cells to force[0] and force[1].
+    **/
+    private void addRepulsion(int i, Cell[] around, int n, double limit,
+			      double strength, Random random,
+			      double[] force)
+    {
+	double xi = x[i];
+	double yi = y[i];
+	for (int c = 0; c < n; c++) {
+	    Cell cell = around[c];
+	    int[] points = cell.points;
+	    for (int k = 0; k < cell.count; k++) {
+		int j = points[k];
+		if (j == i)
+		    continue;
+		double vx = xi - x[j];
+		double vy = yi - y[j];
+		double len = vx * vx + vy * vy;
+		if (len == 0) {
+		    force[0] += random.nextDouble();
+		    force[1] += random.nextDouble();
+		} else if (len < limit) {
+		    force[0] += strength * vx / len;
+		    force[1] += strength * vy / len;
+		}
+	    }
+	}
+    }
+}
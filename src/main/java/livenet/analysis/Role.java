@@ -20,12 +20,20 @@ import java.util.Vector;
 
 public class Role extends WorkspaceElement
 {
+    // keeps serialized workspace trees saved by earlier versions readable
+    private static final long serialVersionUID = 1271782325479085954L;
+
     WorkspaceNode workspace;
     String name;
     DateTime creationDateTime;
     Vector participants = new Vector();
     Vector assignedObjects = new Vector();
 
+    // reads the assigned objects from a snapshot on first access
+    transient SnapshotLoader loader;
+    transient int snapshotId;
+    transient int assignedObjectCount;
+
 
     public Role(WorkspaceNode workspace, String name,
 		DateTime creationDateTime)
@@ -44,6 +52,37 @@ public class Role extends WorkspaceElement
 
     public void addAssignedObject(WorkspaceObject o)
     {
-	assignedObjects.addElement(o);
+	getAssignedObjects().addElement(o);
+	if (workspace != null)
+	    workspace.roleDensityIncreased(assignedObjects.size());
+    }
+
+
+    public Vector getAssignedObjects()
+    {
+	if (loader != null)
+	    load();
+	return assignedObjects;
+    }
+
+
+    /**
+       Returns the number of assigned objects, without reading them
+       from the snapshot if they haven't been accessed yet.
+    **/
+    public int getAssignedObjectCount()
+    {
+	if (loader != null)
+	    return assignedObjectCount;
+	return assignedObjects.size();
+    }
+
+
+    private synchronized void load()
+    {
+	if (loader != null) {
+	    loader.loadAssignedObjects(snapshotId, assignedObjects);
+	    loader = null;
+	}
     }
 }
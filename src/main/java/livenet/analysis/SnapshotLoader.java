@@ -0,0 +1,33 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Vector;
+
+
+/**
+   Reads those parts of a workspace network that are only loaded from
+   a snapshot when they are first accessed. Entities are identified
+   by their id within the snapshot.
+**/
+interface SnapshotLoader extends LinkObjectLoader
+{
+    void loadAssignedObjects(int role, Vector objects);
+
+
+    void loadMessages(int node, Vector sent, Vector received);
+}
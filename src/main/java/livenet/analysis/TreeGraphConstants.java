@@ -23,11 +23,18 @@ public interface TreeGraphConstants
 {
     // dimensions
     public final int initialEdgeLength = 120;
+    public final int initialTheta = 50;  // Barnes-Hut theta, in hundredths
+    public final int initialLinkThreshold = 5;  // see LinkFilter
+    public final int maxUnfilteredLinks = 20000;  // shown from the start
     public final int marginGap = 3;
     public final int focusGap = 3;
     public final int focusThickness = 2;
     public final int focusLength = 5;
 
+    // view
+    public final double zoomStep = 1.25;  // per notch of the mouse wheel
+    public final double maxZoom = 4;
+
     // node colours
     final Color nodeColour = new Color(250, 220, 100);
     final Color leafColour = Color.white;
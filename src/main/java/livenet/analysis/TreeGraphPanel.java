@@ -41,13 +41,15 @@ package livenet.analysis;
 import java.util.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.*;
 import java.awt.print.*;
 import java.sql.Connection;
 import javax.swing.*;
 
 
-public class TreeGraphPanel extends JPanel implements Runnable, Printable,
-    MouseListener, MouseMotionListener, TreeGraphConstants, ControlListener
+public class TreeGraphPanel extends JPanel implements Printable,
+    MouseListener, MouseMotionListener, MouseWheelListener,
+    TreeGraphConstants, ControlListener
 {
     // set to true to get debugging output
     private final boolean DEBUG = false;
@@ -60,22 +62,49 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     Vector nodes = new Vector();
     Vector edges = new Vector();
 
-    Thread relaxer;
-
-    // Number of times the relax() method has been called since the
-    // last user action
-    long iterations = 0;
+    // the workspaces and the links between them, other than those
+    // kept in the hypergraph, numbered; and which of the links are
+    // among the edges, by number
+    WorkspaceNetwork network;
+    boolean[] linkShown;
+
+    // visibility bookkeeping, kept up to date by setNodeVisible()
+    // and setEdgeVisible(): the visible nodes by number, the number
+    // of visible edges at each node (a link of a node to itself
+    // counting twice), and the visible nodes without visible edges,
+    // which revalidateNodeVisibility() may have to hide
+    BitSet visibleNodes = new BitSet();
+    int[] visibleEdgeCount;
+    BitSet unlinkedNodes = new BitSet();
+
+    // the nodes fixed or focused by the panel, to be let go of by
+    // focusOn()
+    BitSet fixedNodes = new BitSet();
+
+    // where the links of the hypergraph start among the edges; they
+    // always come after all others
+    int sharedEdgesStart;
+
+    // the shared elements, if the links between the workspaces
+    // sharing them are only materialized as they become visible;
+    // null if all links are materialized
+    WorkspaceHypergraph hypergraph;
+
+    // the links of the hypergraph currently among the edges, and
+    // whether they have changed since the engine was last told
+    HashSet sharedLinks = new HashSet();
+    boolean sharedLinksChanged = false;
+
+    // decides which of the links between workspaces become edges
+    LinkFilter linkFilter;
+
+    // the engine laying out the graph
+    ForceLayoutEngine engine;
 
     // Maximum number of iterations to recalculate spring forces after
     // the last user action
     long maxIterations = 20;
 
-    // Have major changes to node positions occurred in the last loop?
-    boolean noMajorChanges;
-
-    // Fraction of edgelength that constitutes a major change
-    double majorChangeFraction = 0.02;
-
     // Distance from top edge to start placing nodes
     int topOffset = 150;
     
@@ -105,9 +134,53 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     // Graphics object of the offscreen image
     Graphics offgraphics;
 
+    // The transform from world to panel coordinates, as the user has
+    // zoomed and panned the view
+    AffineTransform view = new AffineTransform();
+
+    // The area the nodes are laid out in (see getWorld())
+    volatile Rectangle world;
+
+    // Number of visible nodes
+    int visibleNodeCount = 0;
+
+    // The visible nodes, filed by position for finding those in view
+    PointGrid nodeGrid = new PointGrid(initialEdgeLength);
+
+    // Largest extent of a node from its centre to the sides of its
+    // box, as painted so far
+    int maxNodeExtent = initialEdgeLength;
+
+    // The visible edges, filed by their midpoints for finding those
+    // in view, by their positions in the edges vector. The positions
+    // of the edges of node n are nodeEdges[nodeEdgeStart[n]] up to
+    // nodeEdges[nodeEdgeStart[n + 1]], so that the edges of the nodes
+    // that have moved can be filed again. The grid is rebuilt when
+    // the edges vector has changed.
+    PointGrid edgeGrid;
+    private int[] nodeEdgeStart;
+    private int[] nodeEdges;
+    private double[] edgeLengths;
+    private double longestEdge;
+    private BitSet movedNodes = new BitSet();
+    private boolean edgesChanged = true;
+
+    // Point in the panel where the view was last dragged to, while
+    // the user pans it
+    Point panPoint;
+
     boolean printing = false;
     Font nodeFont = new Font("SansSerif", Font.PLAIN, 10);
 
+    // The font the node boxes are currently sized for, the padding
+    // around the labels, the height of the boxes and the ascent of
+    // the labels in them
+    Font labelFont;
+    int padX;
+    int padY;
+    int boxHeight;
+    int labelAscent;
+
     // node colouring modes
     public static final int PARENT_CHILD = 0;
     public static final int ABSOLUTE_WORKSPACE_DENSITY = 1;
@@ -135,6 +208,12 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     Color[] msgIntensityColours;
     Color[] msgRecencyColours;
 
+    // the colours of each colouring mode, followed by the plain node
+    // colour and the colour of special nodes, and for each mode the
+    // index of each node's colour among them, by node id
+    Color[][] modeColours = new Color[MESSAGE_RECENCY + 1][];
+    short[][] colourIndices = new short[MESSAGE_RECENCY + 1][];
+
     // edge pulling force
     boolean childEdgeForce = true;
     boolean goalEdgeForce = false;
@@ -159,6 +238,11 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     // edge length
     int edgeLength = initialEdgeLength;
 
+    // repulsion calculation mode, and the accuracy parameter of the
+    // Barnes-Hut approximation
+    int repulsionMode = MapControls.EXACT_REPULSION;
+    double theta = initialTheta / 100.0;
+
     // legend stuff
     ColourLegend legend;
     Point legendLocation;
@@ -170,6 +254,19 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
     public TreeGraphPanel(Connection con, WorkspaceNode rootNode,
 			  MapControls controls)
+    {
+	this(con, rootNode, null, controls);
+    }
+
+
+    /**
+       Creates a panel showing the given workspace tree, whose links
+       between workspaces sharing elements are kept in the given
+       hypergraph, unless it is null.
+    **/
+    public TreeGraphPanel(Connection con, WorkspaceNode rootNode,
+			  WorkspaceHypergraph hypergraph,
+			  MapControls controls)
     {
 	// disable double buffering
 	super(false);
@@ -178,21 +275,37 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	this.setFont(nodeFont);
 
 	this.con = con;
+	this.hypergraph = hypergraph;
 
 	addMouseListener(this);
+	addMouseWheelListener(this);
 
 	Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 	this.setSize((int) (screenSize.width * 0.9),
 		     (int) (screenSize.height * 0.9));
 
 	initializeNodes(rootNode, 0);
+	network = new WorkspaceNetwork(rootNode);
+	linkShown = new boolean[network.getLinkCount()];
+	initializeVisibility();
+	linkFilter = createInitialLinkFilter();
 	initializeEdges(rootNode);
-	rootNode.setFixed(true);
-	rootNode.setVisible(true);
+	sharedEdgesStart = edges.size();
+	fixNode(rootNode);
+	setNodeVisible(rootNode, true);
 	this.rootNode = rootNode;
 	this.fixedNode = rootNode;
 
+	// unlike the element maps, the tree is laid out until it has
+	// settled, with double-strength repulsion
+	engine = new ForceLayoutEngine(new WorkspaceLayoutGraph(this),
+				       maxIterations);
+	engine.setSettle(true);
+	engine.setCutoff(edgeLength);
+	engine.setRepulsionStrength(2, 2);
+
 	this.controls = controls;
+	controls.setLinkFilter(linkFilter.getMode(), linkFilter.getThreshold());
 	controls.addControlListener(this);
 
 	calculateStatistics();
@@ -212,25 +325,130 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
     void initializeEdges(WorkspaceNode node)
     {
-	// add edges for all linked workspaces
-	for (int i = 0; i < node.getWorkspaceLinkCount(); i++) {
-	    edges.addElement(node.getWorkspaceLink(i));
-	}
+	// add edges for all links of the node and its descendents, as
+	// far as the link filter lets them through; like their own
+	// lists of links, this adds each link once for each end
+	int id = network.idOf(node);
+	for (int n = id; n < network.getSubtreeEnd(id); n++)
+	    for (int slot = network.getSlotStart(n);
+		 slot < network.getSlotEnd(n); slot++) {
+		int l = network.getSlotLink(slot);
+		WorkspaceLink link = network.getLink(l);
+		linkShown[l] = linkFilter.accepts(link);
+		if (linkShown[l])
+		    edges.addElement(link);
+		else
+		    setLinkVisible(l, false);
+	    }
+    }
 
-	// recursively add edges for the children
-	for (int i = 0; i < node.getChildCount(); i++) {
-	    initializeEdges(node.getChild(i));
+
+    /**
+       Sets up the visibility bookkeeping from the visibility of the
+       nodes and links as they have been loaded.
+    **/
+    private void initializeVisibility()
+    {
+	visibleEdgeCount = new int[network.getNodeCount()];
+	for (int l = 0; l < network.getLinkCount(); l++)
+	    if (network.getLink(l).visible) {
+		visibleEdgeCount[network.getLinkFrom(l)]++;
+		visibleEdgeCount[network.getLinkTo(l)]++;
+	    }
+
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
+	    if (node.isVisible()) {
+		visibleNodes.set(i);
+		visibleNodeCount++;
+		nodeGrid.update(i, node.x, node.y, true);
+		if (visibleEdgeCount[i] == 0)
+		    unlinkedNodes.set(i);
+	    }
+	    if ((node.fixed && ! node.isSpecial()) || node.hasFocus())
+		fixedNodes.set(i);
 	}
     }
 
 
+    /**
+       Returns all links of the given node, including those kept in
+       the hypergraph.
+    **/
+    Vector getWorkspaceLinks(WorkspaceNode node)
+    {
+	if (hypergraph == null)
+	    return node.getWorkspaceLinks();
+	Vector links = new Vector(node.getWorkspaceLinks());
+	links.addAll(hypergraph.getLinks(node));
+	return links;
+    }
+
+
     public void reInitializeEdges()
     {
-	edges.removeAllElements();
-	initializeEdges(rootNode);
+	synchronized (engine) {
+	    edges.removeAllElements();
+	    edgesChanged = true;
+	    initializeEdges(rootNode);
+	    sharedEdgesStart = edges.size();
+	    for (Iterator i = sharedLinks.iterator(); i.hasNext(); ) {
+		WorkspaceLink link = (WorkspaceLink) i.next();
+		if (linkFilter.accepts(link)) {
+		    edges.addElement(link);
+		    edges.addElement(link);
+		}
+		else {
+		    setEdgeVisible(link, false);
+		    i.remove();
+		}
+	    }
+	}
+	engine.graphChanged();
+    }
+
+
+    /**
+       Returns the link filter the map starts out with. On busy
+       workgroups, i.e. those with more than maxUnfilteredLinks links
+       other than parent/child links, or with their links kept in the
+       hypergraph, only the strongest links of each workspace are
+       shown to begin with.
+    **/
+    private LinkFilter createInitialLinkFilter()
+    {
+	int linkCount = 0;
+	for (int l = 0; l < network.getLinkCount(); l++)
+	    if (network.getLinkType(l) != WorkspaceLink.CHILD)
+		linkCount++;
+
+	int mode = MapControls.ALL_LINKS;
+	if (hypergraph != null || linkCount > maxUnfilteredLinks)
+	    mode = MapControls.TOP_K_LINKS;
+	return new LinkFilter(mode, initialLinkThreshold, network,
+			      hypergraph);
+    }
+
+
+    /**
+       Shows only the links accepted by a link filter of the given
+       mode and threshold.
+    **/
+    void setLinkFilter(int mode, int threshold)
+    {
+	linkFilter = new LinkFilter(mode, threshold, network, hypergraph);
+	reInitializeEdges();
+	revalidateEdgeVisibility();
+	revalidateNodeVisibility();
     }
 
 
+    /**
+       Works out the colour of every node in each of the colouring
+       modes, so that painting a node or switching the mode only has
+       to look the colour up. Has to be called again whenever the data
+       the colours are based on changes.
+    **/
     void calculateStatistics()
     {
 	calculateDensities();
@@ -238,15 +456,82 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	calculateEvolutionRecencies();
 	calculateMessageIntensities();
 	calculateMessageRecencies();
+
+	setModeColours(PARENT_CHILD, new Color[] { nodeColour, leafColour });
+	setModeColours(ABSOLUTE_WORKSPACE_DENSITY, densityColours);
+	setModeColours(MINIMUM_WORKSPACE_DENSITY, densityColours);
+	setModeColours(MAXIMUM_WORKSPACE_DENSITY, densityColours);
+	setModeColours(MEAN_WORKSPACE_DENSITY, densityColours);
+	setModeColours(EVOLUTION_INTENSITY, evolIntensityColours);
+	setModeColours(EVOLUTION_RECENCY, evolRecencyColours);
+	setModeColours(MESSAGE_INTENSITY, msgIntensityColours);
+	setModeColours(MESSAGE_RECENCY, msgRecencyColours);
+
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
+	    if (node.isSpecial()) {
+		for (int mode = 0; mode < colourIndices.length; mode++)
+		    colourIndices[mode][i] =
+			(short) (modeColours[mode].length - 1);
+		continue;
+	    }
+	    colourIndices[PARENT_CHILD][i] = (short) (node.isLeaf() ? 1 : 0);
+	    setColourIndex(ABSOLUTE_WORKSPACE_DENSITY, i,
+			   densityHist.getIndex(node.getAbsDensity()));
+	    setColourIndex(MINIMUM_WORKSPACE_DENSITY, i,
+			   densityHist.getIndex(node.getMinRoleDensity()));
+	    setColourIndex(MAXIMUM_WORKSPACE_DENSITY, i,
+			   densityHist.getIndex(node.getMaxRoleDensity()));
+	    setColourIndex(MEAN_WORKSPACE_DENSITY, i, densityHist.
+			   getIndex((int) node.getMeanRoleDensity()));
+	    setColourIndex(EVOLUTION_INTENSITY, i, evolIntensityHist.
+			   getIndex(node.getEvolutionIntensity()));
+	    setColourIndex(EVOLUTION_RECENCY, i, evolRecencyHist.
+			   getIndex(node.getEvolutionRecency()));
+	    setColourIndex(MESSAGE_INTENSITY, i, msgIntensityHist.
+			   getIndex(node.getMessageIntensity()));
+	    setColourIndex(MESSAGE_RECENCY, i, msgRecencyHist.
+			   getIndex(node.getMessageRecency()));
+	}
+    }
+
+
+    /**
+       Sets the colours of the given colouring mode, and makes room for
+       the colour index of each node in that mode.
+    **/
+    private void setModeColours(int mode, Color[] colours)
+    {
+	Color[] all = new Color[colours.length + 2];
+	System.arraycopy(colours, 0, all, 0, colours.length);
+	all[colours.length] = nodeColour;
+	all[colours.length + 1] = specialColour;
+	modeColours[mode] = all;
+	colourIndices[mode] = new short[network.getNodeCount()];
+    }
+
+
+    /**
+       Sets the colour of the given node in the given colouring mode to
+       the colour at the given index, which comes from the mode's
+       histogram. Values without a colour of their own, beyond the
+       first 256 of the histogram, are shown in the plain node colour.
+    **/
+    private void setColourIndex(int mode, int node, int index)
+    {
+	int colours = modeColours[mode].length - 2;
+	if (index < 0 || index >= colours)
+	    index = colours;
+	colourIndices[mode][node] = (short) index;
     }
 
 
     void calculateDensities()
     {
-	densityHist = new Histogram(nodes.size() * 4);
+	densityHist = new Histogram(network.getNodeCount() * 4);
 
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode node = (WorkspaceNode) nodes.elementAt(i);
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
 	    if (node.isSpecial())
 		continue;
 	    densityHist.put(node.getAbsDensity());
@@ -308,10 +593,10 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
     void calculateEvolutionIntensities()
     {
-	evolIntensityHist = new FloatHistogram(nodes.size());
+	evolIntensityHist = new FloatHistogram(network.getNodeCount());
 
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode node = (WorkspaceNode) nodes.elementAt(i);
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
 	    if (node.isSpecial())
 		continue;
 	    evolIntensityHist.put(node.getEvolutionIntensity());
@@ -336,10 +621,10 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
     void calculateEvolutionRecencies()
     {
-	evolRecencyHist = new FloatHistogram(nodes.size());
+	evolRecencyHist = new FloatHistogram(network.getNodeCount());
 
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode node = (WorkspaceNode) nodes.elementAt(i);
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
 	    if (node.isSpecial())
 		continue;
 	    evolRecencyHist.put(node.getEvolutionRecency());
@@ -364,10 +649,10 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
     void calculateMessageIntensities()
     {
-	msgIntensityHist = new FloatHistogram(nodes.size());
+	msgIntensityHist = new FloatHistogram(network.getNodeCount());
 
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode node = (WorkspaceNode) nodes.elementAt(i);
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
 	    if (node.isSpecial())
 		continue;
 	    msgIntensityHist.put(node.getMessageIntensity());
@@ -392,10 +677,10 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
     void calculateMessageRecencies()
     {
-	msgRecencyHist = new FloatHistogram(nodes.size());
+	msgRecencyHist = new FloatHistogram(network.getNodeCount());
 
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode node = (WorkspaceNode) nodes.elementAt(i);
+	for (int i = 0; i < network.getNodeCount(); i++) {
+	    WorkspaceNode node = network.getNode(i);
 	    if (node.isSpecial())
 		continue;
 	    msgRecencyHist.put(node.getMessageRecency());
@@ -439,6 +724,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	edgeLength = length;
 	for (int i = 0; i < edges.size(); i++)
 	    ((WorkspaceLink) edges.elementAt(i)).length = length;
+	engine.setCutoff(length);
     }
 
 
@@ -454,267 +740,77 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     }
 
 
-    Color getNodeColour(WorkspaceNode node)
-    {
-	if (node.isSpecial())
-	    return specialColour;
-
-	Color paintColour = nodeColour;
-
-	try {
-	    switch (nodeColouring) {
-	    case PARENT_CHILD :
-// 		if (node == pick)
-// 		    paintColour = selectColour;
-// 		else if (node.isFixed())
-// 		    paintColour = fixedColour;
-		if (node.isLeaf())
-		    paintColour = leafColour;
-		else
-		    paintColour = nodeColour;
-		break;
-		
-	    case ABSOLUTE_WORKSPACE_DENSITY :
-		paintColour = densityColours[densityHist.
-					     getIndex(node.getAbsDensity())];
-		break;
-
-	    case MINIMUM_WORKSPACE_DENSITY :
-		paintColour = densityColours[densityHist.
-					   getIndex(node.getMinRoleDensity())];
-		break;
-
-	    case MAXIMUM_WORKSPACE_DENSITY :
-		paintColour = densityColours[densityHist.
-					   getIndex(node.getMaxRoleDensity())];
-		break;
-
-	    case MEAN_WORKSPACE_DENSITY :
-		paintColour = densityColours[densityHist.getIndex((int)
-					     node.getMeanRoleDensity())];
-		break;
-
-	    case EVOLUTION_INTENSITY :
-		paintColour = evolIntensityColours[evolIntensityHist.getIndex(
-					        node.getEvolutionIntensity())];
-		break;
-
-	    case EVOLUTION_RECENCY :
-		paintColour = evolRecencyColours[evolRecencyHist.getIndex(
-					         node.getEvolutionRecency())];
-		break;
-
-	    case MESSAGE_INTENSITY :
-		paintColour = msgIntensityColours[msgIntensityHist.getIndex(
-					          node.getMessageIntensity())];
-		break;
-
-	    case MESSAGE_RECENCY :
-		paintColour = msgRecencyColours[msgRecencyHist.getIndex(
-						node.getMessageRecency())];
-		break;
-	    }
-	}
-	catch (Exception e) {
-	    System.out.println(e.getMessage());
-	}
-
-	return paintColour;
-    }
-
-
-    public void run()
+    /**
+       Returns the colour of the node of the given id in the current
+       colouring mode.
+    **/
+    Color getNodeColour(int node)
     {
-        Thread me = Thread.currentThread();
-	while (relaxer == me) {
-	    relax();
-	    try {
-		Thread.sleep(100);
-	    } catch (InterruptedException e) {
-		break;
-	    }
-	}
+	return modeColours[nodeColouring][colourIndices[nodeColouring][node]];
     }
 
 
     /**
-       Perform the calculation of spring forces and repulsion forces
-       that apply to edges and nodes respectively.
+       Works out the padding and height of the node boxes for the font
+       of the given metrics. If the font has changed since the last
+       time, the labels of all nodes have to be measured again.
     **/
-    synchronized void relax()
+    private void updateLabelMetrics(FontMetrics fm)
     {
-	if (++iterations > maxIterations && noMajorChanges)
+	if (fm.getFont().equals(labelFont))
 	    return;
+	labelFont = fm.getFont();
 
-	// recalculate spring force
-	for (int i = 0 ; i < edges.size() ; i++) {
-	    WorkspaceLink e = (WorkspaceLink) edges.elementAt(i);
-	    if (! (e.fromNode.isVisible() && e.toNode.isVisible()) ||
-		(e.type == WorkspaceLink.CHILD && ! childEdgeForce) ||
-		(e.type == WorkspaceLink.GOAL && ! goalEdgeForce) ||
-		(e.type == WorkspaceLink.ACTION && ! actionEdgeForce) ||
-		(e.type == WorkspaceLink.DISCUSSION &&
-		 ! discussionEdgeForce) ||
-		(e.type == WorkspaceLink.DOCUMENT && ! documentEdgeForce) ||
-		(e.type == WorkspaceLink.MESSAGERULE &&
-		 ! messageRuleEdgeForce) ||
-		(e.type == WorkspaceLink.PARTICIPANT &&
-		 ! participantEdgeForce))
-		continue;
-	    double vx = e.toNode.x - e.fromNode.x;
-	    double vy = e.toNode.y - e.fromNode.y;
-	    double len = Math.sqrt(vx * vx + vy * vy);
-            len = (len == 0) ? .0001 : len;
-
-	    int springElasticity = 10;
-
-	    // edges connecting two expanded parent nodes should be
-	    // more stretchy
-	    if (! e.fromNode.isLeaf() && ! e.fromNode.isVisibleLeaf() &&
-		! e.toNode.isLeaf() && ! e.toNode.isVisibleLeaf())
-		springElasticity *= 5;
-
-	    //double f = (e.length - len) / (len * 3);
-	    double f = (e.length - len) / (len * springElasticity);
-	    double dx = f * vx;
-	    double dy = f * vy;
-
-	    e.toNode.dx += dx;
-	    e.toNode.dy += dy;
-	    e.fromNode.dx += -dx;
-	    e.fromNode.dy += -dy;
-	}
-
-	// recalculate repulsion force
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceNode n1 = (WorkspaceNode) nodes.elementAt(i);
-	    if (! n1.isVisible())
-		continue;
-	    double dx = 0;
-	    double dy = 0;
-
-	    for (int j = 0 ; j < nodes.size() ; j++) {
-
-		if (i == j)
-		    continue;
-
-		WorkspaceNode n2 = (WorkspaceNode) nodes.elementAt(j);
-
-		if (! n2.isVisible())
-		    continue;
-
-		double vx = n1.x - n2.x;
-		double vy = n1.y - n2.y;
-		double len = vx * vx + vy * vy;
-		if (len == 0) {
-		    dx += Math.random();
-		    dy += Math.random();
-		} else if (len < edgeLength * edgeLength) {
-		    // try: double deltas
-		    dx += 2 * vx / len;
-		    dy += 2 * vy / len;
-		}
-	    }
-	    double dlen = dx * dx + dy * dy;
-	    if (dlen > 0) {
-		dlen = Math.sqrt(dlen) / 2;
-		n1.dx += dx / dlen;
-		n1.dy += dy / dlen;
-	    }
-	}
-
-	Dimension d = this.getSize();
-	double maxDx = 0.0;
-	double maxDy = 0.0;
-
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceNode n = (WorkspaceNode) nodes.elementAt(i);
-
-	    if (! n.isVisible())
-		continue;
-
-	    if (n.dx > maxDx)
-		maxDx = n.dx;
-
-	    if (n.dy > maxDy)
-		maxDy = n.dy;
-
-	    // If it's a movable node, move it a few pixels according to dx, dy
-	    if (! n.fixed) {
-		// the move should be in the range -5..5
-		n.x += Math.max(-5, Math.min(5, n.dx));
-		n.y += Math.max(-5, Math.min(5, n.dy));
-            }
-
-// 	    // If the node is too far above its parent, move it down
-// 	    if (childEdgeForce && ! (n.getParent() == null))
-// 		if ((n.getParent().isVisible()) &&
-// 		    (n.y < (n.getParent().y - (0.33 * edgeLength))) )
-// 		    n.y = n.getParent().y - (0.33 * edgeLength);
-
-	    // If the node is (partly) outside the panel, move it back in
-            if (n.x1 < marginGap) {
-		n.x += marginGap - n.x1;
-		n.x2 += marginGap - n.x1;
-                n.x1 = 0 + marginGap;
-            } else if (n.x2 > d.width - marginGap) {
-		n.x -= n.x2 - (d.width - marginGap);
-		n.x1 -= n.x2 - (d.width - marginGap);
-                n.x2 = d.width - marginGap;
-            }
-            if (n.y1 < marginGap) {
-		n.y += marginGap - n.y1;
-		n.y2 += marginGap - n.y1;
-                n.y1 = marginGap;
-            } else if (n.y2 > d.height - marginGap) {
-		n.y -= n.y2 - (d.height - marginGap);
-		n.y1 -= n.y2 - (d.height - marginGap);
-                n.y2 = d.height - marginGap;
-            }
-
-	    n.dx /= 2;
-	    n.dy /= 2;
-	}
-	repaint();
+	// horizontal and vertical padding
+	padX = fm.getMaxAdvance() / 2;
+	if (padX < 1)
+	    padX = 10;
+	padY = (int) ((double) fm.getHeight() * 0.1);
+	// make sure the node box is big enough for all edge types to
+	// lie within its boundary
+	if (fm.getHeight() + padY < 17)
+	    padY = 17 - fm.getHeight();
 
-	// if there hasn't been significant movement in the graph
-	// disable animation
-	noMajorChanges = ((maxDx < edgeLength * majorChangeFraction) &&
-			  (maxDy < edgeLength * majorChangeFraction));
+	boxHeight = fm.getHeight() + padY;
+	labelAscent = fm.getAscent();
+	for (int i = 0; i < nodes.size(); i++)
+	    ((WorkspaceNode) nodes.elementAt(i)).boxWidth = 0;
     }
 
 
     /**
-       Draw a node in the panel.
+       Draw the node of the given id in the panel.
     **/
-    public void paintNode(Graphics g, WorkspaceNode n, FontMetrics fm)
+    public void paintNode(Graphics g, int node, FontMetrics fm)
     {
+	WorkspaceNode n = network.getNode(node);
 	int x = (int) n.x;
 	int y = (int) n.y;
 
 	// select the background colour of the node
-	Color paintColour = getNodeColour(n);
+	Color paintColour = getNodeColour(node);
 	g.setColor(paintColour);
 
-	// horizontal and vertical padding
-	int padX = fm.getMaxAdvance() / 2;
-	if (padX < 1)
-	    padX = 10;
-	int padY = (int) ((double) fm.getHeight() * 0.1);
-	// make sure the node box is big enough for all edge types to
-	// lie within its boundary
-	if (fm.getHeight() + padY < 17)
-	    padY = 17 - fm.getHeight();
+	// width and height of the box; the label is only measured when
+	// it or the font has changed
+	if (n.boxWidth == 0) {
+	    n.boxWidth = fm.stringWidth(n.displayName) + padX;
 
-	// width and height of the box
-	int w = fm.stringWidth(n.displayName) + padX;
-	int h = fm.getHeight() + padY;
+	    // the brackets of the focus node reach a little further out
+	    int extent = Math.max(n.boxWidth, boxHeight) / 2 + focusGap +
+		focusThickness + 2;
+	    if (extent > maxNodeExtent)
+		maxNodeExtent = extent;
+	}
+	int w = n.boxWidth;
+	int h = boxHeight;
 
 	// coordinates of the box's top left and bottom right corner
 	n.x1 = x - w / 2;
 	n.y1 = y - h / 2;
 	n.x2 = n.x1 + w - 1;
 	n.y2 = n.y1 + h - 1;
+	engine.setNodeSize(n, w, h);
 
 	// draw the box, its border and the text label inside it
 	g.fillRect(n.x1, n.y1, w, h);
@@ -723,7 +819,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	if (n.hasChildren())
 	    g.drawRect(n.x1 - 1, n.y1 - 1, w + 1, h + 1);
 	g.drawString(n.displayName, x - (w - padX) / 2,
-		     (y - (h - padY) / 2) + fm.getAscent());
+		     (y - (h - padY) / 2) + labelAscent);
 
 	// draw some little brackets outside the corners of the focus node
 	if (n.hasFocus()) {
@@ -783,10 +879,14 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
 
     /**
-      Redraw the whole graph offscreen and then show it.
+      Redraw the part of the graph that is in view offscreen and then
+      show it.
     **/
-    public synchronized void paint(Graphics g)
+    public void paint(Graphics g)
     {
+	// show the nodes at their latest positions
+	engine.applyLayout();
+
 	Dimension d = getSize();
 
 	if ((offscreen == null) || (d.width != offscreensize.width) ||
@@ -804,11 +904,35 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	}
 	else
 	    offgraphics.setColor(getBackground());
+	Graphics2D g2 = (Graphics2D) offgraphics;
+	g2.setTransform(new AffineTransform());
 	offgraphics.fillRect(0, 0, d.width, d.height);
 
-	// redraw all edges, giving them the appropriate colour
-	for (int i = 0 ; i < edges.size() ; i++) {
-	    WorkspaceLink e = (WorkspaceLink) edges.elementAt(i);
+	// the nodes are sized at the default view, and everything is
+	// drawn in world coordinates
+	FontMetrics fm = offgraphics.getFontMetrics();
+	updateLabelMetrics(fm);
+	g2.setTransform(view);
+	Rectangle2D viewport = getViewport();
+	double minX = viewport.getMinX();
+	double minY = viewport.getMinY();
+	double maxX = viewport.getMaxX();
+	double maxY = viewport.getMaxY();
+
+	// redraw the edges in view, in their usual order, giving them
+	// the appropriate colour. An edge can cross the view with both
+	// nodes out of view, so midpoints are looked for as far around
+	// the view as half the longest edge, plus the offset of the
+	// edge's type.
+	updateEdgeGrid();
+	IntVector edgesInView = new IntVector();
+	double margin = longestEdge / 2 + 7;
+	edgeGrid.query(minX - margin, minY - margin, maxX + margin,
+		       maxY + margin, edgesInView);
+	edgesInView.sort();
+	for (int i = 0 ; i < edgesInView.size() ; i++) {
+	    WorkspaceLink e =
+		(WorkspaceLink) edges.elementAt(edgesInView.elementAt(i));
 
 	    if (! e.visible)
 		continue;
@@ -890,6 +1014,11 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 		break;
 	    }
 
+	    // of the edges near the view, skip those clear of it
+	    if (Math.max(x1, x2) < minX || Math.min(x1, x2) > maxX ||
+		Math.max(y1, y2) < minY || Math.min(y1, y2) > maxY)
+		continue;
+
 	    // len = difference of actual from-to distance to nominal distance 
 	    // int len = (int) Math.abs(Math.sqrt((x1-x2)*(x1-x2) +
 	    //                          (y1-y2)*(y1-y2)) - e.length);
@@ -901,25 +1030,236 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    // note: the e.type comparison was added on 1/2/2001
 	    if (e.weight > 1 || (e.type != WorkspaceLink.CHILD &&
 		e.type != WorkspaceLink.GOAL)) {
-		String label = String.valueOf(e.weight);
 		// offgraphics.setColor(stressColour);
-		offgraphics.drawString(label, x1 + (x2-x1)/2, y1 + (y2-y1)/2);
+		offgraphics.drawString(e.getWeightLabel(), x1 + (x2-x1)/2,
+				       y1 + (y2-y1)/2);
 		offgraphics.setColor(edgeColour);
 	    }
 	}
 
-	// redraw all nodes
-	FontMetrics fm = offgraphics.getFontMetrics();
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceNode n = (WorkspaceNode) nodes.elementAt(i);
-	    if (n.isVisible())
-		paintNode(offgraphics, n, fm);
-	}
+	// redraw the nodes in view, in their usual order so that
+	// overlapping nodes stay on top of each other the same way
+	IntVector inView = new IntVector();
+	nodeGrid.query(minX - maxNodeExtent, minY - maxNodeExtent,
+		       maxX + maxNodeExtent, maxY + maxNodeExtent, inView);
+	inView.sort();
+	for (int i = 0 ; i < inView.size() ; i++)
+	    paintNode(offgraphics, inView.elementAt(i), fm);
 
 	g.drawImage(offscreen, 0, 0, null);
     }
 
 
+    /**
+       Marks the edges of the node of the given number to be filed
+       again, after the node has moved or one of its edges has been
+       shown or hidden.
+    **/
+    void nodeMoved(int node)
+    {
+	if (node >= 0)
+	    movedNodes.set(node);
+    }
+
+
+    /**
+       Bring the grid of the edges up to date, rebuilding it if the
+       edges have changed, and otherwise filing the edges of the
+       nodes that have moved again.
+    **/
+    private void updateEdgeGrid()
+    {
+	if (edgesChanged) {
+	    edgesChanged = false;
+	    movedNodes.clear();
+
+	    // find the edges of each node
+	    int count = network.getNodeCount();
+	    int[] from = new int[edges.size()];
+	    int[] to = new int[edges.size()];
+	    nodeEdgeStart = new int[count + 1];
+	    for (int i = 0; i < edges.size(); i++) {
+		WorkspaceLink e = (WorkspaceLink) edges.elementAt(i);
+		from[i] = network.idOf(e.fromNode);
+		to[i] = network.idOf(e.toNode);
+		if (from[i] >= 0)
+		    nodeEdgeStart[from[i] + 1]++;
+		if (to[i] >= 0 && to[i] != from[i])
+		    nodeEdgeStart[to[i] + 1]++;
+	    }
+	    for (int n = 1; n <= count; n++)
+		nodeEdgeStart[n] += nodeEdgeStart[n - 1];
+	    nodeEdges = new int[nodeEdgeStart[count]];
+	    int[] fill = new int[count];
+	    for (int i = 0; i < edges.size(); i++) {
+		if (from[i] >= 0)
+		    nodeEdges[nodeEdgeStart[from[i]] + fill[from[i]]++] = i;
+		if (to[i] >= 0 && to[i] != from[i])
+		    nodeEdges[nodeEdgeStart[to[i]] + fill[to[i]]++] = i;
+	    }
+
+	    edgeGrid = new PointGrid(edgeLength);
+	    edgeLengths = new double[edges.size()];
+	    longestEdge = 0;
+	    for (int i = 0; i < edges.size(); i++) {
+		fileEdge(i);
+		longestEdge = Math.max(longestEdge, edgeLengths[i]);
+	    }
+	    return;
+	}
+
+	// the longest edge is only looked for again if it may have
+	// become shorter
+	boolean shrunk = false;
+	for (int n = movedNodes.nextSetBit(0); n >= 0;
+	     n = movedNodes.nextSetBit(n + 1))
+	    for (int k = nodeEdgeStart[n]; k < nodeEdgeStart[n + 1]; k++) {
+		int i = nodeEdges[k];
+		double length = edgeLengths[i];
+		fileEdge(i);
+		if (length >= longestEdge && edgeLengths[i] < length)
+		    shrunk = true;
+		longestEdge = Math.max(longestEdge, edgeLengths[i]);
+	    }
+	movedNodes.clear();
+
+	if (shrunk) {
+	    longestEdge = 0;
+	    for (int i = 0; i < edgeLengths.length; i++)
+		longestEdge = Math.max(longestEdge, edgeLengths[i]);
+	}
+    }
+
+
+    /**
+       File the edge at the given position in the edges vector by its
+       midpoint, if it is visible.
+    **/
+    private void fileEdge(int i)
+    {
+	WorkspaceLink e = (WorkspaceLink) edges.elementAt(i);
+	double dx = e.toNode.x - e.fromNode.x;
+	double dy = e.toNode.y - e.fromNode.y;
+	edgeLengths[i] = e.visible ? Math.sqrt(dx * dx + dy * dy) : 0;
+	edgeGrid.update(i, (e.fromNode.x + e.toNode.x) / 2,
+			(e.fromNode.y + e.toNode.y) / 2, e.visible);
+    }
+
+
+    /**
+       Returns the area the nodes are laid out in. At the least this is
+       the panel's area at the default view. When there are too many
+       visible nodes to leave each of them about the square of the
+       edge length, the area grows around the panel's centre; it
+       never shrinks, so that collapsing nodes doesn't crowd the
+       remaining ones.
+    **/
+    Rectangle getWorld()
+    {
+	Dimension d = getSize();
+	Rectangle area = new Rectangle(d);
+	double scale = Math.sqrt((double) visibleNodeCount * edgeLength *
+				 edgeLength / ((double) d.width * d.height));
+	if (scale > 1) {
+	    int w = (int) (d.width * scale);
+	    int h = (int) (d.height * scale);
+	    area = new Rectangle((d.width - w) / 2, (d.height - h) / 2, w, h);
+	}
+
+	Rectangle world = this.world;
+	if (world == null || ! world.contains(area)) {
+	    world = (world == null) ? area : world.union(area);
+	    this.world = world;
+	}
+	return world;
+    }
+
+
+    /**
+       Returns the part of the world that is in view.
+    **/
+    Rectangle2D getViewport()
+    {
+	Shape panel = new Rectangle(getSize());
+	return getInverseView().createTransformedShape(panel).getBounds2D();
+    }
+
+
+    /**
+       Converts a point of the panel into world coordinates.
+    **/
+    Point2D toWorld(Point p)
+    {
+	return getInverseView().transform(p, null);
+    }
+
+
+    private AffineTransform getInverseView()
+    {
+	try {
+	    return view.createInverse();
+	} catch (NoninvertibleTransformException e) {
+	    // can't happen, as the view is never scaled down to nothing
+	    return new AffineTransform();
+	}
+    }
+
+
+    /**
+       Zooms the view by the given factor, keeping the given point of
+       the panel in place. The view can be zoomed in up to maxZoom,
+       and out until the whole world is in view.
+    **/
+    void zoom(double factor, Point p)
+    {
+	double scale = view.getScaleX() * factor;
+	scale = Math.max(getFitScale(), Math.min(maxZoom, scale));
+	factor = scale / view.getScaleX();
+
+	AffineTransform zoom = AffineTransform.getTranslateInstance(p.x, p.y);
+	zoom.scale(factor, factor);
+	zoom.translate(-p.x, -p.y);
+	view.preConcatenate(zoom);
+	repaint();
+    }
+
+
+    /**
+       Moves the view by the given distance in the panel.
+    **/
+    void pan(int dx, int dy)
+    {
+	view.preConcatenate(AffineTransform.getTranslateInstance(dx, dy));
+	repaint();
+    }
+
+
+    /**
+       Zooms the view out far enough to show the whole world, or
+       back to the default view if that shows the whole world.
+    **/
+    void fitView()
+    {
+	Dimension d = getSize();
+	Rectangle world = getWorld();
+	double scale = getFitScale();
+	view = AffineTransform.getTranslateInstance(d.width / 2.0,
+						    d.height / 2.0);
+	view.scale(scale, scale);
+	view.translate(-world.getCenterX(), -world.getCenterY());
+	repaint();
+    }
+
+
+    private double getFitScale()
+    {
+	Dimension d = getSize();
+	Rectangle world = getWorld();
+	return Math.min(1, Math.min((double) d.width / world.width,
+				    (double) d.height / world.height));
+    }
+
+
     /**
        Focus on one node. This implies the hiding of all nodes other
        than those which are directly connected to the focus
@@ -928,25 +1268,29 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     **/
     public void focusOn(WorkspaceNode node)
     {
-	// make all (normal) nodes invisible, non-fixed and unfocused
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode n = (WorkspaceNode) nodes.elementAt(i);
+	// make all (normal) nodes non-fixed and unfocused; only the
+	// nodes fixed or focused by the panel can be
+	for (int i = fixedNodes.nextSetBit(0); i >= 0;
+	     i = fixedNodes.nextSetBit(i + 1)) {
+	    WorkspaceNode n = network.getNode(i);
 	    if (! n.isSpecial())
 		n.setFixed(false);
 	    n.setFocus(false);
-	    n.setVisible(false);
-
 	}
+	fixedNodes.clear();
 
-	// make all edges invisible
-	for (int i = 0; i < edges.size(); i++) {
-	    ((WorkspaceLink) edges.elementAt(i)).visible = false;
-	}
+	// make all nodes and edges invisible; only the edges of
+	// visible nodes can be visible
+	for (int i = visibleNodes.nextSetBit(0); i >= 0;
+	     i = visibleNodes.nextSetBit(i + 1))
+	    hideNode(i);
+	for (Iterator i = sharedLinks.iterator(); i.hasNext(); )
+	    setEdgeVisible((WorkspaceLink) i.next(), false);
 
 	// set the focus node to be fixed, focused and visible
-	node.setFixed(true);
+	fixNode(node);
 	node.setFocus(true);
-	node.setVisible(true);
+	setNodeVisible(node, true);
 	fixedNode = node;
 
 	// set the focus node's parent to be fixed too, to prevent the
@@ -954,11 +1298,12 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	// which has many other nodes hanging onto it)
 	WorkspaceNode parent = node.getParent();
 	if (parent != null)
-	    parent.setFixed(true);
+	    fixNode(parent);
 
 	// set the edges and nodes connected to the focus node to be
 	// visible, subject to the edge type being visible
 	expandNode(node);
+	pruneSharedLinks();
     }
 
 
@@ -966,7 +1311,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     {
 	WorkspaceNode parentNode = node.getParent();
 	if (parentNode != null) {
-	    parentNode.setFixed(true);
+	    fixNode(parentNode);
 	    fixedNode = parentNode;
 	    if (! node.isSpecial())
 		node.setFixed(false);
@@ -1026,86 +1371,83 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 		if (numChildren > 1)
 		    childAngle -= i * spread / (numChildren - 1);
 
-		childNode.x = node.x - (edgeLength * Math.sin(childAngle));
-		childNode.y = node.y + (edgeLength * Math.cos(childAngle));
+		engine.moveNode(childNode,
+				node.x - (edgeLength * Math.sin(childAngle)),
+				node.y + (edgeLength * Math.cos(childAngle)));
 	    }
 	}
+
+	updateSharedLinks();
     }
 
 
     private void expandTree(WorkspaceNode node)
     {
-	expandNode(node);
-	for (int i = 0; i < node.getChildCount(); i++)
-	    expandTree(node.getChild(i));
-
+	// the descendents of the node are numbered right after it
+	int id = network.idOf(node);
+	for (int n = id; n < network.getSubtreeEnd(id); n++)
+	    expandNode(network.getNode(n));
     }
 
 
     public void collapseNode(WorkspaceNode node)
     {
 	collapsedNode = node;
-	node.collapseDescendents();
-	revalidateEdgeVisibility();
+	collapseDescendents(node);
+	hideSharedLinks();
 	revalidateNodeVisibility();
+	pruneSharedLinks();
 	collapsedNode = null;
     }
 
 
+    /**
+       Makes the given node's descendents invisible, along with their
+       edges other than those of the hypergraph.
+    **/
+    private void collapseDescendents(WorkspaceNode node)
+    {
+	int id = network.idOf(node);
+	int end = network.getSubtreeEnd(id);
+	for (int n = visibleNodes.nextSetBit(id + 1); n >= 0 && n < end;
+	     n = visibleNodes.nextSetBit(n + 1))
+	    hideNode(n);
+    }
+
+
     private void expandVisibleEdges(WorkspaceNode node)
     {
-	for (int i = 0; i < node.getWorkspaceLinkCount(); i++) {
-	    WorkspaceLink edge = node.getWorkspaceLink(i);
-	    WorkspaceNode otherNode =
-		(edge.fromNode == node) ? edge.toNode : edge.fromNode;
+	// for each edge of a type that has visibility turned on, set
+	// the edge and connecting node to visible
+	int id = network.idOf(node);
+	for (int type = 0; type < WorkspaceNetwork.TYPES; type++) {
+	    if (! isEdgeTypeVisible(type))
+		continue;
+	    for (int slot = network.getSlotStart(id, type);
+		 slot < network.getSlotEnd(id, type); slot++) {
+		int l = network.getSlotLink(slot);
+		if (! linkShown[l])
+		    continue;
+		setLinkVisible(l, true);
+		setNodeVisible(network.getSlotTarget(slot), true);
+	    }
+	}
 
-	    // for each edge, set the edge and connecting node to
-	    // visible if that type of edge has visibility turned on
-	    switch (edge.type) {
-	    case WorkspaceLink.CHILD :
-		if (childEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
-		}
-		break;
-	    case WorkspaceLink.GOAL :
-		if (goalEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
-		}
-		break;
-	    case WorkspaceLink.ACTION :
-		if (actionEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
-		}
-		break;
-	    case WorkspaceLink.DISCUSSION :
-		if (discussionEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
-		}
-		break;
-	    case WorkspaceLink.DOCUMENT :
-		if (documentEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
-		}
-		break;
-	    case WorkspaceLink.MESSAGERULE :
-		if (messageRuleEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
-		}
-		break;
-	    case WorkspaceLink.PARTICIPANT :
-		if (participantEdgeVisible) {
-		    edge.visible = true;
-		    otherNode.setVisible(true);
+	// likewise for the links of the hypergraph, which are
+	// materialized as they become visible
+	if (hypergraph != null)
+	    for (int t = 0; t < hypergraph.getLinkTypeCount(); t++) {
+		int type = hypergraph.getLinkType(t);
+		if (! isEdgeTypeVisible(type))
+		    continue;
+		Vector others = hypergraph.getLinkedWorkspaces(node, type);
+		for (int i = 0; i < others.size(); i++) {
+		    WorkspaceNode otherNode =
+			(WorkspaceNode) others.elementAt(i);
+		    if (showSharedLink(node, otherNode, type))
+			setNodeVisible(otherNode, true);
 		}
-		break;
 	    }
-	}
     }
 
 
@@ -1120,12 +1462,8 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    // apply edge type visibility change only to visible subgraph;
 	    // make edges visible if both from and to node are visible
 	    if (edgeScope == MapControls.EDGE_VIS_SUBGRAPH) {
-		for (int i = 0; i < edges.size(); i++) {
-		    WorkspaceLink edge = (WorkspaceLink) edges.elementAt(i);
-		    if (edge.type == type && edge.fromNode.isVisible() &&
-			edge.toNode.isVisible())
-			edge.visible = true;
-		}
+		showEdges(type);
+		showSharedLinks(type, false);
 	    }
 
 	    // apply edge type visibility change to entire graph; this
@@ -1135,31 +1473,36 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    // the second step is necessary as the first step may make
 	    // pairs of nodes visible which have an edge between them
 	    else if (edgeScope == MapControls.EDGE_VIS_WHOLEGRAPH) {
-		for (int i = 0; i < edges.size(); i++) {
-		    WorkspaceLink edge = (WorkspaceLink) edges.elementAt(i);
-		    if (edge.type == type && edge.visible == false &&
-			(edge.fromNode.isVisible() ||
-			 edge.toNode.isVisible())) {
-			edge.fromNode.setVisible(true);
-			edge.toNode.setVisible(true);
-			edge.visible = true;
-		    }
+		IntVector expanded = new IntVector();
+		for (int i = network.getTypeStart(type);
+		     i < network.getTypeEnd(type); i++) {
+		    int l = network.getTypeLink(i);
+		    if (linkShown[l] && ! network.getLink(l).visible &&
+			(visibleNodes.get(network.getLinkFrom(l)) ||
+			 visibleNodes.get(network.getLinkTo(l))))
+			expanded.addElement(l);
 		}
-
-		for (int i = 0; i < edges.size(); i++) {
-		    WorkspaceLink edge = (WorkspaceLink) edges.elementAt(i);
-		    if (edge.type == type && edge.visible == false &&
-			edge.fromNode.isVisible() && edge.toNode.isVisible())
-			edge.visible = true;
+		for (int i = 0; i < expanded.size(); i++) {
+		    int l = expanded.elementAt(i);
+		    setNodeVisible(network.getLinkFrom(l), true);
+		    setNodeVisible(network.getLinkTo(l), true);
+		    setLinkVisible(l, true);
 		}
+		showSharedLinks(type, true);
+
+		showEdges(type);
+		showSharedLinks(type, false);
 	    }
 	} else {
 	    // turn edge visibility unconditionally off (for edges of
 	    // the specified type)
-	    for (int i = 0; i < edges.size(); i++) {
-		WorkspaceLink edge = (WorkspaceLink) edges.elementAt(i);
+	    for (int i = network.getTypeStart(type);
+		 i < network.getTypeEnd(type); i++)
+		setLinkVisible(network.getTypeLink(i), false);
+	    for (Iterator i = sharedLinks.iterator(); i.hasNext(); ) {
+		WorkspaceLink edge = (WorkspaceLink) i.next();
 		if (edge.type == type)
-		    edge.visible = false;
+		    setEdgeVisible(edge, false);
 	    }
 
 	    // cleanup:
@@ -1169,6 +1512,8 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    if (state == false)
 		revalidateNodeVisibility();
 	}
+
+	pruneSharedLinks();
     }
 
 
@@ -1179,23 +1524,25 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     **/
     private void revalidateEdgeVisibility()
     {
-	for (int i = 0; i < edges.size(); i++) {
-	    WorkspaceLink edge = (WorkspaceLink) edges.elementAt(i);
-	    if (edge.fromNode.isVisible() && edge.toNode.isVisible() &&
-		((edge.type == WorkspaceLink.CHILD && childEdgeVisible) ||
-		 (edge.type == WorkspaceLink.GOAL && goalEdgeVisible) ||
-		 (edge.type == WorkspaceLink.ACTION && actionEdgeVisible) ||
-		 (edge.type == WorkspaceLink.DISCUSSION &&
-		  discussionEdgeVisible) ||
-		 (edge.type == WorkspaceLink.DOCUMENT &&
-		  documentEdgeVisible) ||
-		 (edge.type == WorkspaceLink.MESSAGERULE &&
-		  messageRuleEdgeVisible) ||
-		 (edge.type == WorkspaceLink.PARTICIPANT &&
-		  participantEdgeVisible)))
-		edge.visible = true;
-	    else
-		edge.visible = false;
+	for (int l = 0; l < network.getLinkCount(); l++)
+	    setLinkVisible(l, linkShown[l] &&
+			   visibleNodes.get(network.getLinkFrom(l)) &&
+			   visibleNodes.get(network.getLinkTo(l)) &&
+			   isEdgeTypeVisible(network.getLinkType(l)));
+	for (Iterator i = sharedLinks.iterator(); i.hasNext(); ) {
+	    WorkspaceLink edge = (WorkspaceLink) i.next();
+	    setEdgeVisible(edge, edge.fromNode.isVisible() &&
+			   edge.toNode.isVisible() &&
+			   isEdgeTypeVisible(edge.type));
+	}
+
+	if (hypergraph != null) {
+	    for (int t = 0; t < hypergraph.getLinkTypeCount(); t++) {
+		int type = hypergraph.getLinkType(t);
+		if (isEdgeTypeVisible(type))
+		    showSharedLinks(type, false);
+	    }
+	    pruneSharedLinks();
 	}
     }
 
@@ -1204,26 +1551,285 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
        Turns node visibility off if the node has no visible edges to
        other nodes, except if the node is the focus node (in focus
        mode), or the node is either the root node or the collapsed
-       node (in non-focus mode).
+       node (in non-focus mode). Only the visible nodes without
+       visible edges need to be looked at; those spared stay on
+       record for next time.
      **/
     private void revalidateNodeVisibility()
     {
-	for (int i = 0; i < nodes.size(); i++) {
-	    WorkspaceNode node = (WorkspaceNode) nodes.elementAt(i);
-	    if (node.isVisible() &&
-		((! node.equals(focusNode) && focusNode != null) ||
-		 (! (node.equals(rootNode) || node.equals(collapsedNode)) &&
-		  focusNode == null))) {
-		Vector links = node.getWorkspaceLinks();
-		boolean hasVisibleEdges = false;
-		for (int j = 0; j < links.size(); j++)
-		    if (((WorkspaceLink) links.elementAt(j)).visible) {
-			hasVisibleEdges = true;
-			break;
-		    }
-		if (! hasVisibleEdges)
-		    node.setVisible(false);
+	for (int i = unlinkedNodes.nextSetBit(0); i >= 0;
+	     i = unlinkedNodes.nextSetBit(i + 1)) {
+	    WorkspaceNode node = network.getNode(i);
+	    if ((! node.equals(focusNode) && focusNode != null) ||
+		(! (node.equals(rootNode) || node.equals(collapsedNode)) &&
+		 focusNode == null))
+		setNodeVisible(i, false);
+	}
+    }
+
+
+    /**
+       Sets the visibility of the given node.
+    **/
+    private void setNodeVisible(WorkspaceNode node, boolean visible)
+    {
+	setNodeVisible(network.idOf(node), visible);
+    }
+
+
+    /**
+       Sets the visibility of the node of the given number.
+    **/
+    private void setNodeVisible(int node, boolean visible)
+    {
+	WorkspaceNode n = network.getNode(node);
+	if (visibleNodes.get(node) != visible)
+	    visibleNodeCount += visible ? 1 : -1;
+	n.setVisible(visible);
+	visibleNodes.set(node, visible);
+	unlinkedNodes.set(node, visible && visibleEdgeCount[node] == 0);
+	nodeGrid.update(node, n.x, n.y, visible);
+    }
+
+
+    /**
+       Makes the node of the given number invisible, along with its
+       edges other than those of the hypergraph.
+    **/
+    private void hideNode(int node)
+    {
+	hideEdges(node);
+	setNodeVisible(node, false);
+    }
+
+
+    /**
+       Makes the edges of the node of the given number invisible,
+       other than those of the hypergraph.
+    **/
+    private void hideEdges(int node)
+    {
+	for (int slot = network.getSlotStart(node);
+	     slot < network.getSlotEnd(node) && visibleEdgeCount[node] > 0;
+	     slot++)
+	    setLinkVisible(network.getSlotLink(slot), false);
+    }
+
+
+    /**
+       Makes the edges of the given type between visible nodes
+       visible, other than those of the hypergraph.
+    **/
+    private void showEdges(int type)
+    {
+	for (int i = network.getTypeStart(type);
+	     i < network.getTypeEnd(type); i++) {
+	    int l = network.getTypeLink(i);
+	    if (linkShown[l] && visibleNodes.get(network.getLinkFrom(l)) &&
+		visibleNodes.get(network.getLinkTo(l)))
+		setLinkVisible(l, true);
+	}
+    }
+
+
+    /**
+       Makes the links of the hypergraph that no longer link two
+       visible nodes invisible.
+    **/
+    private void hideSharedLinks()
+    {
+	for (Iterator i = sharedLinks.iterator(); i.hasNext(); ) {
+	    WorkspaceLink edge = (WorkspaceLink) i.next();
+	    if (! (edge.fromNode.isVisible() && edge.toNode.isVisible()))
+		setEdgeVisible(edge, false);
+	}
+    }
+
+
+    /**
+       Sets the visibility of the link of the given number.
+    **/
+    private void setLinkVisible(int link, boolean visible)
+    {
+	setEdgeVisible(network.getLink(link), network.getLinkFrom(link),
+		       network.getLinkTo(link), visible);
+    }
+
+
+    /**
+       Sets the visibility of the given edge, which may be a link of
+       the hypergraph.
+    **/
+    private void setEdgeVisible(WorkspaceLink edge, boolean visible)
+    {
+	setEdgeVisible(edge, network.idOf(edge.fromNode),
+		       network.idOf(edge.toNode), visible);
+    }
+
+
+    /**
+       Sets the visibility of the given edge between the nodes of the
+       given numbers, keeping count of the visible edges at each
+       node.
+    **/
+    private void setEdgeVisible(WorkspaceLink edge, int from, int to,
+				boolean visible)
+    {
+	if (edge.visible == visible)
+	    return;
+	edge.visible = visible;
+	nodeMoved(from);
+	nodeMoved(to);
+	countVisibleEdge(from, visible ? 1 : -1);
+	countVisibleEdge(to, visible ? 1 : -1);
+    }
+
+
+    private void countVisibleEdge(int node, int change)
+    {
+	if (node < 0)
+	    return;
+	visibleEdgeCount[node] += change;
+	unlinkedNodes.set(node, visibleNodes.get(node) &&
+			  visibleEdgeCount[node] == 0);
+    }
+
+
+    /**
+       Fixes the given node, to be let go of by the next focusOn().
+    **/
+    private void fixNode(WorkspaceNode node)
+    {
+	node.setFixed(true);
+	fixedNodes.set(network.idOf(node));
+    }
+
+
+    /**
+       Returns true if visibility is turned on for edges of the given
+       type.
+    **/
+    private boolean isEdgeTypeVisible(int type)
+    {
+	switch (type) {
+	case WorkspaceLink.CHILD :
+	    return childEdgeVisible;
+	case WorkspaceLink.GOAL :
+	    return goalEdgeVisible;
+	case WorkspaceLink.ACTION :
+	    return actionEdgeVisible;
+	case WorkspaceLink.DISCUSSION :
+	    return discussionEdgeVisible;
+	case WorkspaceLink.DOCUMENT :
+	    return documentEdgeVisible;
+	case WorkspaceLink.MESSAGERULE :
+	    return messageRuleEdgeVisible;
+	case WorkspaceLink.PARTICIPANT :
+	    return participantEdgeVisible;
+	}
+	return false;
+    }
+
+
+    /**
+       Materializes the links of the given type of the hypergraph
+       between visible nodes, and makes them visible. If expand is
+       true, the nodes linked to visible nodes are made visible
+       first.
+    **/
+    private void showSharedLinks(int type, boolean expand)
+    {
+	if (hypergraph == null || ! hypergraph.hasLinkType(type))
+	    return;
+
+	// the nodes visible to begin with
+	BitSet visible = (BitSet) visibleNodes.clone();
+
+	for (int i = visible.nextSetBit(0); i >= 0;
+	     i = visible.nextSetBit(i + 1)) {
+	    WorkspaceNode node = network.getNode(i);
+	    Vector others = hypergraph.getLinkedWorkspaces(node, type);
+	    for (int j = 0; j < others.size(); j++) {
+		WorkspaceNode otherNode = (WorkspaceNode) others.elementAt(j);
+		if ((expand || otherNode.isVisible()) &&
+		    showSharedLink(node, otherNode, type))
+		    setNodeVisible(otherNode, true);
+	    }
+	}
+    }
+
+
+    /**
+       Makes the link of the given type of the hypergraph between the
+       given nodes visible, adding it to the edges if it isn't among
+       them. Returns false if there is no such link, or the link
+       filter doesn't let it through.
+    **/
+    private boolean showSharedLink(WorkspaceNode one, WorkspaceNode other,
+				   int type)
+    {
+	WorkspaceLink link = hypergraph.getLink(one, other, type);
+	if (link == null || ! linkFilter.accepts(link))
+	    return false;
+	setEdgeVisible(link, true);
+	if (sharedLinks.add(link)) {
+	    link.length = edgeLength;
+	    // like initializeEdges(), add the link once for each end
+	    synchronized (engine) {
+		edges.addElement(link);
+		edges.addElement(link);
+	    }
+	    edgesChanged = true;
+	    sharedLinksChanged = true;
+	}
+	return true;
+    }
+
+
+    /**
+       Removes the links of the hypergraph that are no longer visible
+       from the edges; they stay in the hypergraph's cache for a
+       while.
+    **/
+    private void pruneSharedLinks()
+    {
+	if (hypergraph == null)
+	    return;
+
+	HashSet hidden = new HashSet();
+	for (Iterator i = sharedLinks.iterator(); i.hasNext(); ) {
+	    WorkspaceLink link = (WorkspaceLink) i.next();
+	    if (! link.visible) {
+		hidden.add(link);
+		i.remove();
+	    }
+	}
+	if (hidden.size() > 0) {
+	    // only the edges from sharedEdgesStart on can be among them
+	    Vector kept = new Vector();
+	    for (int i = sharedEdgesStart; i < edges.size(); i++)
+		if (! hidden.contains(edges.elementAt(i)))
+		    kept.addElement(edges.elementAt(i));
+	    synchronized (engine) {
+		edges.setSize(sharedEdgesStart);
+		edges.addAll(kept);
 	    }
+	    edgesChanged = true;
+	    sharedLinksChanged = true;
+	}
+	updateSharedLinks();
+    }
+
+
+    /**
+       Tells the engine if links of the hypergraph have been added to
+       or removed from the edges.
+    **/
+    private void updateSharedLinks()
+    {
+	if (sharedLinksChanged) {
+	    sharedLinksChanged = false;
+	    engine.graphChanged();
 	}
     }
 
@@ -1324,7 +1930,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    System.out.println("[MouseClicked] mouse clicked " +
 			       e.getClickCount() + " times.");
 	if (e.getClickCount() == 2 && pick != null) {
-	    if (relaxer == null)
+	    if (! engine.isRunning())
 		start();
 	    if (focusNode != null)
 		focusOff(focusNode);
@@ -1334,7 +1940,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 		collapseNode(pick);
 	}
 	pick = null;
-	iterations = 0;
+	engine.restart();
     }
 
 
@@ -1353,13 +1959,19 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	if (DEBUG)
 	    System.out.println("[MousePressed] mouse pressed " +
 			       e.getClickCount() + " times.");
-	// Pick the node that was clicked on
+	// Pick the node that was clicked on, looking only at the visible
+	// nodes close enough for their boxes to contain the point
 	double bestdist = Double.MAX_VALUE;
-	int x = e.getX();
-	int y = e.getY();
-	Point p = e.getPoint();
-	for (int i = 0 ; i < nodes.size() ; i++) {
-	    WorkspaceNode n = (WorkspaceNode) nodes.elementAt(i);
+	Point2D w = toWorld(e.getPoint());
+	double x = w.getX();
+	double y = w.getY();
+	Point p = new Point((int) Math.floor(x), (int) Math.floor(y));
+	IntVector near = new IntVector();
+	nodeGrid.query(x - maxNodeExtent, y - maxNodeExtent,
+		       x + maxNodeExtent, y + maxNodeExtent, near);
+	near.sort();
+	for (int i = 0 ; i < near.size() ; i++) {
+	    WorkspaceNode n = network.getNode(near.elementAt(i));
 	    if (! n.contains(p))
 		continue;
 	    double dist = (n.x - x) * (n.x - x) + (n.y - y) * (n.y - y);
@@ -1372,15 +1984,17 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	if (pick != null) {
 	    pickfixed = pick.fixed;
 	    pick.fixed = true;
-	    pick.x = x;
-	    pick.y = y;
+	    engine.moveNode(pick, x, y);
 	}
+	// dragging the background pans the view
+	else
+	    panPoint = e.getPoint();
 
 	addMouseMotionListener(this);
 
 	repaint();
 	e.consume();
-	iterations = 0;
+	engine.restart();
     }
 
 
@@ -1390,17 +2004,18 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    System.out.println("[MouseReleased] mouse released " +
 			       e.getClickCount() + " times.");
 	if (pick != null) {
-	    pick.x = e.getX();
-	    pick.y = e.getY();
+	    Point2D w = toWorld(e.getPoint());
+	    engine.moveNode(pick, w.getX(), w.getY());
 	    pick.fixed = pickfixed;
 	}
+	panPoint = null;
 
 	removeMouseMotionListener(this);
 
 	// right mouse button click: focus on node
 	if (((e.getModifiers() & InputEvent.BUTTON3_MASK) ==
 	     InputEvent.BUTTON3_MASK) && ! e.isShiftDown() && (pick != null)) {
-	    if (relaxer == null)
+	    if (! engine.isRunning())
 		start();
 	    focusNode = pick;
 	    if (! focusNode.hasFocus())
@@ -1422,7 +2037,8 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 		  (((e.getModifiers() & InputEvent.BUTTON1_MASK) ==
 		    InputEvent.BUTTON1_MASK) && e.isShiftDown())) &&
 		 (pick != null) && (!pick.specialNode)) {
-	    WorkspaceInfoDialog infoDialog = new WorkspaceInfoDialog(pick);
+	    WorkspaceInfoDialog infoDialog =
+		new WorkspaceInfoDialog(pick, getWorkspaceLinks(pick));
 	    infoDialog.setVisible(true);
 	}
 
@@ -1431,7 +2047,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 
 	repaint();
 	e.consume();
-	iterations = 0;
+	engine.restart();
     }
 
 
@@ -1440,8 +2056,12 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     public void mouseDragged(MouseEvent e)
     {
 	if (pick != null) {
-	    pick.x = e.getX();
-	    pick.y = e.getY();
+	    Point2D w = toWorld(e.getPoint());
+	    engine.moveNode(pick, w.getX(), w.getY());
+	}
+	else if (panPoint != null) {
+	    pan(e.getX() - panPoint.x, e.getY() - panPoint.y);
+	    panPoint = e.getPoint();
 	}
 	repaint();
 	e.consume();
@@ -1453,19 +2073,40 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
     }
 
 
+    // mouseWheelListener methods
+
+    public void mouseWheelMoved(MouseWheelEvent e)
+    {
+	zoom(Math.pow(zoomStep, -e.getWheelRotation()), e.getPoint());
+	e.consume();
+    }
+
+
     // starting and stopping the animation
 
     public void start()
     {
-	relaxer = new Thread(this);
-	relaxer.start();
-	iterations = 0;
+	engine.start();
+	engine.restart();
     }
 
 
     public void stop()
     {
-	relaxer = null;
+	engine.stop();
+    }
+
+
+    /**
+       Select the repulsion algorithm of the layout engine according
+       to the current repulsion mode.
+    **/
+    void updateRepulsion()
+    {
+	if (repulsionMode == MapControls.BARNES_HUT_REPULSION)
+	    engine.setRepulsion(new BarnesHutRepulsion(theta));
+	else
+	    engine.setRepulsion(new RepulsionGrid(edgeLength));
     }
 
     // handle control events (originating from the associated control panel)
@@ -1483,121 +2124,121 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = PARENT_CHILD;
 	    hideLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_ABSOLUTE_WORKSPACE_DENSITY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = ABSOLUTE_WORKSPACE_DENSITY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_MINIMUM_WORKSPACE_DENSITY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = MINIMUM_WORKSPACE_DENSITY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_MAXIMUM_WORKSPACE_DENSITY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = MAXIMUM_WORKSPACE_DENSITY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_MEAN_WORKSPACE_DENSITY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = MEAN_WORKSPACE_DENSITY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_EVOLUTION_INTENSITY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = EVOLUTION_INTENSITY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_EVOLUTION_RECENCY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = EVOLUTION_RECENCY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_MESSAGE_INTENSITY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = MESSAGE_INTENSITY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.NODE_COL_MESSAGE_RECENCY :
 	    oldNodeColouring = nodeColouring;
 	    nodeColouring = MESSAGE_RECENCY;
 	    showLegend();
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_PULL_PARENT_CHILD :
 	    childEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_PULL_GOAL :
 	    goalEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_PULL_ACTION :
 	    actionEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_PULL_DISCUSSION :
 	    discussionEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_PULL_DOCUMENT :
 	    documentEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_PULL_MESSAGE_RULE :
 	    messageRuleEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_PULL_PARTICIPANT :
 	    participantEdgeForce = (value == MapControls.ON);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_VIS_PARENT_CHILD :
 	    childEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.CHILD, childEdgeVisible);
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.EDGE_VIS_GOAL :
 	    goalEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.GOAL, goalEdgeVisible);
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_VIS_ACTION :
 	    actionEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.ACTION, actionEdgeVisible);
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_VIS_DISCUSSION :
 	    discussionEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.DISCUSSION,
 				 discussionEdgeVisible);
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_VIS_DOCUMENT :
 	    documentEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.DOCUMENT, documentEdgeVisible);
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_VIS_MESSAGE_RULE :
 	    messageRuleEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.MESSAGERULE,
 				 messageRuleEdgeVisible);
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_VIS_PARTICIPANT :
 	    participantEdgeVisible = (value == MapControls.ON);
 	    changeEdgeVisibility(WorkspaceLink.PARTICIPANT,
 				 participantEdgeVisible);
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    break;
 	case MapControls.EDGE_VIS_SUBGRAPH :
 	    edgeScope = MapControls.EDGE_VIS_SUBGRAPH;
@@ -1606,7 +2247,7 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    edgeScope = MapControls.EDGE_VIS_WHOLEGRAPH;
 	    break;
 	case MapControls.NODE_LABELING :
-	    iterations = maxIterations - 1;
+	    engine.refresh();
 	    switch (value) {
 	    case MapControls.SHORT_LABELS :
 		setShortLabels(rootNode);
@@ -1618,33 +2259,57 @@ public class TreeGraphPanel extends JPanel implements Runnable, Printable,
 	    break;
 	case MapControls.EDGE_LENGTH :
 	    setEdgeLength(value);
-	    iterations = 0;
+	    engine.restart();
+	    break;
+	case MapControls.REPULSION_MODE :
+	    repulsionMode = value;
+	    updateRepulsion();
+	    engine.restart();
+	    break;
+	case MapControls.REPULSION_THETA :
+	    theta = value / 100.0;
+	    updateRepulsion();
+	    engine.restart();
+	    break;
+	case MapControls.LINK_FILTER_MODE :
+	    setLinkFilter(value, linkFilter.getThreshold());
+	    engine.restart();
+	    break;
+	case MapControls.LINK_FILTER_THRESHOLD :
+	    setLinkFilter(linkFilter.getMode(), value);
+	    engine.restart();
 	    break;
 	case MapControls.EXPAND_ALL_NODES :
 	    expandTree(rootNode);
 	    //	    rootNode.expandDescendents();
-	    rootNode.setVisible(true);
+	    setNodeVisible(rootNode, true);
 	    if (focusNode != null)
 		focusOff(focusNode);
 	    if (fixedNode != null && ! fixedNode.isSpecial())
 		fixedNode.setFixed(false);
-	    rootNode.setFixed(true);
+	    fixNode(rootNode);
 	    fixedNode = rootNode;
 	    revalidateEdgeVisibility();
-	    iterations = 0;
+	    engine.restart();
 	    break;
 	case MapControls.COLLAPSE_ALL_NODES :
-	    rootNode.collapseDescendents();
-	    rootNode.setVisible(true);
+	    collapseDescendents(rootNode);
+	    setNodeVisible(rootNode, true);
 	    if (focusNode != null)
 		focusOff(focusNode);
 	    if (fixedNode != null && ! fixedNode.isSpecial())
 		fixedNode.setFixed(false);
-	    rootNode.setFixed(true);
+	    fixNode(rootNode);
 	    fixedNode = rootNode;
-	    for (int i = 0; i < edges.size(); i++)
-		((WorkspaceLink) edges.elementAt(i)).visible = false;
-	    iterations = 0;
+	    // the edges of the other nodes are gone with them
+	    hideEdges(network.idOf(rootNode));
+	    for (Iterator i = sharedLinks.iterator(); i.hasNext(); )
+		setEdgeVisible((WorkspaceLink) i.next(), false);
+	    pruneSharedLinks();
+	    engine.restart();
+	    break;
+	case MapControls.FIT_VIEW :
+	    fitView();
 	    break;
 	case MapControls.START_ANIMATION :
 	    start();
@@ -36,6 +36,11 @@ public class WorkspaceAnalyzer extends JFrame implements ControlListener
     private String driverClass = "com.sybase.jdbc2.jdbc.SybDriver";
     private Connection con;  // the database connection object
 
+    // number of connections used to extract workgroup data in
+    // parallel, including the main connection, which is lent to the
+    // pool meanwhile; the workgroup queries share them
+    private int poolSize = 3;
+
     private WorkspaceMap wsMap;
 
 
@@ -93,7 +98,15 @@ public class WorkspaceAnalyzer extends JFrame implements ControlListener
 	    else {
 		MapControls controls = new MapControls();
 		controls.addControlListener(this);
-		wsMap = new WorkspaceMap(con, workgroups, controls, false);
+		ConnectionPool pool = new ConnectionPool(con, url, user,
+							  password, poolSize);
+		try {
+		    wsMap = new WorkspaceMap(con, pool, workgroups, controls,
+					     false);
+		}
+		finally {
+		    pool.close();
+		}
 	    }
 	}
     }
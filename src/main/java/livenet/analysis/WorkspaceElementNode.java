@@ -42,10 +42,6 @@ public class WorkspaceElementNode implements TreeGraphConstants
     int x2;
     int y2;
 
-    // deltas for adjusting the node's position
-    double dx;
-    double dy;
-
     // is the node's position fixed?
     boolean fixed = false;
 
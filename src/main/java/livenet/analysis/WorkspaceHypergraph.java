@@ -0,0 +1,247 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+
+/**
+   The links between workspaces that share elements such as goals,
+   documents or participants, kept as a hypergraph: each shared
+   element is stored once, as a hyperedge over the workspaces that
+   have it, rather than as a link between each pair of them.
+
+   Links between single pairs of workspaces are only materialized
+   when they are asked for, e.g. when they become visible on the
+   workspace map. The materialized links are kept in a cache. Once it
+   holds more than CACHE_SIZE of them, the least recently used links
+   that aren't visible are evicted, down to three quarters of that.
+   Visible links stay in the cache, so that asking for one of them
+   again finds the very link shown on the map; while many links are
+   visible the cache grows beyond CACHE_SIZE by them.
+
+   A link materialized by the hypergraph looks just like one of the
+   links created between all pairs of workspaces: its weight is the
+   number of shared elements, and its link objects are their keys.
+   It is not added to the workspaces' own lists of links, though.
+   Not to be used by more than one thread at a time.
+**/
+class WorkspaceHypergraph implements TreeGraphConstants
+{
+    static final int CACHE_SIZE = 20000;
+
+    private ElementLinkEngine elements;
+
+    // workspaces by number, and their numbers
+    private Vector workspaces;
+    private IdentityHashMap ids = new IdentityHashMap();
+
+    // materialized links, by link key, in order of last access
+    private LinkedHashMap cache = new LinkedHashMap(16, 0.75f, true) {
+	    protected boolean removeEldestEntry(Map.Entry eldest)
+	    {
+		if (size() > cacheLimit)
+		    sweepCache();
+		return false;
+	    }
+	};
+
+    // the cache is swept once it holds more than this many links
+    private int cacheLimit = CACHE_SIZE;
+
+    private IntVector linked = new IntVector();
+
+
+    /**
+       Creates the hypergraph of the given elements, which have been
+       added by the workspaces' positions in the given vector.
+    **/
+    WorkspaceHypergraph(Vector workspaces, ElementLinkEngine elements)
+    {
+	this.workspaces = workspaces;
+	this.elements = elements;
+	for (int i = 0; i < workspaces.size(); i++)
+	    ids.put(workspaces.elementAt(i), Integer.valueOf(i));
+	elements.buildMatrices();
+    }
+
+
+    int getLinkTypeCount()
+    {
+	return elements.getTypeCount();
+    }
+
+
+    int getLinkType(int t)
+    {
+	return elements.getType(t);
+    }
+
+
+    /**
+       Returns true if links of the given type are kept in this
+       hypergraph.
+    **/
+    boolean hasLinkType(int type)
+    {
+	return elements.getTypeIndex(type) >= 0;
+    }
+
+
+    /**
+       Returns the workspaces linked to the given one by links of the
+       given type, which include the workspace itself if it has an
+       element more than once.
+    **/
+    Vector getLinkedWorkspaces(WorkspaceNode node, int type)
+    {
+	Vector result = new Vector();
+	int t = elements.getTypeIndex(type);
+	Integer id = (Integer) ids.get(node);
+	if (t < 0 || id == null)
+	    return result;
+
+	linked.removeAllElements();
+	elements.addLinkedWorkspaces(t, id.intValue(), linked);
+	for (int i = 0; i < linked.size(); i++)
+	    result.addElement(workspaces.elementAt(linked.elementAt(i)));
+	return result;
+    }
+
+
+    /**
+       Returns the weight of the link of the given type between the
+       given workspaces without materializing it, or 0 if they aren't
+       linked.
+    **/
+    int getLinkWeight(WorkspaceNode one, WorkspaceNode other, int type)
+    {
+	int t = elements.getTypeIndex(type);
+	Integer oneId = (Integer) ids.get(one);
+	Integer otherId = (Integer) ids.get(other);
+	if (t < 0 || oneId == null || otherId == null)
+	    return 0;
+	return elements.getWeight(t, Math.min(oneId.intValue(),
+					      otherId.intValue()),
+				  Math.max(oneId.intValue(),
+					   otherId.intValue()));
+    }
+
+
+    /**
+       Returns the link of the given type between the given
+       workspaces, materializing it if it isn't in the cache, or null
+       if they aren't linked.
+    **/
+    WorkspaceLink getLink(WorkspaceNode one, WorkspaceNode other, int type)
+    {
+	int t = elements.getTypeIndex(type);
+	Integer oneId = (Integer) ids.get(one);
+	Integer otherId = (Integer) ids.get(other);
+	if (t < 0 || oneId == null || otherId == null)
+	    return null;
+
+	// as with the links between all pairs, the link goes from
+	// the workspace with the lower number
+	int from = Math.min(oneId.intValue(), otherId.intValue());
+	int to = Math.max(oneId.intValue(), otherId.intValue());
+	Long key = Long.valueOf(WorkspaceLinkIndex.key(from, to, type));
+
+	WorkspaceLink link = (WorkspaceLink) cache.get(key);
+	if (link != null)
+	    return link;
+
+	int weight = elements.getWeight(t, from, to);
+	if (weight == 0)
+	    return null;
+	link = new WorkspaceLink((WorkspaceNode) workspaces.elementAt(from),
+				 (WorkspaceNode) workspaces.elementAt(to),
+				 type, WorkspaceLink.NONE, weight,
+				 initialEdgeLength);
+	// like those of the links between all pairs, the link objects
+	// are only produced when they are first accessed
+	if (type != WorkspaceLink.GOAL)
+	    link.loader = new PairLoader(t, from, to);
+	cache.put(key, link);
+	return link;
+    }
+
+
+    /**
+       Returns all links of the given workspace kept in this
+       hypergraph.
+    **/
+    Vector getLinks(WorkspaceNode node)
+    {
+	Vector links = new Vector();
+	for (int t = 0; t < elements.getTypeCount(); t++) {
+	    int type = elements.getType(t);
+	    Vector others = getLinkedWorkspaces(node, type);
+	    for (int i = 0; i < others.size(); i++)
+		links.addElement(getLink(node,
+					 (WorkspaceNode) others.elementAt(i),
+					 type));
+	}
+	return links;
+    }
+
+
+    /**
+       Evict the least recently used links that aren't visible from
+       the cache. The next sweep is due after another quarter of
+       CACHE_SIZE links, even if visible links kept this one from
+       getting below the limit.
+    **/
+    private void sweepCache()
+    {
+	Iterator i = cache.values().iterator();
+	while (cache.size() > CACHE_SIZE * 3 / 4 && i.hasNext())
+	    if (! ((WorkspaceLink) i.next()).visible)
+		i.remove();
+	cacheLimit = Math.max(CACHE_SIZE, cache.size() + CACHE_SIZE / 4);
+    }
+
+
+    /**
+       Produces the link objects of a materialized link, the keys of
+       the elements of a type shared by a pair of workspaces.
+    **/
+    private class PairLoader implements LinkObjectLoader
+    {
+	private int t;
+	private int from;
+	private int to;
+
+
+	PairLoader(int t, int from, int to)
+	{
+	    this.t = t;
+	    this.from = from;
+	    this.to = to;
+	}
+
+
+	public void loadLinkObjects(int link, Vector objects)
+	{
+	    elements.loadLinkObjects(t, from, to, objects);
+	}
+    }
+}
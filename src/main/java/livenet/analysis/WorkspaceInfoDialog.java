@@ -27,9 +27,22 @@ import javax.swing.*;
 public class WorkspaceInfoDialog extends JDialog implements ActionListener
 {
     JButton okButton = new JButton("OK");
+    JButton evolutionButton = new JButton("Evolution");
+    WorkspaceNode node;
 
     public WorkspaceInfoDialog(WorkspaceNode node)
     {
+	this(node, node.getWorkspaceLinks());
+    }
+
+
+    /**
+       Creates a dialog on the given node, whose links are the given
+       ones.
+    **/
+    public WorkspaceInfoDialog(WorkspaceNode node, Vector workspaceLinks)
+    {
+	this.node = node;
 	this.setTitle(node.getWorkspace() + "[" + node.getOwner() + "]");
 	String workspace = node.getWorkspace();
 	String owner = node.getOwner();
@@ -43,9 +56,7 @@ public class WorkspaceInfoDialog extends JDialog implements ActionListener
 	int numDocuments = node.getDocuments().size();
 	int numMessageTypes = node.getMessageTypes().size();
 	int numMessageRules = node.getSrcMessageRules().size();
-	int numMessages = node.getSentMessages().size();
-
-	Vector workspaceLinks = node.getWorkspaceLinks();
+	int numMessages = node.getSentMessageCount();
 
 	HashSet sharedActions = new HashSet();
 	HashSet sharedDiscussions = new HashSet();
@@ -61,25 +72,26 @@ public class WorkspaceInfoDialog extends JDialog implements ActionListener
 	    WorkspaceLink link = (WorkspaceLink) workspaceLinks.elementAt(i);
 	    WorkspaceNode otherWs = (link.fromNode.equals(node) ?
 				     link.toNode : link.fromNode);
+	    Vector linkObjects = link.getLinkObjects();
 	    switch (link.type) {
 	    case WorkspaceLink.ACTION :
-		for (int j = 0; j < link.linkObjects.size(); j++)
-		    sharedActions.add(link.linkObjects.elementAt(j));
+		for (int j = 0; j < linkObjects.size(); j++)
+		    sharedActions.add(linkObjects.elementAt(j));
 		sharedActionWS.add(otherWs);
 		break;
 	    case WorkspaceLink.DISCUSSION :
-		for (int j = 0; j < link.linkObjects.size(); j++)
-		    sharedDiscussions.add(link.linkObjects.elementAt(j));
+		for (int j = 0; j < linkObjects.size(); j++)
+		    sharedDiscussions.add(linkObjects.elementAt(j));
 		sharedDiscussionWS.add(otherWs);
 		break;
 	    case WorkspaceLink.DOCUMENT :
-		for (int j = 0; j < link.linkObjects.size(); j++)
-		    sharedDocuments.add(link.linkObjects.elementAt(j));
+		for (int j = 0; j < linkObjects.size(); j++)
+		    sharedDocuments.add(linkObjects.elementAt(j));
 		sharedDocumentWS.add(otherWs);
 		break;
 	    case WorkspaceLink.PARTICIPANT :
-		for (int j = 0; j < link.linkObjects.size(); j++)
-		    sharedParticipants.add(link.linkObjects.elementAt(j));
+		for (int j = 0; j < linkObjects.size(); j++)
+		    sharedParticipants.add(linkObjects.elementAt(j));
 		sharedParticipantWS.add(otherWs);
 		break;
 	    }
@@ -246,9 +258,14 @@ public class WorkspaceInfoDialog extends JDialog implements ActionListener
 	resultText.setCaretPosition(0);
 
 	okButton.addActionListener(this);
+	evolutionButton.addActionListener(this);
+
+	JPanel buttonPanel = new JPanel(new GridLayout(1, 2));
+	buttonPanel.add(evolutionButton);
+	buttonPanel.add(okButton);
 
 	this.getContentPane().add(BorderLayout.CENTER, textPane);
-	this.getContentPane().add(BorderLayout.SOUTH, okButton);
+	this.getContentPane().add(BorderLayout.SOUTH, buttonPanel);
 	this.pack();
     }
 
@@ -257,5 +274,9 @@ public class WorkspaceInfoDialog extends JDialog implements ActionListener
     {
 	if (e.getSource() == okButton)
 	    this.dispose();
+	else if (e.getSource() == evolutionButton) {
+	    EvolutionGraph graph = new EvolutionGraph(node);
+	    graph.setVisible(true);
+	}
     }    
 } // WorkspaceInfoDialog
@@ -0,0 +1,188 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.awt.Rectangle;
+
+
+/**
+   The graph of workspace nodes and workspace links shown in a
+   TreeGraphPanel, as seen by the layout engine. Which links exert a
+   spring force is controlled by the edge force settings of the
+   panel. The nodes are numbered as in the panel's workspace network.
+**/
+class WorkspaceLayoutGraph implements LayoutGraph
+{
+    private TreeGraphPanel panel;
+    private WorkspaceNetwork network;
+
+
+    WorkspaceLayoutGraph(TreeGraphPanel panel)
+    {
+	this.panel = panel;
+	this.network = panel.network;
+    }
+
+
+    private WorkspaceNode node(int i)
+    {
+	return network.getNode(i);
+    }
+
+
+    private WorkspaceLink edge(int i)
+    {
+	return (WorkspaceLink) panel.edges.elementAt(i);
+    }
+
+
+    public int getNodeCount()
+    {
+	return network.getNodeCount();
+    }
+
+
+    public int indexOf(Object node)
+    {
+	return network.idOf((WorkspaceNode) node);
+    }
+
+
+    public double getX(int node)
+    {
+	return node(node).x;
+    }
+
+
+    public double getY(int node)
+    {
+	return node(node).y;
+    }
+
+
+    public void setLocation(int node, double x, double y)
+    {
+	WorkspaceNode n = node(node);
+	int shiftX = (int) x - (int) n.x;
+	int shiftY = (int) y - (int) n.y;
+	n.x = x;
+	n.y = y;
+	n.x1 += shiftX;
+	n.x2 += shiftX;
+	n.y1 += shiftY;
+	n.y2 += shiftY;
+	panel.nodeGrid.update(node, x, y, panel.visibleNodes.get(node));
+	panel.nodeMoved(node);
+    }
+
+
+    public boolean isVisible(int node)
+    {
+	return node(node).isVisible();
+    }
+
+
+    public boolean isFixed(int node)
+    {
+	return node(node).fixed;
+    }
+
+
+    public int getEdgeCount()
+    {
+	return panel.edges.size();
+    }
+
+
+    public int getEdgeFrom(int edge)
+    {
+	return indexOf(edge(edge).fromNode);
+    }
+
+
+    public int getEdgeTo(int edge)
+    {
+	return indexOf(edge(edge).toNode);
+    }
+
+
+    public boolean isEdgeActive(int edge)
+    {
+	WorkspaceLink e = edge(edge);
+	if (! (e.fromNode.isVisible() && e.toNode.isVisible()))
+	    return false;
+	switch (e.type) {
+	case WorkspaceLink.CHILD :
+	    return panel.childEdgeForce;
+	case WorkspaceLink.GOAL :
+	    return panel.goalEdgeForce;
+	case WorkspaceLink.ACTION :
+	    return panel.actionEdgeForce;
+	case WorkspaceLink.DISCUSSION :
+	    return panel.discussionEdgeForce;
+	case WorkspaceLink.DOCUMENT :
+	    return panel.documentEdgeForce;
+	case WorkspaceLink.MESSAGERULE :
+	    return panel.messageRuleEdgeForce;
+	case WorkspaceLink.PARTICIPANT :
+	    return panel.participantEdgeForce;
+	}
+	return true;
+    }
+
+
+    public double getEdgeLength(int edge)
+    {
+	return edge(edge).length;
+    }
+
+
+    public double getEdgeElasticity(int edge)
+    {
+	WorkspaceLink e = edge(edge);
+	int springElasticity = 10;
+
+	// edges connecting two expanded parent nodes should be
+	// more stretchy
+	if (hasVisibleChild(indexOf(e.fromNode)) &&
+	    hasVisibleChild(indexOf(e.toNode)))
+	    springElasticity *= 5;
+
+	return springElasticity;
+    }
+
+
+    private boolean hasVisibleChild(int node)
+    {
+	for (int i = 0; i < network.getChildCount(node); i++)
+	    if (network.getNode(network.getChild(node, i)).isVisible())
+		return true;
+	return false;
+    }
+
+
+    public Rectangle getArea()
+    {
+	return panel.getWorld();
+    }
+
+
+    public void layoutChanged()
+    {
+	panel.repaint();
+    }
+}
@@ -21,6 +21,9 @@ import java.util.Vector;
 
 public class WorkspaceLink implements java.io.Serializable
 {
+    // keeps serialized workspace trees saved by earlier versions readable
+    private static final long serialVersionUID = -88013433798056084L;
+
     /* Constants */
 
     // link types:
@@ -45,11 +48,20 @@ public class WorkspaceLink implements java.io.Serializable
     WorkspaceNode toNode;
     int type;
     Vector linkObjects = new Vector();
+
+    // reads the link objects from a snapshot, or derives them, on
+    // first access
+    transient LinkObjectLoader loader;
+    transient int loaderId;
     int arrowMode;
     int weight;
     boolean visible = false;
     double length;
 
+    // the weight as last labelled, and its label
+    transient int labelWeight;
+    transient String weightLabel;
+
 
     /* Constructors */
 
@@ -76,6 +88,36 @@ public class WorkspaceLink implements java.io.Serializable
 
     public void addLinkObject(Object object)
     {
-	linkObjects.addElement(object);
+	getLinkObjects().addElement(object);
+    }
+
+
+    /**
+       Returns the weight as a string, to label the link with.
+    **/
+    String getWeightLabel()
+    {
+	if (weightLabel == null || labelWeight != weight) {
+	    labelWeight = weight;
+	    weightLabel = String.valueOf(weight);
+	}
+	return weightLabel;
+    }
+
+
+    public Vector getLinkObjects()
+    {
+	if (loader != null)
+	    load();
+	return linkObjects;
+    }
+
+
+    private synchronized void load()
+    {
+	if (loader != null) {
+	    loader.loadLinkObjects(loaderId, linkObjects);
+	    loader = null;
+	}
     }
 }
@@ -0,0 +1,179 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+
+/**
+   Index of the links between the workspaces of a workspace map while
+   the links are being set up. The workspaces are numbered by their
+   position in the list of workspaces, and each link is found in
+   constant time under the key (lower workspace number, higher
+   workspace number, link type), in an open-addressing hash table
+   with primitive long keys.
+
+   As with the linear search of a workspace's links this index
+   replaces, the link registered first under a key is the one that
+   is found. The links are only attached to their workspaces by
+   attachLinks(), once they have all been set up, in the order in
+   which they were added.
+**/
+class WorkspaceLinkIndex
+{
+    // marks an empty slot; real keys are never negative
+    private static final long EMPTY = -1L;
+
+    private static final int MAX_ID = (1 << 29) - 1;
+
+    // workspace node -> Integer, filled once from the list of
+    // workspaces
+    private IdentityHashMap ids = new IdentityHashMap();
+
+    // hash table of link keys and links
+    private long[] keys;
+    private WorkspaceLink[] values;
+    private int size = 0;
+
+    // all links, in the order in which they were added
+    private Vector links = new Vector();
+
+
+    WorkspaceLinkIndex(Vector workspaces)
+    {
+	for (int i = 0; i < workspaces.size(); i++)
+	    ids.put(workspaces.elementAt(i), Integer.valueOf(i));
+	allocate(64);
+    }
+
+
+    /**
+       Returns the number of the given workspace, numbering it if it
+       isn't in the list of workspaces.
+    **/
+    int idOf(WorkspaceNode workspace)
+    {
+	Integer id = (Integer) ids.get(workspace);
+	if (id == null) {
+	    id = Integer.valueOf(ids.size());
+	    ids.put(workspace, id);
+	}
+	return id.intValue();
+    }
+
+
+    /**
+       Returns the link of the given type between the workspaces of
+       the given numbers, in either direction, or null if there is
+       none.
+    **/
+    WorkspaceLink get(int one, int other, int type)
+    {
+	long key = key(one, other, type);
+	for (int i = slot(key); keys[i] != EMPTY; i = next(i))
+	    if (keys[i] == key)
+		return values[i];
+	return null;
+    }
+
+
+    /**
+       Adds a link between the workspaces of the given numbers.
+    **/
+    void add(WorkspaceLink link, int one, int other)
+    {
+	links.addElement(link);
+
+	long key = key(one, other, link.type);
+	int i = slot(key);
+	for (; keys[i] != EMPTY; i = next(i))
+	    if (keys[i] == key)
+		return;
+	keys[i] = key;
+	values[i] = link;
+	if (++size > keys.length / 2)
+	    rehash();
+    }
+
+
+    /**
+       Adds all links to the workspaces they connect.
+    **/
+    void attachLinks()
+    {
+	for (int i = 0; i < links.size(); i++) {
+	    WorkspaceLink link = (WorkspaceLink) links.elementAt(i);
+	    link.fromNode.addWorkspaceLink(link);
+	    link.toNode.addWorkspaceLink(link);
+	}
+    }
+
+
+    /**
+       Returns the key of the link of the given type between the
+       workspaces of the given numbers, in either direction.
+    **/
+    static long key(int one, int other, int type)
+    {
+	if (one < 0 || other < 0 || one > MAX_ID || other > MAX_ID)
+	    throw new IllegalArgumentException("workspace number out of " +
+					       "range");
+	int low = Math.min(one, other);
+	int high = Math.max(one, other);
+	return ((long) low << 33) | ((long) high << 4) | (type & 0xf);
+    }
+
+
+    private int slot(long key)
+    {
+	long h = key * 0x9E3779B97F4A7C15L;
+	return (int) (h >>> 40) & (keys.length - 1);
+    }
+
+
+    private int next(int slot)
+    {
+	return (slot + 1) & (keys.length - 1);
+    }
+
+
+    private void allocate(int capacity)
+    {
+	keys = new long[capacity];
+	values = new WorkspaceLink[capacity];
+	Arrays.fill(keys, EMPTY);
+    }
+
+
+    private void rehash()
+    {
+	long[] oldKeys = keys;
+	WorkspaceLink[] oldValues = values;
+	allocate(2 * oldKeys.length);
+	for (int j = 0; j < oldKeys.length; j++) {
+	    if (oldKeys[j] == EMPTY)
+		continue;
+	    int i = slot(oldKeys[j]);
+	    while (keys[i] != EMPTY)
+		i = next(i);
+	    keys[i] = oldKeys[j];
+	    values[i] = oldValues[j];
+	}
+    }
+}
@@ -20,6 +20,10 @@ import java.awt.*;
 import java.io.*;
 import java.sql.*;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.swing.*;
 
 
@@ -30,7 +34,7 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 
     // file holding saved workspace tree data
     private String treeFileName = "wstree.obj";
-    
+
     // Database queries
 
     // Query to get the root of the workspace tree
@@ -125,8 +129,21 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 
     private String workgroupList;
 
+    // beyond this many links between workspaces sharing elements,
+    // the shared elements are kept as a hypergraph, and the links
+    // only materialized as needed
+    private static final long MAX_MATERIALIZED_LINKS = 250000;
+
+    // types of the links between workspaces sharing an element, in
+    // the order in which they are created
+    private static final int[] SHARED_LINK_TYPES = {
+	WorkspaceLink.GOAL, WorkspaceLink.DOCUMENT, WorkspaceLink.DISCUSSION,
+	WorkspaceLink.ACTION, WorkspaceLink.PARTICIPANT
+    };
+
     // stuff that get's passed into the constructor
     private Connection con;
+    private ConnectionPool pool;
     private String[] workgroups;
 
     // workspace database stuff
@@ -141,25 +158,49 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
     private Vector messagerules = new Vector();
     private Vector messages = new Vector();
 
+    // hash index over the above, used to resolve rows to their parents
+    private WorkspaceRegistry registry = new WorkspaceRegistry();
+
+    // the shared elements, if the links between the workspaces
+    // sharing them aren't materialized
+    private WorkspaceHypergraph hypergraph;
+
     private TreeGraphPanel tgPan;
 
 
     public WorkspaceMap(Connection con, String[] workgroups,
 			MapControls controls, boolean debug)
+    {
+	this(con, null, workgroups, controls, debug);
+    }
+
+
+    /**
+       Creates a workspace map whose workgroup data is extracted in
+       parallel, on connections taken from the supplied pool. If the
+       pool is null, the queries are run one after another on the
+       supplied connection.
+    **/
+    public WorkspaceMap(Connection con, ConnectionPool pool,
+			String[] workgroups, MapControls controls,
+			boolean debug)
     {
 	this.con = con;
+	this.pool = pool;
 	this.workgroups = workgroups;
 	this.DEBUG = debug;
 
-	if (DEBUG)
+	if (DEBUG) {
 	    // read all the workspace data from file
 	    readTree();
+	    restoreHypergraph();
+	}
 	else
 	    // read all the workspace data from the database
 	    getDBData();
 
 	// Set up the graph panel
-	tgPan = new TreeGraphPanel(con, rootNode, controls);
+	tgPan = new TreeGraphPanel(con, rootNode, hypergraph, controls);
 	this.getContentPane().add(BorderLayout.CENTER, tgPan);
 	tgPan.start();
 
@@ -184,6 +225,8 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 
     private void getDBData()
     {
+	DateTime.startLoad();
+
 	if (workgroups.length > 1) {
 	    rootNode = new WorkspaceNode("Workgroups", true);
 	    workspaces.addElement(rootNode);
@@ -199,36 +242,75 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 
 	workgroupList = wgl.toString();
 
-	ProgressDialog progDialog = new ProgressDialog(new JFrame(), 10, 350);
-
-	progDialog.setMessage("Getting workspace data...", 1);
-	getWorkspaceData();
-
-	progDialog.setMessage("Getting workspace link data...", 2);
-	getWorkspaceLinkData();
-
-	progDialog.setMessage("Getting role data...", 3);
-	getRoleData();
-
-	progDialog.setMessage("Getting participant data...", 4);
-	getParticipantData();
-
-	progDialog.setMessage("Getting object data...", 5);
-	getObjectData();
-
-	progDialog.setMessage("Getting object role data...", 6);
-	getObjectRoleData();
+	// The queries, in the order in which their rows are resolved
+	// into workspace nodes and elements; the rows of each query may
+	// refer to entities created by the queries before it. In the
+	// column layouts, 'S' denotes a string column and 'T' a
+	// date/time column.
+	WorkgroupQuery[] queries = {
+	    new WorkgroupQuery("workspace", workspaceQuery, "SSTSS") {
+		    void resolve(Object[] row) { addWorkspace(row); }
+		},
+	    new WorkgroupQuery("workspace link", workspaceLinkQuery, "SSSS") {
+		    void resolve(Object[] row) { addWorkspaceLink(row); }
+		},
+	    new WorkgroupQuery("role", roleQuery, "SSST") {
+		    void resolve(Object[] row) { addRole(row); }
+		},
+	    new WorkgroupQuery("participant", participantQuery, "SSSST") {
+		    void resolve(Object[] row) { addParticipant(row); }
+		},
+	    new WorkgroupQuery("object", objectQuery, "SSSSSST") {
+		    void resolve(Object[] row) { addObject(row); }
+		},
+	    new WorkgroupQuery("object role", objectRoleQuery, "SSSSS") {
+		    void resolve(Object[] row) { addObjectRole(row); }
+		},
+	    new WorkgroupQuery("message type", messageTypeQuery, "SSS") {
+		    void resolve(Object[] row) { addMessageType(row); }
+		},
+	    new WorkgroupQuery("message rule", messageRuleQuery, "SSSSSSS") {
+		    void resolve(Object[] row) { addMessageRule(row); }
+		},
+	    new WorkgroupQuery("message", messageQuery, "SSSTSSSSSS") {
+		    void resolve(Object[] row) { addMessage(row); }
+		}
+	};
 
-	progDialog.setMessage("Getting message type data...", 7);
-	getMessageTypeData();
+	ProgressDialog progDialog = new ProgressDialog(new JFrame(),
+						       queries.length + 1, 350);
 
-	progDialog.setMessage("Getting message rule data...", 8);
-	getMessageRuleData();
+	// In parallel mode all queries are queued up front and run in
+	// order, as many at a time as the pool has connections, and
+	// their rows buffered; resolution below then only waits for the
+	// query it depends on next.
+	ExecutorService executor = null;
+	Future[] results = new Future[queries.length];
+	if (pool != null) {
+	    executor = Executors.newFixedThreadPool(
+		Math.min(queries.length, pool.getMaxConnections()));
+	    for (int i = 0; i < queries.length; i++)
+		results[i] = executor.submit(queries[i]);
+	}
 
-	progDialog.setMessage("Getting message data...", 9);
-	getMessageData();
+	try {
+	    for (int i = 0; i < queries.length; i++) {
+		progDialog.setMessage("Getting " + queries[i].name +
+				      " data...", i + 1);
+		Vector rows;
+		if (executor != null)
+		    rows = queries[i].waitFor(results[i]);
+		else
+		    rows = queries[i].fetch(con);
+		queries[i].resolveAll(rows);
+	    }
+	}
+	finally {
+	    if (executor != null)
+		executor.shutdown();
+	}
 
-	progDialog.setMessage("Setting up links...", 10);
+	progDialog.setMessage("Setting up links...", queries.length + 1);
 	createWorkspaceLinks();
 
 	progDialog.setMessage("Done.");
@@ -237,355 +319,303 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
     }
 
 
-    private void getWorkspaceData()
+    /**
+       One of the workgroup queries. The query's rows can be fetched
+       either directly on a given connection, or as a task on a
+       connection taken from the connection pool; the rows are
+       buffered and resolved later, in dependency order.
+    **/
+    abstract class WorkgroupQuery implements Callable
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(workspaceQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String workspace = rs.getString(1);
-		String owner = rs.getString(2);
-		Date date = rs.getDate(3);
-		Time time = rs.getTime(3);
-		String goal = rs.getString(4);
-		String workgroup = rs.getString(5);
-
-		if (goal != null)
-		    if (goal == "" || goal.equals("null"))
-			goal = null;
-
-		DateTime datetime = new DateTime(date, time);
-
-		WorkspaceNode ws = new WorkspaceNode(workspace, owner,
-						     datetime, goal,
-						     workgroup);
-		workspaces.addElement(ws);
-	    }
-	    rs.close();
-	    stmt.close();
+	String name;
+	String query;
+	String columns;
+
+
+	WorkgroupQuery(String name, String query, String columns)
+	{
+	    this.name = name;
+	    this.query = query;
+	    this.columns = columns;
 	}
-	catch (Exception ex) {
-	    System.err.println("getWorkspaceData: " + ex.getMessage());
+
+
+	abstract void resolve(Object[] row);
+
+
+	public Object call() throws SQLException
+	{
+	    Connection c = pool.getConnection();
+	    try {
+		return fetch(c);
+	    }
+	    finally {
+		pool.releaseConnection(c);
+	    }
 	}
-    }
 
 
-    private void getWorkspaceLinkData()
-    {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(workspaceLinkQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String parentWorkspace = rs.getString(1);
-		String parentOwner = rs.getString(2);
-		String childWorkspace = rs.getString(3);
-		String childOwner = rs.getString(4);
-
-		// find the parent and child workspace nodes
-		WorkspaceNode childWs = getWorkspace(childWorkspace,
-						     childOwner);
-		if (parentWorkspace == null && parentOwner == null) {
-		    if (workgroups.length > 1) {
-			childWs.setParent(rootNode);
-			rootNode.addChild(childWs);
-		    }
-		    else
-			rootNode = childWs;
-		}
-		else {
-		    WorkspaceNode parentWs = getWorkspace(parentWorkspace,
-							  parentOwner);
-		    if (parentWs != null && childWs != null) {
-			childWs.setParent(parentWs);
-			parentWs.addChild(childWs);
+	Vector fetch(Connection c)
+	{
+	    Vector rows = new Vector();
+	    try {
+		PreparedStatement stmt = c.prepareStatement(query +
+							    workgroupList);
+		ResultSet rs = stmt.executeQuery();
+
+		while (rs.next()) {
+		    Object[] row = new Object[columns.length()];
+		    for (int i = 0; i < row.length; i++) {
+			if (columns.charAt(i) == 'T')
+			    row[i] = new DateTime(rs.getDate(i + 1),
+						  rs.getTime(i + 1));
+			else
+			    row[i] = rs.getString(i + 1);
 		    }
+		    rows.addElement(row);
 		}
+		rs.close();
+		stmt.close();
 	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (Exception ex) {
-	    System.err.println("getWorkspaceLinkData: " + ex.getMessage());
+	    catch (Exception ex) {
+		System.err.println("get " + name + " data: " + ex.getMessage());
+	    }
+	    return rows;
 	}
-    }
 
 
-    private void getRoleData()
-    {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(roleQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
+	Vector waitFor(Future result)
+	{
+	    try {
+		return (Vector) result.get();
+	    }
+	    catch (Exception ex) {
+		System.err.println("get " + name + " data: " + ex.getMessage());
+		return new Vector();
+	    }
+	}
 
-	    while (rs.next()) {
-		String workspace = rs.getString(1);
-		String owner = rs.getString(2);
-		String role = rs.getString(3);
-		Date date = rs.getDate(4);
-		Time time = rs.getTime(4);
 
-		DateTime datetime = new DateTime(date, time);
+	void resolveAll(Vector rows)
+	{
+	    try {
+		for (int i = 0; i < rows.size(); i++)
+		    resolve((Object[]) rows.elementAt(i));
+	    }
+	    catch (Exception ex) {
+		System.err.println("resolve " + name + " data: " +
+				   ex.getMessage());
+	    }
+	}
+    }
 
-		WorkspaceNode ws = getWorkspace(workspace, owner);
 
-		Role r = new Role(ws, role, datetime);
+    private void addWorkspace(Object[] row)
+    {
+	String workspace = (String) row[0];
+	String owner = (String) row[1];
+	DateTime datetime = (DateTime) row[2];
+	String goal = (String) row[3];
+	String workgroup = (String) row[4];
+
+	if (goal != null)
+	    if (goal == "" || goal.equals("null"))
+		goal = null;
+
+	WorkspaceNode ws = new WorkspaceNode(workspace, owner, datetime, goal,
+					     workgroup);
+	workspaces.addElement(ws);
+	registry.addWorkspace(ws);
+    }
+
 
-		roles.addElement(r);
-		ws.addRole(r);
+    private void addWorkspaceLink(Object[] row)
+    {
+	String parentWorkspace = (String) row[0];
+	String parentOwner = (String) row[1];
+	String childWorkspace = (String) row[2];
+	String childOwner = (String) row[3];
+
+	// find the parent and child workspace nodes
+	WorkspaceNode childWs = getWorkspace(childWorkspace, childOwner);
+	if (parentWorkspace == null && parentOwner == null) {
+	    if (workgroups.length > 1) {
+		childWs.setParent(rootNode);
+		rootNode.addChild(childWs);
+	    }
+	    else
+		rootNode = childWs;
+	}
+	else {
+	    WorkspaceNode parentWs = getWorkspace(parentWorkspace, parentOwner);
+	    if (parentWs != null && childWs != null) {
+		childWs.setParent(parentWs);
+		parentWs.addChild(childWs);
 	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (SQLException ex) {
-	    System.err.println("getRoleData: " + ex.getMessage() + "\n  " +
-			       ex.getSQLState());
 	}
     }
 
 
-    private void getParticipantData()
+    private void addRole(Object[] row)
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(participantQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String workspace = rs.getString(1);
-		String owner = rs.getString(2);
-		String role = rs.getString(3);
-		String participant = rs.getString(4);
-		Date date = rs.getDate(5);
-		Time time = rs.getTime(5);
-
-		DateTime datetime = new DateTime(date, time);
-
-		WorkspaceNode ws = getWorkspace(workspace, owner);
-
-		Role r = getRole(ws, role);
-		if (r == null) {
-		    System.out.
-			println("getparticipantData returned null role!");
-		    System.out.println("Participant: " + participant +
-				       ", Workspace: " + ws.fullName +
-				       ", Role: " + role);
-		    continue;
-		}
-		
-		Participant p = new Participant(ws, participant, r, datetime);
+	String workspace = (String) row[0];
+	String owner = (String) row[1];
+	String role = (String) row[2];
+	DateTime datetime = (DateTime) row[3];
 
-		participants.addElement(p);
-		r.addParticipant(p);
-		ws.addParticipant(p);
-	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (SQLException ex) {
-	    System.err.println("getParticipantData: " + ex.getMessage());
-	}
+	WorkspaceNode ws = getWorkspace(workspace, owner);
+
+	Role r = new Role(ws, role, datetime);
+
+	roles.addElement(r);
+	registry.addRole(r);
+	ws.addRole(r);
     }
 
 
-    private void getObjectData()
+    private void addParticipant(Object[] row)
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(objectQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String workspace = rs.getString(1);
-		String owner = rs.getString(2);
-		String name = rs.getString(3);
-		String folder = rs.getString(4);
-		String type = rs.getString(5);
-		String url = rs.getString(6);
-		Date date = rs.getDate(7);
-		Time time = rs.getTime(7);
-
-		DateTime datetime = new DateTime(date, time);
-
-		WorkspaceNode ws = getWorkspace(workspace, owner);
-
-		if (type.toLowerCase().equals("document")) {
-		    Document document = new Document(ws, folder, name, url,
-						     datetime);
-		    documents.addElement(document);
-		    ws.addDocument(document);
-		} else if (type.toLowerCase().equals("discussion")) {
-		    Discussion discussion = new Discussion(ws, folder, name,
-							   url, datetime);
-		    discussions.addElement(discussion);
-		    ws.addDiscussion(discussion);
-		} else if (type.toLowerCase().equals("action")) {
-		    Action action = new Action(ws, folder, name, url,
-					       datetime);
-		    actions.addElement(action);
-		    ws.addAction(action);
-		}
-	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (Exception ex) {
-	    System.err.println("getObjectData: " + ex.getMessage());
+	String workspace = (String) row[0];
+	String owner = (String) row[1];
+	String role = (String) row[2];
+	String participant = (String) row[3];
+	DateTime datetime = (DateTime) row[4];
+
+	WorkspaceNode ws = getWorkspace(workspace, owner);
+
+	Role r = getRole(ws, role);
+	if (r == null) {
+	    System.out.println("getparticipantData returned null role!");
+	    System.out.println("Participant: " + participant +
+			       ", Workspace: " + ws.fullName +
+			       ", Role: " + role);
+	    return;
 	}
+
+	Participant p = new Participant(ws, participant, r, datetime);
+
+	participants.addElement(p);
+	r.addParticipant(p);
+	ws.addParticipant(p);
     }
 
 
-    private void getObjectRoleData()
+    private void addObject(Object[] row)
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(objectRoleQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String workspace = rs.getString(1);
-		String owner = rs.getString(2);
-		String role = rs.getString(3);
-		String obj = rs.getString(4);
-
-		WorkspaceNode ws = getWorkspace(workspace, owner);
-		Role r = getRole(ws, role);
-		WorkspaceObject o = getWorkspaceObject(ws, obj);
-
-		r.addAssignedObject(o);
-		o.addAssignedRole(r);
-	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (Exception ex) {
-	    System.err.println("getObjectRoleData: " + ex.getMessage());
+	String workspace = (String) row[0];
+	String owner = (String) row[1];
+	String name = (String) row[2];
+	String folder = (String) row[3];
+	String type = (String) row[4];
+	String url = (String) row[5];
+	DateTime datetime = (DateTime) row[6];
+
+	WorkspaceNode ws = getWorkspace(workspace, owner);
+
+	if (type.toLowerCase().equals("document")) {
+	    Document document = new Document(ws, folder, name, url, datetime);
+	    documents.addElement(document);
+	    registry.addWorkspaceObject(document);
+	    ws.addDocument(document);
+	} else if (type.toLowerCase().equals("discussion")) {
+	    Discussion discussion = new Discussion(ws, folder, name, url,
+						   datetime);
+	    discussions.addElement(discussion);
+	    registry.addWorkspaceObject(discussion);
+	    ws.addDiscussion(discussion);
+	} else if (type.toLowerCase().equals("action")) {
+	    Action action = new Action(ws, folder, name, url, datetime);
+	    actions.addElement(action);
+	    registry.addWorkspaceObject(action);
+	    ws.addAction(action);
 	}
     }
 
 
-    private void getMessageTypeData()
+    private void addObjectRole(Object[] row)
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(messageTypeQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
+	String workspace = (String) row[0];
+	String owner = (String) row[1];
+	String role = (String) row[2];
+	String obj = (String) row[3];
 
-	    while (rs.next()) {
-		String workspace = rs.getString(1);
-		String owner = rs.getString(2);
-		String type = rs.getString(3);
+	WorkspaceNode ws = getWorkspace(workspace, owner);
+	Role r = getRole(ws, role);
+	WorkspaceObject o = getWorkspaceObject(ws, obj);
 
-		WorkspaceNode ws = getWorkspace(workspace, owner);
+	r.addAssignedObject(o);
+	o.addAssignedRole(r);
+    }
 
-		MessageType mt = new MessageType(ws, type);
-		messagetypes.addElement(mt);
-		ws.addMessageType(mt);
-	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (Exception ex) {
-	    System.err.println("getMessageTypeData: " + ex.getMessage());
-	}
+
+    private void addMessageType(Object[] row)
+    {
+	String workspace = (String) row[0];
+	String owner = (String) row[1];
+	String type = (String) row[2];
+
+	WorkspaceNode ws = getWorkspace(workspace, owner);
+
+	MessageType mt = new MessageType(ws, type);
+	messagetypes.addElement(mt);
+	registry.addMessageType(mt);
+	ws.addMessageType(mt);
     }
 
 
-    private void getMessageRuleData()
+    private void addMessageRule(Object[] row)
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(messageRuleQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String srcWorkspace = rs.getString(1);
-		String srcOwner = rs.getString(2);
-		String srcType = rs.getString(3);
-		String targetWorkspace = rs.getString(4);
-		String targetOwner = rs.getString(5);
-		String targetRole = rs.getString(6);
-		String targetType = rs.getString(7);
-
-		WorkspaceNode srcWs = getWorkspace(srcWorkspace, srcOwner);
-		WorkspaceNode targetWs = getWorkspace(targetWorkspace,
-						      targetOwner);
-
-		MessageType srcT = getMessageType(srcWs, srcType);
-		MessageType targetT = getMessageType(targetWs, targetType);
-
-		Role targetR = getRole(targetWs, targetRole);
-
-		MessageRule mr = new MessageRule(srcWs, srcT, targetWs,
-						 targetT, targetR);
-
-		messagerules.addElement(mr);
-		srcWs.addSrcMessageRule(mr);
-		targetWs.addTargetMessageRule(mr);
-	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (Exception ex) {
-	    System.err.println("getMessageRuleData: " + ex.getMessage());
-	}
+	String srcWorkspace = (String) row[0];
+	String srcOwner = (String) row[1];
+	String srcType = (String) row[2];
+	String targetWorkspace = (String) row[3];
+	String targetOwner = (String) row[4];
+	String targetRole = (String) row[5];
+	String targetType = (String) row[6];
+
+	WorkspaceNode srcWs = getWorkspace(srcWorkspace, srcOwner);
+	WorkspaceNode targetWs = getWorkspace(targetWorkspace, targetOwner);
+
+	MessageType srcT = getMessageType(srcWs, srcType);
+	MessageType targetT = getMessageType(targetWs, targetType);
+
+	Role targetR = getRole(targetWs, targetRole);
+
+	MessageRule mr = new MessageRule(srcWs, srcT, targetWs, targetT,
+					 targetR);
+
+	messagerules.addElement(mr);
+	registry.addMessageRule(mr);
+	srcWs.addSrcMessageRule(mr);
+	targetWs.addTargetMessageRule(mr);
     }
 
 
-    private void getMessageData()
+    private void addMessage(Object[] row)
     {
-	try {
-	    PreparedStatement stmt = con.prepareStatement(messageQuery +
-							  workgroupList);
-	    // stmt.setString(1, workgroup);
-	    ResultSet rs = stmt.executeQuery();
-
-	    while (rs.next()) {
-		String subject = rs.getString(1);
-		String sender = rs.getString(2);
-		String srcType = rs.getString(3);
-		Date date = rs.getDate(4);
-		Time time = rs.getTime(4);
-		String srcWorkspace = rs.getString(5);
-		String srcOwner = rs.getString(6);
-		String targetWorkspace = rs.getString(7);
-		String targetOwner = rs.getString(8);
-		String targetRole = rs.getString(9);
-		String targetType = rs.getString(10);
-
-		DateTime datetime = new DateTime(date, time);
-
-		WorkspaceNode srcWs = getWorkspace(srcWorkspace, srcOwner);
-		WorkspaceNode targetWs = getWorkspace(targetWorkspace,
-						      targetOwner);
-		MessageType srcT = getMessageType(srcWs, srcType);
-		MessageType targetT = getMessageType(targetWs, targetType);
-		Role targetR = getRole(targetWs, targetRole);
-
-		Message m = new Message(subject, sender, datetime, srcWs, srcT,
-					targetWs, targetT, targetR);
-
-		messages.addElement(m);
-		srcWs.addSentMessage(m);
-		targetWs.addReceivedMessage(m);
-	    }
-	    rs.close();
-	    stmt.close();
-	}
-	catch (Exception ex) {
-	    System.err.println("getMessageData: " + ex.getMessage());
-	}
+	String subject = (String) row[0];
+	String sender = (String) row[1];
+	String srcType = (String) row[2];
+	DateTime datetime = (DateTime) row[3];
+	String srcWorkspace = (String) row[4];
+	String srcOwner = (String) row[5];
+	String targetWorkspace = (String) row[6];
+	String targetOwner = (String) row[7];
+	String targetRole = (String) row[8];
+	String targetType = (String) row[9];
+
+	WorkspaceNode srcWs = getWorkspace(srcWorkspace, srcOwner);
+	WorkspaceNode targetWs = getWorkspace(targetWorkspace, targetOwner);
+	MessageType srcT = getMessageType(srcWs, srcType);
+	MessageType targetT = getMessageType(targetWs, targetType);
+	Role targetR = getRole(targetWs, targetRole);
+
+	Message m = new Message(subject, sender, datetime, srcWs, srcT,
+				targetWs, targetT, targetR);
+
+	messages.addElement(m);
+	srcWs.addSentMessage(m);
+	targetWs.addReceivedMessage(m);
     }
 
 
@@ -594,21 +624,20 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 	// The processing takes place in two passes:
 	// 1. Collect all information on workspace elements common
 	//    across workspaces.
-	// 2. Create the actual workspace links and insert into
-	//    workspaces, or if workspace links of that type already
-	//    exist, increment their counter.
-	// Exception: child links and message rule links are inserted
+	// 2. Derive the workspace links of the shared elements, with
+	//    the number of shared elements as their weight, and
+	//    create them; or, if there would be too many of them,
+	//    keep the shared elements as a hypergraph instead.
+	// Exception: child links and message rule links are created
 	// during pass 1.
+	// The links are looked up in an index while they are being
+	// set up, and only inserted into the workspaces at the end.
+	WorkspaceLinkIndex links = new WorkspaceLinkIndex(workspaces);
 
-	// the data structure for following vectors:
-	// each vector contains a number of arrays
-	// each array contains two elements: a string and a vector of
-	// workspace nodes
-	Vector goals = new Vector();
-	Vector documents = new Vector();
-	Vector discussions = new Vector();
-	Vector actions = new Vector();
-	Vector participants = new Vector();
+	// the elements of each type of shared element, by workspace
+	// number; the key of an element is its goal, URL or
+	// participant name
+	ElementLinkEngine elements = new ElementLinkEngine(SHARED_LINK_TYPES);
 
 
 	// Pass 1: collect all information on common workspace elements
@@ -617,128 +646,8 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 	    WorkspaceNode currentNode =
 		(WorkspaceNode) workspaces.elementAt(i);
 
-	    // Get goal info
-	    if (currentNode.getGoal() != null) {
-		boolean goalFound = false;
-		for (int g = 0; g < goals.size(); g++) {
-		    if (((String)
-			 ((Object[]) goals.elementAt(g))[0]).
-			equals(currentNode.getGoal())) {
-			((Vector)
-			 ((Object[])
-			  goals.elementAt(g))[1]).addElement(currentNode);
-			goalFound = true;
-			break;
-		    }
-		}
-		if (!goalFound) {
-		    Object goalArray [] = new Object[2];
-		    goalArray[0] = currentNode.getGoal();
-		    goalArray[1] = new Vector();
-		    ((Vector) goalArray[1]).addElement(currentNode);
-		    goals.addElement(goalArray);
-		}
-	    } // if
-
-	    // Get document info
-	    Vector nodeDocuments = currentNode.getDocuments();
-	    for (int j = 0; j < nodeDocuments.size(); j++) {
-		boolean documentFound = false;
-		for (int d = 0; d < documents.size(); d++) {
-		    if (((String) ((Object[]) documents.elementAt(d))[0]).
-			equals(((Document) nodeDocuments.elementAt(j)).
-			       url)) {
-			((Vector) ((Object[]) documents.elementAt(d))[1]).
-			    addElement(currentNode);
-			documentFound = true;
-			break;
-		    }
-		}
-		if (!documentFound) {
-		    Object documentArray [] = new Object[2];
-		    documentArray[0] =
-			((Document) nodeDocuments.elementAt(j)).url;
-		    documentArray[1] = new Vector();
-		    ((Vector) documentArray[1]).addElement(currentNode);
-		    documents.addElement(documentArray);
-		}
-	    } // for
-
-	    // Get discussion info
-	    Vector nodeDiscussions = currentNode.getDiscussions();
-	    for (int j = 0; j < nodeDiscussions.size(); j++) {
-		boolean discussionFound = false;
-		for (int d = 0; d < discussions.size(); d++) {
-		    if (((String) ((Object[]) discussions.elementAt(d))[0]).
-			equals(((Discussion)
-				nodeDiscussions.elementAt(j)).url)) {
-			((Vector) ((Object[]) discussions.elementAt(d))[1]).
-			    addElement(currentNode);
-			discussionFound = true;
-			break;
-		    }
-		}
-		if (!discussionFound) {
-		    Object discussionArray [] = new Object[2];
-		    discussionArray[0] =
-			((Discussion) nodeDiscussions.elementAt(j)).
-			url;
-		    discussionArray[1] = new Vector();
-		    ((Vector) discussionArray[1]).addElement(currentNode);
-		    discussions.addElement(discussionArray);
-		}
-	    } // for
-
-	    // Get action info
-	    Vector nodeActions = currentNode.getActions();
-	    for (int j = 0; j < nodeActions.size(); j++) {
-		boolean actionFound = false;
-		for (int a = 0; a < actions.size(); a++) {
-		    if (((String) ((Object[]) actions.elementAt(a))[0]).
-			equals(((Action)
-				nodeActions.elementAt(j)).url)) {
-			((Vector) ((Object[]) actions.elementAt(a))[1]).
-			    addElement(currentNode);
-			actionFound = true;
-			break;
-		    }
-		}
-		if (!actionFound) {
-		    Object actionArray [] = new Object[2];
-		    actionArray[0] =
-			((Action) nodeActions.elementAt(j)).
-			url;
-		    actionArray[1] = new Vector();
-		    ((Vector) actionArray[1]).addElement(currentNode);
-		    actions.addElement(actionArray);
-		}
-	    } // for
-
-	    // Get participant info
-	    Vector nodeParticipants = currentNode.getParticipants();
-	    for (int j = 0; j < nodeParticipants.size(); j++) {
-		boolean participantFound = false;
-		for (int p = 0; p < participants.size(); p++) {
-		    if (((String) ((Object[]) participants.elementAt(p))[0]).
-			equals(((Participant)
-				nodeParticipants.elementAt(j)).name)) {
-			((Vector) ((Object[]) participants.elementAt(p))[1]).
-			    addElement(currentNode);
-			participantFound = true;
-			break;
-		    }
-		}
-		if (!participantFound) {
-		    Object participantArray [] = new Object[2];
-		    participantArray[0] =
-			((Participant) nodeParticipants.elementAt(j)).
-			name;
-		    participantArray[1] = new Vector();
-		    ((Vector) participantArray[1]).addElement(currentNode);
-		    participants.addElement(participantArray);
-		}
-	    } // for
-	    
+	    addElements(elements, currentNode, i);
+
 	    // create child links
 	    for (int j = 0; j < currentNode.getChildCount(); j++) {
 		WorkspaceNode childNode = currentNode.getChild(j);
@@ -746,8 +655,7 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 		    new WorkspaceLink(currentNode, childNode,
 				      WorkspaceLink.CHILD, WorkspaceLink.TO,
 				      1, initialEdgeLength);
-		currentNode.addWorkspaceLink(link);
-		childNode.addWorkspaceLink(link);
+		links.add(link, i, links.idOf(childNode));
 	    }
 
 	    // create message rule links
@@ -755,9 +663,9 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 	    for (int j = 0; j < nodeSrcMessageRules.size(); j++) {
 		MessageRule mr =
 		    (MessageRule) nodeSrcMessageRules.elementAt(j);
-		WorkspaceLink mrLink = currentNode.
-		    getWorkspaceLink(mr.targetWorkspace,
-				     WorkspaceLink.MESSAGERULE);
+		int target = links.idOf(mr.targetWorkspace);
+		WorkspaceLink mrLink =
+		    links.get(i, target, WorkspaceLink.MESSAGERULE);
 		if (mrLink != null) {
 		    mrLink.weight++;
 		    mrLink.addLinkObject(mr);
@@ -767,248 +675,195 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 					  WorkspaceLink.MESSAGERULE, mr,
 					  WorkspaceLink.TO, 1,
 					  initialEdgeLength);
-		    currentNode.addWorkspaceLink(mrLink);
-		    mr.targetWorkspace.addWorkspaceLink(mrLink);
+		    links.add(mrLink, i, target);
 		}
 	    }
 
 	} // for
 
-	// Pass 2: Create, or update, workspace links
-
-	// create goal links
-	for (int g = 0; g < goals.size(); g++) {
-	    Vector goalWorkspaces =
-		(Vector) ((Object[]) goals.elementAt(g))[1];
-	    for (int i = 0; i < (goalWorkspaces.size() - 1); i++) {
-		WorkspaceNode oneWs =
-		    (WorkspaceNode) goalWorkspaces.elementAt(i);
-		for (int j = (i + 1); j < goalWorkspaces.size(); j++) {
-		    WorkspaceNode otherWs =
-			(WorkspaceNode) goalWorkspaces.elementAt(j);
-		    WorkspaceLink goalLink =
-			new WorkspaceLink(oneWs, otherWs, WorkspaceLink.GOAL,
-					  WorkspaceLink.NONE, 1,
-					  initialEdgeLength);
-		    oneWs.addWorkspaceLink(goalLink);
-		    otherWs.addWorkspaceLink(goalLink);
-		}
-	    }
-	}
+	// Pass 2: Derive the workspace links of the shared elements
+	// and create them
 
-	// create document links
-	for (int d = 0; d < documents.size(); d++) {
-	    Vector documentWorkspaces =
-		(Vector) ((Object[]) documents.elementAt(d))[1];
-	    String doc = (String) ((Object[]) documents.elementAt(d))[0];
-	    for (int i = 0; i < (documentWorkspaces.size() - 1); i++) {
-		WorkspaceNode oneWs =
-		    (WorkspaceNode) documentWorkspaces.elementAt(i);
-		for (int j = (i + 1); j < documentWorkspaces.size(); j++) {
-		    WorkspaceNode otherWs =
-			(WorkspaceNode) documentWorkspaces.elementAt(j);
-		    WorkspaceLink documentLink = oneWs.
-			getWorkspaceLink(otherWs, WorkspaceLink.DOCUMENT);
-		    if (documentLink != null) {
-			documentLink.weight++;
-			documentLink.addLinkObject(doc);
-		    } else {
-			documentLink =
-			    new WorkspaceLink(oneWs, otherWs,
-					      WorkspaceLink.DOCUMENT, doc,
-					      WorkspaceLink.NONE, 1,
-					      initialEdgeLength);
-			oneWs.addWorkspaceLink(documentLink);
-			otherWs.addWorkspaceLink(documentLink);
-		    }
-		}
-	    }
-	}
+	if (elements.getPairBound() > MAX_MATERIALIZED_LINKS)
+	    hypergraph = new WorkspaceHypergraph(workspaces, elements);
+	else
+	    addSharedLinks(workspaces, elements, links);
 
-	// create discussion links
-	for (int d = 0; d < discussions.size(); d++) {
-	    Vector discussionWorkspaces =
-		(Vector) ((Object[]) discussions.elementAt(d))[1];
-	    String disc = (String) ((Object[]) discussions.elementAt(d))[0];
-	    for (int i = 0; i < (discussionWorkspaces.size() - 1); i++) {
-		WorkspaceNode oneWs =
-		    (WorkspaceNode) discussionWorkspaces.elementAt(i);
-		for (int j = (i + 1); j < discussionWorkspaces.size(); j++) {
-		    WorkspaceNode otherWs =
-			(WorkspaceNode) discussionWorkspaces.elementAt(j);
-		    WorkspaceLink discussionLink = oneWs.
-			getWorkspaceLink(otherWs, WorkspaceLink.DISCUSSION);
-		    if (discussionLink != null) {
-			discussionLink.weight++;
-			discussionLink.addLinkObject(disc);
-		    } else {
-			discussionLink =
-			    new WorkspaceLink(oneWs, otherWs,
-					      WorkspaceLink.DISCUSSION, disc,
-					      WorkspaceLink.NONE, 1,
-					      initialEdgeLength);
-			oneWs.addWorkspaceLink(discussionLink);
-			otherWs.addWorkspaceLink(discussionLink);
-		    }
+	links.attachLinks();
+    }
+
+
+    /**
+       Derives the links between the given workspaces that share
+       elements of the given engine, and adds them to the given
+       index.
+    **/
+    private void addSharedLinks(Vector workspaces, ElementLinkEngine elements,
+				WorkspaceLinkIndex links)
+    {
+	elements.deriveLinks();
+	for (int t = 0; t < elements.getTypeCount(); t++) {
+	    int type = elements.getType(t);
+	    for (int k = 0; k < elements.getLinkCount(t); k++) {
+		int one = elements.getFrom(t, k);
+		int other = elements.getTo(t, k);
+		WorkspaceNode oneWs = (WorkspaceNode) workspaces.elementAt(one);
+		WorkspaceNode otherWs =
+		    (WorkspaceNode) workspaces.elementAt(other);
+		WorkspaceLink link =
+		    new WorkspaceLink(oneWs, otherWs, type, WorkspaceLink.NONE,
+				      elements.getWeight(t, k),
+				      initialEdgeLength);
+		// goal links have no link objects
+		if (type != WorkspaceLink.GOAL) {
+		    link.loader = elements;
+		    link.loaderId = elements.getLinkId(t, k);
 		}
+		links.add(link, one, other);
 	    }
 	}
+    }
 
-	// create action links
-	for (int a = 0; a < actions.size(); a++) {
-	    Vector actionWorkspaces =
-		(Vector) ((Object[]) actions.elementAt(a))[1];
-	    String act = (String) ((Object[]) actions.elementAt(a))[0];
-	    for (int i = 0; i < (actionWorkspaces.size() - 1); i++) {
-		WorkspaceNode oneWs =
-		    (WorkspaceNode) actionWorkspaces.elementAt(i);
-		for (int j = (i + 1); j < actionWorkspaces.size(); j++) {
-		    WorkspaceNode otherWs =
-			(WorkspaceNode) actionWorkspaces.elementAt(j);
-		    WorkspaceLink actionLink = oneWs.
-			getWorkspaceLink(otherWs, WorkspaceLink.ACTION);
-		    if (actionLink != null) {
-			actionLink.weight++;
-			actionLink.addLinkObject(act);
-		    } else {
-			actionLink =
-			    new WorkspaceLink(oneWs, otherWs,
-					      WorkspaceLink.ACTION, act,
-					      WorkspaceLink.NONE, 1,
-					      initialEdgeLength);
-			oneWs.addWorkspaceLink(actionLink);
-			otherWs.addWorkspaceLink(actionLink);
-		    }
-		}
+
+    /**
+       Adds the shared elements of the given workspace, the workspace
+       of the given number, to the given engine.
+    **/
+    private void addElements(ElementLinkEngine elements,
+			     WorkspaceNode node, int i)
+    {
+	// Get goal info
+	if (node.getGoal() != null)
+	    elements.addElement(0, node.getGoal(), i);
+
+	// Get document info
+	Vector nodeDocuments = node.getDocuments();
+	for (int j = 0; j < nodeDocuments.size(); j++)
+	    elements.addElement(1, ((Document) nodeDocuments.
+				    elementAt(j)).url, i);
+
+	// Get discussion info
+	Vector nodeDiscussions = node.getDiscussions();
+	for (int j = 0; j < nodeDiscussions.size(); j++)
+	    elements.addElement(2, ((Discussion) nodeDiscussions.
+				    elementAt(j)).url, i);
+
+	// Get action info
+	Vector nodeActions = node.getActions();
+	for (int j = 0; j < nodeActions.size(); j++)
+	    elements.addElement(3, ((Action) nodeActions.
+				    elementAt(j)).url, i);
+
+	// Get participant info
+	Vector nodeParticipants = node.getParticipants();
+	for (int j = 0; j < nodeParticipants.size(); j++)
+	    elements.addElement(4, ((Participant) nodeParticipants.
+				    elementAt(j)).name, i);
+    }
+
+
+    /**
+       Rebuilds the hypergraph of the shared elements of a workspace
+       tree read from a file, if the tree holds no links between
+       workspaces sharing elements. Whether the links were kept in a
+       hypergraph when the tree was saved follows from the same bound
+       on their number as in createWorkspaceLinks(); below it, the
+       links are materialized, as they are when loading from the
+       database.
+    **/
+    private void restoreHypergraph()
+    {
+	if (rootNode == null)
+	    return;
+
+	Vector tree = subtree(rootNode);
+	for (int i = 0; i < tree.size(); i++) {
+	    WorkspaceNode node = (WorkspaceNode) tree.elementAt(i);
+	    for (int j = 0; j < node.getWorkspaceLinkCount(); j++) {
+		int type = node.getWorkspaceLink(j).type;
+		if (type != WorkspaceLink.CHILD &&
+		    type != WorkspaceLink.MESSAGERULE)
+		    return;
 	    }
 	}
 
-	// create participant links
-	for (int p = 0; p < participants.size(); p++) {
-	    Vector participantWorkspaces =
-		(Vector) ((Object[]) participants.elementAt(p))[1];
-	    String part = (String) ((Object[]) participants.elementAt(p))[0];
-	    for (int i = 0; i < (participantWorkspaces.size() - 1); i++) {
-		WorkspaceNode oneWs =
-		    (WorkspaceNode) participantWorkspaces.elementAt(i);
-		for (int j = (i + 1); j < participantWorkspaces.size(); j++) {
-		    WorkspaceNode otherWs =
-			(WorkspaceNode) participantWorkspaces.elementAt(j);
-		    WorkspaceLink participantLink = oneWs.
-			getWorkspaceLink(otherWs, WorkspaceLink.PARTICIPANT);
-		    if (participantLink != null) {
-			participantLink.weight++;
-			participantLink.addLinkObject(part);
-		    } else {
-			participantLink =
-			    new WorkspaceLink(oneWs, otherWs,
-					      WorkspaceLink.PARTICIPANT, part,
-					      WorkspaceLink.NONE, 1,
-					      initialEdgeLength);
-			oneWs.addWorkspaceLink(participantLink);
-			otherWs.addWorkspaceLink(participantLink);
-		    }
-		}
-	    }
+	ElementLinkEngine elements = new ElementLinkEngine(SHARED_LINK_TYPES);
+	for (int i = 0; i < tree.size(); i++)
+	    addElements(elements, (WorkspaceNode) tree.elementAt(i), i);
+	if (elements.getPairBound() > MAX_MATERIALIZED_LINKS)
+	    hypergraph = new WorkspaceHypergraph(tree, elements);
+	else {
+	    WorkspaceLinkIndex links = new WorkspaceLinkIndex(tree);
+	    addSharedLinks(tree, elements, links);
+	    links.attachLinks();
 	}
     }
 
 
+    /**
+       Returns the given workspace and its descendents in depth-first
+       order, children in order.
+    **/
+    private static Vector subtree(WorkspaceNode root)
+    {
+	Vector tree = new Vector();
+	Vector stack = new Vector();
+	stack.addElement(root);
+	while (stack.size() > 0) {
+	    WorkspaceNode node =
+		(WorkspaceNode) stack.remove(stack.size() - 1);
+	    tree.addElement(node);
+	    // pushed last first, so that they are taken in order
+	    for (int i = node.getChildCount() - 1; i >= 0; i--)
+		stack.addElement(node.getChild(i));
+	}
+	return tree;
+    }
+
+
     private WorkspaceNode getWorkspace(String workspace, String owner)
     {
-	for (int i = 0; i < workspaces.size(); i++) {
-	    WorkspaceNode ws = (WorkspaceNode) workspaces.elementAt(i);
-	    if (ws.isSpecial())
-		continue;
-	    String wsWorkspace = ws.getWorkspace();
-	    String wsOwner = ws.getOwner();
-	    if (wsWorkspace.equalsIgnoreCase(workspace) &&
-		wsOwner.equalsIgnoreCase(owner))
-		return ws;
-	}
-	System.err.println("getWorkspace(" + workspace + ", " + owner +
-			   "): null!");
-	
-	return null;
+	WorkspaceNode ws = registry.getWorkspace(workspace, owner);
+	if (ws == null)
+	    System.err.println("getWorkspace(" + workspace + ", " + owner +
+			       "): null!");
+	return ws;
     }
 
 
     private Role getRole(WorkspaceNode workspace, String role)
     {
-	for (int i = 0; i < roles.size(); i++) {
-	    Role r = (Role) roles.elementAt(i);
-	    if (r == null)
-		System.err.println("Role is null!");
-	    if (r.workspace == null)
-		System.err.println("Workspace is null!");
-	    if (r.workspace.equals(workspace) &&
-		r.name.toLowerCase().equals(role.toLowerCase()))
-		return r;
-	}
-	return null;
+	return registry.getRole(workspace, role);
     }
 
 
     private WorkspaceObject getWorkspaceObject(WorkspaceNode workspace,
 					       String workspaceObject)
     {
-	for (int i = 0; i < documents.size(); i++) {
-	    Document d = (Document) documents.elementAt(i);
-	    if (d.workspace.equals(workspace) &&
-		d.name.equals(workspaceObject))
-		return d;
-	}
-	for (int i = 0; i < discussions.size(); i++) {
-	    Discussion d = (Discussion) discussions.elementAt(i);
-	    if (d.workspace.equals(workspace) &&
-		d.name.equals(workspaceObject))
-		return d;
-	}
-	for (int i = 0; i < actions.size(); i++) {
-	    Action a = (Action) actions.elementAt(i);
-	    if (a.workspace.equals(workspace) &&
-		a.name.equals(workspaceObject))
-		return a;
-	}
-	return null;
+	return registry.getWorkspaceObject(workspace, workspaceObject);
     }
 
 
     public MessageType getMessageType(WorkspaceNode workspace, String type)
     {
-	for (int i = 0; i < messagetypes.size(); i++) {
-	    MessageType m = (MessageType) messagetypes.elementAt(i);
-	    if (m.workspace.equals(workspace) && m.type.equals(type))
-		return m;
-	}
-	return null;
+	return registry.getMessageType(workspace, type);
     }
 
 
     public MessageRule getMessageRule(MessageType srcType,
 				      MessageType targetType, Role targetRole)
     {
-	for (int i = 0; i < messagerules.size(); i++) {
-	    MessageRule m = (MessageRule) messagerules.elementAt(i);
-	    if (m.srcType.equals(srcType) && m.targetType.equals(targetType) &&
-		m.targetRole.equals(targetRole))
-		return m;
-	}
-	return null;
+	return registry.getMessageRule(srcType, targetType, targetRole);
     }
 
 
+    /**
+       Saves the workspace network in the snapshot format.
+    **/
     void saveTree()
     {
 	try {
-	    File treeFile = new File(treeFileName);
-	    FileOutputStream treeFos = new FileOutputStream(treeFile);
-	    ObjectOutputStream treeOos = new ObjectOutputStream(treeFos);
-
-	    treeOos.writeObject(rootNode);
-
-	    treeOos.close();
-	    treeFos.close();
+	    WorkspaceSnapshot.write(rootNode, new File(treeFileName));
 	}
 	catch (Exception ex) {
 	    System.err.println("saveTree: " + ex.getMessage());
@@ -1016,6 +871,11 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
     }
 
 
+    /**
+       Reads the workspace network from a snapshot, or from a file
+       containing a serialized workspace tree, as saved by earlier
+       versions.
+    **/
     private void readTree()
     {
 	try {
@@ -1025,7 +885,12 @@ public class WorkspaceMap extends JFrame implements TreeGraphConstants
 		System.err.println("readTree: can't open tree data file " + treeFileName);
 		return;
 	    }
-	    
+
+	    if (WorkspaceSnapshot.isSnapshot(treeFile)) {
+		rootNode = WorkspaceSnapshot.read(treeFile);
+		return;
+	    }
+
 	    FileInputStream treeFis = new FileInputStream(treeFile);
 	    ObjectInputStream treeOis = new ObjectInputStream(treeFis);
 
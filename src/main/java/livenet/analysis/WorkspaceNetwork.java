@@ -0,0 +1,388 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+
+/**
+   An immutable, compressed view of a workspace tree and the links
+   between its workspaces, built once they have been loaded. Unlike
+   the vectors of the workspace nodes, which it leaves as they are,
+   it can be traversed without locking, casting or allocating.
+
+   The workspaces are numbered in depth-first order from the root,
+   children in order, so that the descendents of a workspace are
+   numbered right after it. The links are numbered in the order in
+   which they are first found that way. The links of each workspace
+   are kept in slots, grouped by link type and otherwise in the order
+   of the workspace's own list of links; like in that list, a link
+   of a workspace to itself takes up two slots.
+
+   The links kept in a WorkspaceHypergraph are not part of it.
+**/
+class WorkspaceNetwork
+{
+    // the number of link types
+    static final int TYPES = WorkspaceLink.PARTICIPANT + 1;
+
+    // the workspaces by number, and their numbers
+    private WorkspaceNode[] nodes;
+    private IdentityHashMap ids = new IdentityHashMap();
+
+    // the tree: the parent of each workspace (-1 for the root), the
+    // number after the last of its descendents, and its children,
+    // those of workspace n being at childStart[n] up to
+    // childStart[n + 1]
+    private int[] parent;
+    private int[] subtreeEnd;
+    private int[] childStart;
+    private int[] children;
+
+    // the links by number
+    private WorkspaceLink[] links;
+    private int[] linkFrom;
+    private int[] linkTo;
+    private int[] linkType;
+    private int[] linkWeight;
+
+    // the links by type: those of type t are typeLinks[typeStart[t]]
+    // up to typeLinks[typeStart[t + 1]], in order of their numbers
+    private int[] typeStart;
+    private int[] typeLinks;
+
+    // the link slots: those of type t of workspace n are at
+    // slotStart[n * TYPES + t] up to slotStart[n * TYPES + t + 1];
+    // each holds the link and the workspace at its other end
+    private int[] slotStart;
+    private int[] slotLink;
+    private int[] slotTarget;
+
+
+    WorkspaceNetwork(WorkspaceNode root)
+    {
+	// number the workspaces
+	int count = countNodes(root);
+	nodes = new WorkspaceNode[count];
+	parent = new int[count];
+	subtreeEnd = new int[count];
+	childStart = new int[count + 1];
+	children = new int[Math.max(count - 1, 0)];
+	addNodes(root);
+
+	int childCount = 0;
+	for (int n = 0; n < count; n++) {
+	    childStart[n] = childCount;
+	    childCount += nodes[n].getChildCount();
+	}
+	childStart[count] = childCount;
+	int[] next = new int[count];
+	for (int n = 1; n < count; n++)
+	    children[childStart[parent[n]] + next[parent[n]]++] = n;
+
+	// count the link slots of each workspace and type, and number
+	// the links
+	IdentityHashMap linkIds = new IdentityHashMap();
+	slotStart = new int[count * TYPES + 1];
+	for (int n = 0; n < count; n++)
+	    for (int i = 0; i < nodes[n].getWorkspaceLinkCount(); i++) {
+		WorkspaceLink link = nodes[n].getWorkspaceLink(i);
+		if (idOf(link.fromNode) < 0 || idOf(link.toNode) < 0)
+		    continue;
+		slotStart[n * TYPES + link.type + 1]++;
+		if (! linkIds.containsKey(link))
+		    linkIds.put(link, Integer.valueOf(linkIds.size()));
+	    }
+	for (int i = 1; i < slotStart.length; i++)
+	    slotStart[i] += slotStart[i - 1];
+
+	int linkCount = linkIds.size();
+	links = new WorkspaceLink[linkCount];
+	linkFrom = new int[linkCount];
+	linkTo = new int[linkCount];
+	linkType = new int[linkCount];
+	linkWeight = new int[linkCount];
+
+	// fill in the links and their slots
+	int slotCount = slotStart[count * TYPES];
+	slotLink = new int[slotCount];
+	slotTarget = new int[slotCount];
+	int[] fill = new int[count * TYPES];
+	for (int n = 0; n < count; n++)
+	    for (int i = 0; i < nodes[n].getWorkspaceLinkCount(); i++) {
+		WorkspaceLink link = nodes[n].getWorkspaceLink(i);
+		int from = idOf(link.fromNode);
+		int to = idOf(link.toNode);
+		if (from < 0 || to < 0)
+		    continue;
+		int l = ((Integer) linkIds.get(link)).intValue();
+		links[l] = link;
+		linkFrom[l] = from;
+		linkTo[l] = to;
+		linkType[l] = link.type;
+		linkWeight[l] = link.weight;
+
+		int slice = n * TYPES + link.type;
+		int slot = slotStart[slice] + fill[slice]++;
+		slotLink[slot] = l;
+		slotTarget[slot] = (from == n) ? to : from;
+	    }
+
+	// sort the links by type
+	typeStart = new int[TYPES + 1];
+	for (int l = 0; l < linkCount; l++)
+	    typeStart[linkType[l] + 1]++;
+	for (int t = 1; t <= TYPES; t++)
+	    typeStart[t] += typeStart[t - 1];
+	typeLinks = new int[linkCount];
+	int[] typeFill = new int[TYPES];
+	for (int l = 0; l < linkCount; l++)
+	    typeLinks[typeStart[linkType[l]] + typeFill[linkType[l]]++] = l;
+    }
+
+
+    private static int countNodes(WorkspaceNode root)
+    {
+	int count = 0;
+	Vector stack = new Vector();
+	stack.addElement(root);
+	while (stack.size() > 0) {
+	    WorkspaceNode node =
+		(WorkspaceNode) stack.remove(stack.size() - 1);
+	    count++;
+	    for (int i = 0; i < node.getChildCount(); i++)
+		stack.addElement(node.getChild(i));
+	}
+	return count;
+    }
+
+
+    /**
+       Numbers the given workspace and its descendents in depth-first
+       order, children in order.
+    **/
+    private void addNodes(WorkspaceNode root)
+    {
+	// workspaces still to be numbered, and the numbers of their
+	// parents; the children of a workspace are pushed last first,
+	// so that they are numbered in order
+	WorkspaceNode[] stack = new WorkspaceNode[nodes.length];
+	int[] stackParent = new int[nodes.length];
+	int top = 0;
+	stack[top] = root;
+	stackParent[top++] = -1;
+
+	int id = 0;
+	while (top > 0) {
+	    WorkspaceNode node = stack[--top];
+	    nodes[id] = node;
+	    ids.put(node, Integer.valueOf(id));
+	    parent[id] = stackParent[top];
+	    for (int i = node.getChildCount() - 1; i >= 0; i--) {
+		stack[top] = node.getChild(i);
+		stackParent[top++] = id;
+	    }
+	    id++;
+	}
+
+	// the descendents of a workspace are numbered after it, so
+	// going backwards each subtree ends where its last child's does
+	for (int n = nodes.length - 1; n >= 0; n--) {
+	    subtreeEnd[n] = Math.max(subtreeEnd[n], n + 1);
+	    if (parent[n] >= 0)
+		subtreeEnd[parent[n]] = Math.max(subtreeEnd[parent[n]],
+						 subtreeEnd[n]);
+	}
+    }
+
+
+    int getNodeCount()
+    {
+	return nodes.length;
+    }
+
+
+    WorkspaceNode getNode(int node)
+    {
+	return nodes[node];
+    }
+
+
+    /**
+       Returns the number of the given workspace, or -1 if it isn't
+       in this network.
+    **/
+    int idOf(WorkspaceNode node)
+    {
+	Integer id = (Integer) ids.get(node);
+	return (id == null) ? -1 : id.intValue();
+    }
+
+
+    int getParent(int node)
+    {
+	return parent[node];
+    }
+
+
+    int getChildCount(int node)
+    {
+	return childStart[node + 1] - childStart[node];
+    }
+
+
+    int getChild(int node, int i)
+    {
+	return children[childStart[node] + i];
+    }
+
+
+    /**
+       Returns the number after the last descendent of the given
+       workspace; its descendents are the workspaces numbered from
+       the one after it up to that number.
+    **/
+    int getSubtreeEnd(int node)
+    {
+	return subtreeEnd[node];
+    }
+
+
+    int getLinkCount()
+    {
+	return links.length;
+    }
+
+
+    WorkspaceLink getLink(int link)
+    {
+	return links[link];
+    }
+
+
+    int getLinkFrom(int link)
+    {
+	return linkFrom[link];
+    }
+
+
+    int getLinkTo(int link)
+    {
+	return linkTo[link];
+    }
+
+
+    int getLinkType(int link)
+    {
+	return linkType[link];
+    }
+
+
+    int getLinkWeight(int link)
+    {
+	return linkWeight[link];
+    }
+
+
+    /**
+       Returns the position of the first of the links of the given
+       type among the links by type.
+    **/
+    int getTypeStart(int type)
+    {
+	return typeStart[type];
+    }
+
+
+    /**
+       Returns the position after the last of the links of the given
+       type among the links by type.
+    **/
+    int getTypeEnd(int type)
+    {
+	return typeStart[type + 1];
+    }
+
+
+    /**
+       Returns the number of the link at the given position among the
+       links by type.
+    **/
+    int getTypeLink(int i)
+    {
+	return typeLinks[i];
+    }
+
+
+    /**
+       Returns the first slot of the links of the given workspace.
+    **/
+    int getSlotStart(int node)
+    {
+	return slotStart[node * TYPES];
+    }
+
+
+    /**
+       Returns the slot after the last of the links of the given
+       workspace.
+    **/
+    int getSlotEnd(int node)
+    {
+	return slotStart[node * TYPES + TYPES];
+    }
+
+
+    /**
+       Returns the first slot of the links of the given type of the
+       given workspace.
+    **/
+    int getSlotStart(int node, int type)
+    {
+	return slotStart[node * TYPES + type];
+    }
+
+
+    /**
+       Returns the slot after the last of the links of the given type
+       of the given workspace.
+    **/
+    int getSlotEnd(int node, int type)
+    {
+	return slotStart[node * TYPES + type + 1];
+    }
+
+
+    /**
+       Returns the number of the link in the given slot.
+    **/
+    int getSlotLink(int slot)
+    {
+	return slotLink[slot];
+    }
+
+
+    /**
+       Returns the number of the workspace at the other end of the
+       link in the given slot.
+    **/
+    int getSlotTarget(int slot)
+    {
+	return slotTarget[slot];
+    }
+}
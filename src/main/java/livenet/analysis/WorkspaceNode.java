@@ -23,6 +23,9 @@ import java.util.Vector;
 
 public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 {
+    // keeps serialized workspace trees saved by earlier versions readable
+    private static final long serialVersionUID = 3634444483309210857L;
+
     // stuff that may get passed into the constructor
     private String workspace;
     private String owner;
@@ -45,11 +48,22 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     private Vector receivedMessages = new Vector();
     private Vector workspaceLinks = new Vector();
 
+    // reads the sent and received messages from a snapshot on first
+    // access
+    private transient SnapshotLoader messageLoader;
+    private transient int snapshotId;
+    private transient int sentMessageCount;
+    private transient int receivedMessageCount;
+
     // the names which are used on the workspace node's visual representation
     String shortName;
     String fullName;
     String displayName;
 
+    // width of the node's box as sized for the display name (0 if it
+    // has to be measured again)
+    transient int boxWidth;
+
     // indicates a special node
     boolean specialNode = false;
 
@@ -63,6 +77,15 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     private int minRoleDensity = Integer.MAX_VALUE;
     private float meanRoleDensity = (float) 0.0;
 
+    // The role densities are kept up to date as roles and assigned
+    // objects are added, along with the total of the role densities
+    // and the number of roles at the minimum. Once the last role at
+    // the minimum has grown, or the node has been deserialized, they
+    // have to be recalculated from the roles.
+    private transient int totalRoleDensity = 0;
+    private transient int minRoleDensityCount = 0;
+    private transient boolean roleDensitiesValid = true;
+
     // Evolution intensity measures the number of workspace elements added to
     // a workspace starting from the moment the workspace was created until
     // the present time, per year. Workspace elements counting toward
@@ -92,6 +115,11 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     // recency in proportion to their age, as with evolution recency.
     private float messageRecency = (float) 0.0;
 
+    // The evolution index holds the times of the workspace's elements,
+    // for measuring its evolution over any period. It is built when
+    // first asked for, and dropped whenever an element is added.
+    private transient EvolutionIndex evolutionIndex;
+
     // coordinates of the node's centre
     double x;
     double y;
@@ -102,10 +130,6 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     int x2;
     int y2;
 
-    // deltas for adjusting the node's position
-    double dx;
-    double dy;
-
     // is the node's position fixed?
     boolean fixed = false;
 
@@ -140,7 +164,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 	this.creationDateTime = datetime;
 	this.goal = goal;
 	this.workgroup = workgroup;
-	int workspaceDays = datetime.getDaysDiff(new DateTime());
+	int workspaceDays = datetime.getDaysDiff(DateTime.getLoadTime());
 	this.evolutionWeeks = (float) (workspaceDays / 7.0);
     }
 
@@ -156,6 +180,58 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     }
 
 
+    /**
+       Restores the attributes of a node read from a snapshot. Unlike
+       the constructor, doesn't recalculate the node's age.
+    **/
+    void restore(DateTime creationDateTime, String goal, String workgroup)
+    {
+	this.creationDateTime = creationDateTime;
+	this.goal = goal;
+	this.workgroup = workgroup;
+    }
+
+
+    /**
+       Restores the measures of a node read from a snapshot, as they
+       were when the snapshot was saved.
+    **/
+    void restoreMeasures(int absDensity, int evolutionObjects,
+			 float evolutionWeeks, float evolutionRecency,
+			 float messageRecency)
+    {
+	this.absDensity = absDensity;
+	this.evolutionObjects = evolutionObjects;
+	this.evolutionWeeks = evolutionWeeks;
+	this.evolutionRecency = evolutionRecency;
+	this.messageRecency = messageRecency;
+    }
+
+
+    /**
+       Defers reading the node's messages from a snapshot until they
+       are first accessed.
+    **/
+    void deferMessages(SnapshotLoader loader, int snapshotId,
+		       int sentMessageCount, int receivedMessageCount)
+    {
+	this.messageLoader = loader;
+	this.snapshotId = snapshotId;
+	this.sentMessageCount = sentMessageCount;
+	this.receivedMessageCount = receivedMessageCount;
+    }
+
+
+    private synchronized void loadMessages()
+    {
+	if (messageLoader != null) {
+	    messageLoader.loadMessages(snapshotId, sentMessages,
+				       receivedMessages);
+	    messageLoader = null;
+	}
+    }
+
+
     public void setParent(WorkspaceNode parent)
     {
 	this.parent = parent;
@@ -364,16 +440,36 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 
     public Vector getSentMessages()
     {
+	if (messageLoader != null)
+	    loadMessages();
 	return sentMessages;
     }
 
 
     public Vector getReceivedMessages()
     {
+	if (messageLoader != null)
+	    loadMessages();
 	return receivedMessages;
     }
 
 
+    public int getSentMessageCount()
+    {
+	if (messageLoader != null)
+	    return sentMessageCount;
+	return sentMessages.size();
+    }
+
+
+    public int getReceivedMessageCount()
+    {
+	if (messageLoader != null)
+	    return receivedMessageCount;
+	return receivedMessages.size();
+    }
+
+
     String createShortName(String workspace, String owner)
     {
 	if (workspace.length() > 10)
@@ -495,12 +591,14 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     public void setShortDisplayName()
     {
 	this.displayName = this.shortName;
+	this.boxWidth = 0;
     }
 
 
     public void setLongDisplayName()
     {
 	this.displayName = this.fullName;
+	this.boxWidth = 0;
     }
 
 
@@ -512,17 +610,51 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 
     public void recalculateRoleDensities()
     {
-	int totalDensities = 0;
-	for (int i = 0; i < roles.size(); i++) {
-	    int thisDensity =
-		((Role) roles.elementAt(i)).assignedObjects.size();
-	    if (thisDensity > maxRoleDensity)
-		maxRoleDensity = thisDensity;
-	    if (thisDensity < minRoleDensity)
-		minRoleDensity = thisDensity;
-	    totalDensities += thisDensity;
+	maxRoleDensity = Integer.MIN_VALUE;
+	minRoleDensity = Integer.MAX_VALUE;
+	minRoleDensityCount = 0;
+	totalRoleDensity = 0;
+	for (int i = 0; i < roles.size(); i++)
+	    addRoleDensity(((Role) roles.elementAt(i)).getAssignedObjectCount());
+	meanRoleDensity = (float) totalRoleDensity / (float) roles.size();
+	roleDensitiesValid = true;
+    }
+
+
+    /**
+       Takes a role with the given number of assigned objects into
+       account in the role densities.
+    **/
+    private void addRoleDensity(int density)
+    {
+	totalRoleDensity += density;
+	if (density > maxRoleDensity)
+	    maxRoleDensity = density;
+	if (density < minRoleDensity) {
+	    minRoleDensity = density;
+	    minRoleDensityCount = 1;
 	}
-	meanRoleDensity = (float) totalDensities / (float) roles.size();
+	else if (density == minRoleDensity)
+	    minRoleDensityCount++;
+    }
+
+
+    /**
+       Takes into account that an object has been assigned to one of
+       the node's roles, which now has the given number of assigned
+       objects.
+    **/
+    void roleDensityIncreased(int density)
+    {
+	if (! roleDensitiesValid)
+	    return;
+	totalRoleDensity++;
+	if (density > maxRoleDensity)
+	    maxRoleDensity = density;
+	// if the role was the last one at the minimum, the new minimum
+	// has to be looked for among the roles
+	if (density - 1 == minRoleDensity && --minRoleDensityCount == 0)
+	    roleDensitiesValid = false;
     }
 
 
@@ -534,25 +666,41 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 
     public int getMinRoleDensity()
     {
-	recalculateRoleDensities();
+	if (! roleDensitiesValid)
+	    recalculateRoleDensities();
 	return minRoleDensity;
     }
 
 
     public int getMaxRoleDensity()
     {
-	recalculateRoleDensities();
+	if (! roleDensitiesValid)
+	    recalculateRoleDensities();
 	return maxRoleDensity;
     }
 
 
     public float getMeanRoleDensity()
     {
-	recalculateRoleDensities();
+	if (! roleDensitiesValid)
+	    recalculateRoleDensities();
+	meanRoleDensity = (float) totalRoleDensity / (float) roles.size();
 	return meanRoleDensity;
     }
 
 
+    public int getEvolutionObjects()
+    {
+	return evolutionObjects;
+    }
+
+
+    public float getEvolutionWeeks()
+    {
+	return evolutionWeeks;
+    }
+
+
     public float getEvolutionIntensity()
     {
 	float evolutionIntensity = (float) 0.0;
@@ -571,7 +719,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 
     private void addToEvolutionRecency(DateTime datetime)
     {
-	int age = datetime.getDaysDiff(new DateTime());
+	int age = datetime.getDaysDiff(DateTime.getLoadTime());
 	if (age < recencyInterval)
 	    evolutionRecency +=
 		(float) (1 - (Math.log(age + 1) / Math.log(recencyInterval)));
@@ -583,7 +731,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 	float messageIntensity = (float) 0.0;
 	if (evolutionWeeks > 0.0)
 	    messageIntensity =
-		(float) (sentMessages.size() + receivedMessages.size()) /
+		(float) (getSentMessageCount() + getReceivedMessageCount()) /
 		(float) evolutionWeeks;
 	return messageIntensity;
     }
@@ -595,9 +743,27 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     }
 
 
+    int getRecencyInterval()
+    {
+	return recencyInterval;
+    }
+
+
+    /**
+       Returns the time index of the node's elements, with their ages
+       taken relative to the time of the latest load.
+    **/
+    EvolutionIndex getEvolutionIndex()
+    {
+	if (evolutionIndex == null)
+	    evolutionIndex = new EvolutionIndex(this, DateTime.getLoadTime());
+	return evolutionIndex;
+    }
+
+
     private void addToMessageRecency(DateTime datetime)
     {
-	int age = datetime.getDaysDiff(new DateTime());
+	int age = datetime.getDaysDiff(DateTime.getLoadTime());
 	if (age < recencyInterval)
 	    messageRecency +=
 		(float) (1 - (Math.log(age + 1) / Math.log(recencyInterval)));
@@ -607,6 +773,9 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     public void addRole(Role r)
     {
 	roles.addElement(r);
+	evolutionIndex = null;
+	if (roleDensitiesValid)
+	    addRoleDensity(r.getAssignedObjectCount());
 	evolutionObjects++;
 	addToEvolutionRecency(r.creationDateTime);
     }
@@ -615,6 +784,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     public void addParticipant(Participant p)
     {
 	participants.addElement(p);
+	evolutionIndex = null;
 	evolutionObjects++;
 	addToEvolutionRecency(p.creationDateTime);
     }
@@ -623,6 +793,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     public void addDocument(Document d)
     {
 	documents.addElement(d);
+	evolutionIndex = null;
 	absDensity++;
 	evolutionObjects++;
 	addToEvolutionRecency(d.creationDateTime);
@@ -632,6 +803,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     public void addDiscussion(Discussion d)
     {
 	discussions.addElement(d);
+	evolutionIndex = null;
 	absDensity++;
 	evolutionObjects++;
 	addToEvolutionRecency(d.creationDateTime);
@@ -641,6 +813,7 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
     public void addAction(Action a)
     {
 	actions.addElement(a);
+	evolutionIndex = null;
 	absDensity++;
 	evolutionObjects++;
 	addToEvolutionRecency(a.creationDateTime);
@@ -671,14 +844,16 @@ public class WorkspaceNode implements TreeGraphConstants, java.io.Serializable
 
     public void addSentMessage(Message m)
     {
-	sentMessages.addElement(m);
+	getSentMessages().addElement(m);
+	evolutionIndex = null;
 	addToMessageRecency(m.sentDateTime);
     }
 
 
     public void addReceivedMessage(Message m)
     {
-	receivedMessages.addElement(m);
+	getReceivedMessages().addElement(m);
+	evolutionIndex = null;
 	addToMessageRecency(m.sentDateTime);
     }
 }
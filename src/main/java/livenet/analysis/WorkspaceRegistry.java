@@ -0,0 +1,207 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.util.HashMap;
+
+
+/**
+   Hash-indexed registry of the entities loaded for a workgroup. Each
+   entity is registered under a normalized composite key made up of
+   its owning entity and its (possibly case-folded) name, so that
+   the rows of the database queries can be resolved to their parent
+   entities in constant time.
+
+   As with the linear searches this registry replaces, the first
+   entity registered under a given key wins; later duplicates are
+   ignored.
+**/
+class WorkspaceRegistry
+{
+    // workspace name + owner name (both case-insensitive)
+    private HashMap workspaces = new HashMap();
+
+    // workspace node + role name (case-insensitive)
+    private HashMap roles = new HashMap();
+
+    // workspace node + object name, one map per object type
+    private HashMap documents = new HashMap();
+    private HashMap discussions = new HashMap();
+    private HashMap actions = new HashMap();
+
+    // workspace node + message type name
+    private HashMap messageTypes = new HashMap();
+
+    // source message type + target message type + target role
+    private HashMap messageRules = new HashMap();
+
+
+    public void addWorkspace(WorkspaceNode ws)
+    {
+	if (ws.isSpecial())
+	    return;
+	Key key = new Key(normalize(ws.getWorkspace()),
+			  normalize(ws.getOwner()), null);
+	if (! workspaces.containsKey(key))
+	    workspaces.put(key, ws);
+    }
+
+
+    public WorkspaceNode getWorkspace(String workspace, String owner)
+    {
+	return (WorkspaceNode)
+	    workspaces.get(new Key(normalize(workspace), normalize(owner),
+				   null));
+    }
+
+
+    public void addRole(Role r)
+    {
+	Key key = new Key(r.workspace, normalize(r.name), null);
+	if (! roles.containsKey(key))
+	    roles.put(key, r);
+    }
+
+
+    public Role getRole(WorkspaceNode workspace, String role)
+    {
+	return (Role) roles.get(new Key(workspace, normalize(role), null));
+    }
+
+
+    public void addWorkspaceObject(WorkspaceObject o)
+    {
+	HashMap objects = null;
+	if (o instanceof Document)
+	    objects = documents;
+	else if (o instanceof Discussion)
+	    objects = discussions;
+	else if (o instanceof Action)
+	    objects = actions;
+	else
+	    return;
+
+	Key key = new Key(o.workspace, o.name, null);
+	if (! objects.containsKey(key))
+	    objects.put(key, o);
+    }
+
+
+    /**
+       Returns the workspace object of the given name in the given
+       workspace. Documents take precedence over discussions, which
+       in turn take precedence over actions of the same name.
+    **/
+    public WorkspaceObject getWorkspaceObject(WorkspaceNode workspace,
+					      String name)
+    {
+	Key key = new Key(workspace, name, null);
+	WorkspaceObject o = (WorkspaceObject) documents.get(key);
+	if (o == null)
+	    o = (WorkspaceObject) discussions.get(key);
+	if (o == null)
+	    o = (WorkspaceObject) actions.get(key);
+	return o;
+    }
+
+
+    public void addMessageType(MessageType m)
+    {
+	Key key = new Key(m.workspace, m.type, null);
+	if (! messageTypes.containsKey(key))
+	    messageTypes.put(key, m);
+    }
+
+
+    public MessageType getMessageType(WorkspaceNode workspace, String type)
+    {
+	return (MessageType) messageTypes.get(new Key(workspace, type, null));
+    }
+
+
+    public void addMessageRule(MessageRule m)
+    {
+	Key key = new Key(m.srcType, m.targetType, m.targetRole);
+	if (! messageRules.containsKey(key))
+	    messageRules.put(key, m);
+    }
+
+
+    public MessageRule getMessageRule(MessageType srcType,
+				      MessageType targetType, Role targetRole)
+    {
+	return (MessageRule)
+	    messageRules.get(new Key(srcType, targetType, targetRole));
+    }
+
+
+    private static String normalize(String name)
+    {
+	return (name == null) ? null : name.toLowerCase();
+    }
+
+
+    /**
+       A composite key of up to three parts. Entities such as
+       workspace nodes and roles don't override equals(), so they are
+       compared by identity, whereas names are compared by value.
+    **/
+    private static class Key
+    {
+	private Object first;
+	private Object second;
+	private Object third;
+	private int hash;
+
+
+	Key(Object first, Object second, Object third)
+	{
+	    this.first = first;
+	    this.second = second;
+	    this.third = third;
+	    hash = 31 * (31 * hashOf(first) + hashOf(second)) + hashOf(third);
+	}
+
+
+	public int hashCode()
+	{
+	    return hash;
+	}
+
+
+	public boolean equals(Object o)
+	{
+	    if (! (o instanceof Key))
+		return false;
+	    Key k = (Key) o;
+	    return hash == k.hash && same(first, k.first) &&
+		same(second, k.second) && same(third, k.third);
+	}
+
+
+	private static int hashOf(Object o)
+	{
+	    return (o == null) ? 0 : o.hashCode();
+	}
+
+
+	private static boolean same(Object a, Object b)
+	{
+	    return (a == null) ? (b == null) : a.equals(b);
+	}
+    }
+}
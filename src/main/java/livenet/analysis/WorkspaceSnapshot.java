@@ -0,0 +1,1258 @@
+package livenet.analysis;
+
+/*
+ * Copyright (c) 2000-2018 Robert Biuk-Aghai
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You
+ * may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+
+/**
+   Reads and writes workspace networks in a compact, versioned binary
+   snapshot format, as an alternative to Java serialization of the
+   root node.
+
+   A snapshot starts with a header holding a magic number, the format
+   version and a directory of sections. Each section is located by
+   its offset and length in the file. All strings are stored once, in
+   a string table, and are referred to by their index. Each kind of
+   entity (workspace nodes, roles, participants, objects, message
+   types, message rules, messages and workspace links) is stored in
+   a section of its own, with one column per attribute; entities
+   refer to each other by their int id, i.e. their index within
+   their section. Timestamps are stored as seconds since the epoch.
+   The contents of the entities' vectors (a node's children, roles,
+   documents, etc.) are stored in link tables, each of which is a
+   list of ids per entity.
+
+   Both writing and reading are iterative, so arbitrarily deep
+   workspace trees can be stored.
+
+   Snapshots are read through a memory mapping of the file. The
+   structure of the network is built eagerly, but messages, the
+   objects assigned to roles and the link objects of workspace links
+   are only read from the mapping when they are first accessed.
+**/
+class WorkspaceSnapshot
+{
+    static final int MAGIC = 0x4C4E5753;  // "LNWS"
+    static final int VERSION = 1;
+
+    // entity sections
+    static final int STRINGS = 1;
+    static final int NODES = 2;
+    static final int ROLES = 3;
+    static final int PARTICIPANTS = 4;
+    static final int OBJECTS = 5;
+    static final int MESSAGE_TYPES = 6;
+    static final int MESSAGE_RULES = 7;
+    static final int MESSAGES = 8;
+    static final int LINKS = 9;
+
+    // link table sections
+    static final int NODE_CHILDREN = 10;
+    static final int NODE_ROLES = 11;
+    static final int NODE_PARTICIPANTS = 12;
+    static final int NODE_DOCUMENTS = 13;
+    static final int NODE_DISCUSSIONS = 14;
+    static final int NODE_ACTIONS = 15;
+    static final int NODE_MESSAGE_TYPES = 16;
+    static final int NODE_SRC_MESSAGE_RULES = 17;
+    static final int NODE_TARGET_MESSAGE_RULES = 18;
+    static final int NODE_SENT_MESSAGES = 19;
+    static final int NODE_RECEIVED_MESSAGES = 20;
+    static final int NODE_LINKS = 21;
+    static final int ROLE_PARTICIPANTS = 22;
+    static final int ROLE_OBJECTS = 23;
+    static final int OBJECT_ROLES = 24;
+    static final int LINK_OBJECTS = 25;
+
+    static final int MAX_SECTION = 25;
+
+    // node flags
+    private static final int SPECIAL = 1;
+    private static final int FIXED = 2;
+    private static final int VISIBLE = 4;
+    private static final int FOCUS = 8;
+    private static final int LONG_NAME = 16;
+
+    // stands for a null timestamp
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+
+    /**
+       Returns whether the given file starts with the snapshot magic
+       number.
+    **/
+    static boolean isSnapshot(File file)
+    {
+	try {
+	    DataInputStream in =
+		new DataInputStream(new FileInputStream(file));
+	    try {
+		return in.readInt() == MAGIC;
+	    }
+	    finally {
+		in.close();
+	    }
+	}
+	catch (IOException ex) {
+	    return false;
+	}
+    }
+
+
+    static void write(WorkspaceNode root, File file) throws IOException
+    {
+	new Writer().write(root, file);
+    }
+
+
+    static WorkspaceNode read(File file) throws IOException
+    {
+	FileInputStream in = new FileInputStream(file);
+	try {
+	    FileChannel channel = in.getChannel();
+	    // the mapping stays valid after the channel is closed
+	    MappedByteBuffer buf =
+		channel.map(FileChannel.MapMode.READ_ONLY, 0,
+			    channel.size());
+	    return new Reader(buf).read();
+	}
+	finally {
+	    in.close();
+	}
+    }
+
+
+    private static Vector nodeList(WorkspaceNode node, int section)
+    {
+	switch (section) {
+	case NODE_CHILDREN:
+	    return node.getChildren();
+	case NODE_ROLES:
+	    return node.getRoles();
+	case NODE_PARTICIPANTS:
+	    return node.getParticipants();
+	case NODE_DOCUMENTS:
+	    return node.getDocuments();
+	case NODE_DISCUSSIONS:
+	    return node.getDiscussions();
+	case NODE_ACTIONS:
+	    return node.getActions();
+	case NODE_MESSAGE_TYPES:
+	    return node.getMessageTypes();
+	case NODE_SRC_MESSAGE_RULES:
+	    return node.getSrcMessageRules();
+	case NODE_TARGET_MESSAGE_RULES:
+	    return node.getTargetMessageRules();
+	case NODE_SENT_MESSAGES:
+	    return node.getSentMessages();
+	case NODE_RECEIVED_MESSAGES:
+	    return node.getReceivedMessages();
+	case NODE_LINKS:
+	    return node.getWorkspaceLinks();
+	}
+	return null;
+    }
+
+
+    private static long toSeconds(DateTime datetime)
+    {
+	return (datetime == null) ? NO_TIME : datetime.getSeconds();
+    }
+
+
+    private static DateTime toDateTime(long seconds)
+    {
+	return (seconds == NO_TIME) ? null : new DateTime(seconds);
+    }
+
+
+    /**
+       Assigns ids to all entities reachable from the root node, then
+       writes them out section by section.
+    **/
+    private static class Writer
+    {
+	private Vector nodes = new Vector();
+	private Vector roles = new Vector();
+	private Vector participants = new Vector();
+	private Vector objects = new Vector();
+	private Vector messageTypes = new Vector();
+	private Vector messageRules = new Vector();
+	private Vector messages = new Vector();
+	private Vector links = new Vector();
+
+	// entity -> id within its section
+	private IdentityHashMap ids = new IdentityHashMap();
+
+	// entities whose references are still to be followed
+	private Vector pending = new Vector();
+
+	// string -> index within the string table
+	private HashMap stringIds = new HashMap();
+	private Vector strings = new Vector();
+
+	private byte[][] sections = new byte[MAX_SECTION + 1][];
+
+
+	void write(WorkspaceNode root, File file) throws IOException
+	{
+	    // following all references loads whatever hasn't been read
+	    // from a snapshot yet, before the file is overwritten
+	    id(root);
+	    for (int i = 0; i < pending.size(); i++)
+		follow(pending.elementAt(i));
+	    pending = null;
+
+	    writeNodes();
+	    writeRoles();
+	    writeParticipants();
+	    writeObjects();
+	    writeMessageTypes();
+	    writeMessageRules();
+	    writeMessages();
+	    writeLinks();
+	    for (int s = NODE_CHILDREN; s <= NODE_LINKS; s++) {
+		Vector[] lists = new Vector[nodes.size()];
+		for (int i = 0; i < lists.length; i++)
+		    lists[i] = nodeList((WorkspaceNode) nodes.elementAt(i), s);
+		writeLists(s, lists);
+	    }
+	    writeRoleLists();
+	    writeObjectRoles();
+	    writeLinkObjects();
+	    writeStrings();
+
+	    int count = 0;
+	    for (int s = 1; s <= MAX_SECTION; s++)
+		if (sections[s] != null)
+		    count++;
+
+	    ByteBuffer header = ByteBuffer.allocate(12 + count * 20);
+	    header.putInt(MAGIC);
+	    header.putInt(VERSION);
+	    header.putInt(count);
+	    long offset = header.capacity();
+	    for (int s = 1; s <= MAX_SECTION; s++) {
+		if (sections[s] == null)
+		    continue;
+		header.putInt(s);
+		header.putLong(offset);
+		header.putLong(sections[s].length);
+		offset += sections[s].length;
+	    }
+	    header.flip();
+
+	    // The snapshot is written to a new file that then replaces the
+	    // old one, since the file being replaced may still be mapped
+	    // by a snapshot read earlier; truncating it would pull the
+	    // data away from under the entities still to load from it.
+	    File dir = file.getAbsoluteFile().getParentFile();
+	    File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+	    FileOutputStream out = new FileOutputStream(tmp);
+	    boolean written = false;
+	    try {
+		FileChannel channel = out.getChannel();
+		while (header.hasRemaining())
+		    channel.write(header);
+		for (int s = 1; s <= MAX_SECTION; s++) {
+		    if (sections[s] == null)
+			continue;
+		    ByteBuffer buf = ByteBuffer.wrap(sections[s]);
+		    while (buf.hasRemaining())
+			channel.write(buf);
+		}
+		out.close();
+		Files.move(tmp.toPath(), file.toPath(),
+			   StandardCopyOption.REPLACE_EXISTING);
+		written = true;
+	    }
+	    finally {
+		out.close();
+		if (! written)
+		    tmp.delete();
+	    }
+	}
+
+
+	/**
+	   Returns the id of the given entity, assigning it one if it
+	   hasn't got one yet. Returns -1 for null.
+	**/
+	private int id(Object o)
+	{
+	    if (o == null)
+		return -1;
+	    Integer id = (Integer) ids.get(o);
+	    if (id != null)
+		return id.intValue();
+
+	    Vector entities;
+	    if (o instanceof WorkspaceNode)
+		entities = nodes;
+	    else if (o instanceof Role)
+		entities = roles;
+	    else if (o instanceof Participant)
+		entities = participants;
+	    else if (o instanceof WorkspaceObject)
+		entities = objects;
+	    else if (o instanceof MessageType)
+		entities = messageTypes;
+	    else if (o instanceof MessageRule)
+		entities = messageRules;
+	    else if (o instanceof Message)
+		entities = messages;
+	    else if (o instanceof WorkspaceLink)
+		entities = links;
+	    else
+		throw new IllegalArgumentException("can't store " +
+						   o.getClass().getName());
+
+	    ids.put(o, Integer.valueOf(entities.size()));
+	    entities.addElement(o);
+	    pending.addElement(o);
+	    return entities.size() - 1;
+	}
+
+
+	private void idAll(Vector v)
+	{
+	    for (int i = 0; i < v.size(); i++)
+		id(v.elementAt(i));
+	}
+
+
+	private void follow(Object o)
+	{
+	    if (o instanceof WorkspaceNode) {
+		WorkspaceNode n = (WorkspaceNode) o;
+		id(n.getParent());
+		for (int s = NODE_CHILDREN; s <= NODE_LINKS; s++)
+		    idAll(nodeList(n, s));
+	    } else if (o instanceof Role) {
+		Role r = (Role) o;
+		id(r.workspace);
+		idAll(r.participants);
+		idAll(r.getAssignedObjects());
+	    } else if (o instanceof Participant) {
+		Participant p = (Participant) o;
+		id(p.workspace);
+		id(p.role);
+	    } else if (o instanceof WorkspaceObject) {
+		WorkspaceObject wo = (WorkspaceObject) o;
+		id(wo.workspace);
+		idAll(wo.assignedRoles);
+	    } else if (o instanceof MessageType) {
+		id(((MessageType) o).workspace);
+	    } else if (o instanceof MessageRule) {
+		MessageRule mr = (MessageRule) o;
+		id(mr.srcWorkspace);
+		id(mr.srcType);
+		id(mr.targetWorkspace);
+		id(mr.targetType);
+		id(mr.targetRole);
+	    } else if (o instanceof Message) {
+		Message m = (Message) o;
+		id(m.srcWorkspace);
+		id(m.srcType);
+		id(m.targetWorkspace);
+		id(m.targetType);
+		id(m.targetRole);
+	    } else if (o instanceof WorkspaceLink) {
+		WorkspaceLink l = (WorkspaceLink) o;
+		id(l.fromNode);
+		id(l.toNode);
+		if (l.type == WorkspaceLink.MESSAGERULE)
+		    idAll(l.getLinkObjects());
+	    }
+	}
+
+
+	private int string(String s)
+	{
+	    if (s == null)
+		return -1;
+	    Integer id = (Integer) stringIds.get(s);
+	    if (id == null) {
+		id = Integer.valueOf(strings.size());
+		stringIds.put(s, id);
+		strings.addElement(s);
+	    }
+	    return id.intValue();
+	}
+
+
+	private void writeNodes() throws IOException
+	{
+	    int n = nodes.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(node(i).getWorkspace()));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(node(i).getOwner()));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(node(i).isSpecial() ?
+				    node(i).fullName : null));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(node(i).getGoal()));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(node(i).getWorkgroup()));
+	    for (int i = 0; i < n; i++)
+		out.writeLong(toSeconds(node(i).getCreationDateTime()));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(node(i).getParent()));
+	    for (int i = 0; i < n; i++) {
+		WorkspaceNode node = node(i);
+		int flags = 0;
+		if (node.isSpecial())
+		    flags |= SPECIAL;
+		if (node.fixed)
+		    flags |= FIXED;
+		if (node.visible)
+		    flags |= VISIBLE;
+		if (node.focus)
+		    flags |= FOCUS;
+		if (node.displayName != null &&
+		    node.displayName.equals(node.fullName) &&
+		    ! node.fullName.equals(node.shortName))
+		    flags |= LONG_NAME;
+		out.writeByte(flags);
+	    }
+	    for (int i = 0; i < n; i++)
+		out.writeDouble(node(i).x);
+	    for (int i = 0; i < n; i++)
+		out.writeDouble(node(i).y);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(node(i).getAbsDensity());
+	    for (int i = 0; i < n; i++)
+		out.writeInt(node(i).getEvolutionObjects());
+	    for (int i = 0; i < n; i++)
+		out.writeFloat(node(i).getEvolutionWeeks());
+	    for (int i = 0; i < n; i++)
+		out.writeFloat(node(i).getEvolutionRecency());
+	    for (int i = 0; i < n; i++)
+		out.writeFloat(node(i).getMessageRecency());
+	    out.close();
+	    sections[NODES] = bytes.toByteArray();
+	}
+
+
+	private WorkspaceNode node(int i)
+	{
+	    return (WorkspaceNode) nodes.elementAt(i);
+	}
+
+
+	private void writeRoles() throws IOException
+	{
+	    int n = roles.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(((Role) roles.elementAt(i)).workspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(((Role) roles.elementAt(i)).name));
+	    for (int i = 0; i < n; i++)
+		out.writeLong(toSeconds(((Role) roles.elementAt(i)).
+					creationDateTime));
+	    out.close();
+	    sections[ROLES] = bytes.toByteArray();
+	}
+
+
+	private void writeParticipants() throws IOException
+	{
+	    int n = participants.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(participant(i).workspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(participant(i).name));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(participant(i).role));
+	    for (int i = 0; i < n; i++)
+		out.writeLong(toSeconds(participant(i).creationDateTime));
+	    out.close();
+	    sections[PARTICIPANTS] = bytes.toByteArray();
+	}
+
+
+	private Participant participant(int i)
+	{
+	    return (Participant) participants.elementAt(i);
+	}
+
+
+	private void writeObjects() throws IOException
+	{
+	    int n = objects.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++) {
+		WorkspaceObject o = object(i);
+		if (o instanceof Document)
+		    out.writeByte(WorkspaceElement.DOCUMENT);
+		else if (o instanceof Discussion)
+		    out.writeByte(WorkspaceElement.DISCUSSION);
+		else
+		    out.writeByte(WorkspaceElement.ACTION);
+	    }
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(object(i).workspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(object(i).folder));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(object(i).name));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(object(i).url));
+	    for (int i = 0; i < n; i++)
+		out.writeLong(toSeconds(object(i).creationDateTime));
+	    out.close();
+	    sections[OBJECTS] = bytes.toByteArray();
+	}
+
+
+	private WorkspaceObject object(int i)
+	{
+	    return (WorkspaceObject) objects.elementAt(i);
+	}
+
+
+	private void writeMessageTypes() throws IOException
+	{
+	    int n = messageTypes.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(((MessageType) messageTypes.elementAt(i)).
+				workspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(((MessageType) messageTypes.
+				     elementAt(i)).type));
+	    out.close();
+	    sections[MESSAGE_TYPES] = bytes.toByteArray();
+	}
+
+
+	private void writeMessageRules() throws IOException
+	{
+	    int n = messageRules.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(messageRule(i).srcWorkspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(messageRule(i).srcType));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(messageRule(i).targetWorkspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(messageRule(i).targetType));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(messageRule(i).targetRole));
+	    out.close();
+	    sections[MESSAGE_RULES] = bytes.toByteArray();
+	}
+
+
+	private MessageRule messageRule(int i)
+	{
+	    return (MessageRule) messageRules.elementAt(i);
+	}
+
+
+	private void writeMessages() throws IOException
+	{
+	    int n = messages.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(message(i).subject));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(string(message(i).sender));
+	    for (int i = 0; i < n; i++)
+		out.writeLong(toSeconds(message(i).sentDateTime));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(message(i).srcWorkspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(message(i).srcType));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(message(i).targetWorkspace));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(message(i).targetType));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(message(i).targetRole));
+	    out.close();
+	    sections[MESSAGES] = bytes.toByteArray();
+	}
+
+
+	private Message message(int i)
+	{
+	    return (Message) messages.elementAt(i);
+	}
+
+
+	private void writeLinks() throws IOException
+	{
+	    int n = links.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(link(i).fromNode));
+	    for (int i = 0; i < n; i++)
+		out.writeInt(id(link(i).toNode));
+	    for (int i = 0; i < n; i++)
+		out.writeByte(link(i).type);
+	    for (int i = 0; i < n; i++)
+		out.writeByte(link(i).arrowMode);
+	    for (int i = 0; i < n; i++)
+		out.writeInt(link(i).weight);
+	    for (int i = 0; i < n; i++)
+		out.writeByte(link(i).visible ? 1 : 0);
+	    for (int i = 0; i < n; i++)
+		out.writeDouble(link(i).length);
+	    out.close();
+	    sections[LINKS] = bytes.toByteArray();
+	}
+
+
+	private WorkspaceLink link(int i)
+	{
+	    return (WorkspaceLink) links.elementAt(i);
+	}
+
+
+	private void writeRoleLists() throws IOException
+	{
+	    Vector[] roleParticipants = new Vector[roles.size()];
+	    Vector[] roleObjects = new Vector[roles.size()];
+	    for (int i = 0; i < roles.size(); i++) {
+		Role r = (Role) roles.elementAt(i);
+		roleParticipants[i] = r.participants;
+		roleObjects[i] = r.getAssignedObjects();
+	    }
+	    writeLists(ROLE_PARTICIPANTS, roleParticipants);
+	    writeLists(ROLE_OBJECTS, roleObjects);
+	}
+
+
+	private void writeObjectRoles() throws IOException
+	{
+	    Vector[] objectRoles = new Vector[objects.size()];
+	    for (int i = 0; i < objects.size(); i++)
+		objectRoles[i] = object(i).assignedRoles;
+	    writeLists(OBJECT_ROLES, objectRoles);
+	}
+
+
+	/**
+	   Writes the link objects of all links. Message rule links
+	   refer to message rules, all other links to the names of
+	   the shared elements, i.e. to strings.
+	**/
+	private void writeLinkObjects() throws IOException
+	{
+	    int n = links.size();
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    int offset = 0;
+	    out.writeInt(offset);
+	    for (int i = 0; i < n; i++) {
+		offset += link(i).getLinkObjects().size();
+		out.writeInt(offset);
+	    }
+	    for (int i = 0; i < n; i++) {
+		WorkspaceLink l = link(i);
+		Vector linkObjects = l.getLinkObjects();
+		for (int j = 0; j < linkObjects.size(); j++) {
+		    Object o = linkObjects.elementAt(j);
+		    if (l.type == WorkspaceLink.MESSAGERULE)
+			out.writeInt(id(o));
+		    else
+			out.writeInt(string((String) o));
+		}
+	    }
+	    out.close();
+	    sections[LINK_OBJECTS] = bytes.toByteArray();
+	}
+
+
+	/**
+	   Writes a link table: for each owning entity, the ids of the
+	   entities in its list, as offsets into a single id column.
+	**/
+	private void writeLists(int section, Vector[] lists)
+	    throws IOException
+	{
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(lists.length);
+	    int offset = 0;
+	    out.writeInt(offset);
+	    for (int i = 0; i < lists.length; i++) {
+		offset += lists[i].size();
+		out.writeInt(offset);
+	    }
+	    for (int i = 0; i < lists.length; i++)
+		for (int j = 0; j < lists[i].size(); j++)
+		    out.writeInt(id(lists[i].elementAt(j)));
+	    out.close();
+	    sections[section] = bytes.toByteArray();
+	}
+
+
+	/**
+	   Writes the string table: the byte offset of each string,
+	   followed by the UTF-8 encoded strings themselves.
+	**/
+	private void writeStrings() throws IOException
+	{
+	    int n = strings.size();
+	    ByteArrayOutputStream data = new ByteArrayOutputStream();
+	    int[] offsets = new int[n + 1];
+	    for (int i = 0; i < n; i++) {
+		byte[] utf = ((String) strings.elementAt(i)).
+		    getBytes("UTF-8");
+		data.write(utf);
+		offsets[i + 1] = offsets[i] + utf.length;
+	    }
+
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(bytes);
+	    out.writeInt(n);
+	    for (int i = 0; i <= n; i++)
+		out.writeInt(offsets[i]);
+	    data.writeTo(out);
+	    out.close();
+	    sections[STRINGS] = bytes.toByteArray();
+	}
+    }
+
+
+    /**
+       Rebuilds the entities of a snapshot from its sections, and
+       later loads the deferred parts on demand. Eagerly read sections
+       are read sequentially; deferred ones are read by absolute
+       position, so that loading them doesn't depend on the buffer's
+       position.
+    **/
+    private static class Reader implements SnapshotLoader
+    {
+	private ByteBuffer buf;
+	private int[] sectionOffsets = new int[MAX_SECTION + 1];
+
+	// strings and messages are decoded when first needed
+	private String[] strings;
+	private Message[] messages;
+
+	private WorkspaceNode[] nodes;
+	private Role[] roles;
+	private Participant[] participants;
+	private WorkspaceObject[] objects;
+	private MessageType[] messageTypes;
+	private MessageRule[] messageRules;
+	private WorkspaceLink[] links;
+
+
+	Reader(ByteBuffer buf) throws IOException
+	{
+	    this.buf = buf;
+	    if (buf.getInt() != MAGIC)
+		throw new IOException("not a workspace snapshot");
+	    int version = buf.getInt();
+	    if (version > VERSION)
+		throw new IOException("unsupported snapshot version " +
+				      version);
+	    for (int i = 0; i < sectionOffsets.length; i++)
+		sectionOffsets[i] = -1;
+	    int count = buf.getInt();
+	    for (int i = 0; i < count; i++) {
+		int section = buf.getInt();
+		long offset = buf.getLong();
+		buf.getLong();  // length
+		// skip sections added by later versions
+		if (section > 0 && section <= MAX_SECTION)
+		    sectionOffsets[section] = (int) offset;
+	    }
+	}
+
+
+	WorkspaceNode read() throws IOException
+	{
+	    strings = new String[size(STRINGS)];
+	    messages = new Message[size(MESSAGES)];
+	    for (int s = NODE_CHILDREN; s <= MAX_SECTION; s++)
+		offset(s);
+
+	    readNodes();
+	    readRoles();
+	    readParticipants();
+	    readObjects();
+	    readMessageTypes();
+	    readMessageRules();
+	    readLinks();
+
+	    for (int s = NODE_CHILDREN; s <= NODE_LINKS; s++) {
+		Object[] entities;
+		if (s == NODE_SENT_MESSAGES || s == NODE_RECEIVED_MESSAGES)
+		    continue;
+		else if (s == NODE_CHILDREN)
+		    entities = nodes;
+		else if (s == NODE_ROLES)
+		    entities = roles;
+		else if (s == NODE_PARTICIPANTS)
+		    entities = participants;
+		else if (s == NODE_MESSAGE_TYPES)
+		    entities = messageTypes;
+		else if (s == NODE_SRC_MESSAGE_RULES ||
+			 s == NODE_TARGET_MESSAGE_RULES)
+		    entities = messageRules;
+		else if (s == NODE_LINKS)
+		    entities = links;
+		else
+		    entities = objects;
+
+		Vector[] lists = new Vector[nodes.length];
+		for (int i = 0; i < nodes.length; i++)
+		    lists[i] = nodeList(nodes[i], s);
+		readLists(s, lists, entities);
+	    }
+
+	    Vector[] roleParticipants = new Vector[roles.length];
+	    for (int i = 0; i < roles.length; i++)
+		roleParticipants[i] = roles[i].participants;
+	    readLists(ROLE_PARTICIPANTS, roleParticipants, participants);
+
+	    Vector[] objectRoles = new Vector[objects.length];
+	    for (int i = 0; i < objects.length; i++)
+		objectRoles[i] = objects[i].assignedRoles;
+	    readLists(OBJECT_ROLES, objectRoles, roles);
+
+	    // defer everything else
+	    for (int i = 0; i < nodes.length; i++) {
+		int sent = listSize(NODE_SENT_MESSAGES, i);
+		int received = listSize(NODE_RECEIVED_MESSAGES, i);
+		if (sent > 0 || received > 0)
+		    nodes[i].deferMessages(this, i, sent, received);
+	    }
+	    for (int i = 0; i < roles.length; i++) {
+		int count = listSize(ROLE_OBJECTS, i);
+		if (count > 0) {
+		    roles[i].loader = this;
+		    roles[i].snapshotId = i;
+		    roles[i].assignedObjectCount = count;
+		}
+	    }
+	    // the roles were added to the nodes' vectors directly
+	    for (int i = 0; i < nodes.length; i++)
+		nodes[i].recalculateRoleDensities();
+	    for (int i = 0; i < links.length; i++) {
+		if (listSize(LINK_OBJECTS, i) > 0) {
+		    links[i].loader = this;
+		    links[i].loaderId = i;
+		}
+	    }
+
+	    return (nodes.length > 0) ? nodes[0] : null;
+	}
+
+
+	public synchronized void loadAssignedObjects(int role,
+						     Vector objects)
+	{
+	    int start = listStart(ROLE_OBJECTS, role);
+	    int end = listStart(ROLE_OBJECTS, role + 1);
+	    for (int j = start; j < end; j++)
+		objects.addElement(entity(this.objects,
+					  listEntry(ROLE_OBJECTS, j)));
+	}
+
+
+	/**
+	   Message rule links refer to message rules, all other links
+	   to the names of the shared elements, i.e. to strings.
+	**/
+	public synchronized void loadLinkObjects(int link, Vector objects)
+	{
+	    boolean rules = (links[link].type == WorkspaceLink.MESSAGERULE);
+	    int start = listStart(LINK_OBJECTS, link);
+	    int end = listStart(LINK_OBJECTS, link + 1);
+	    for (int j = start; j < end; j++) {
+		int id = listEntry(LINK_OBJECTS, j);
+		if (rules)
+		    objects.addElement(entity(messageRules, id));
+		else
+		    objects.addElement(string(id));
+	    }
+	}
+
+
+	public synchronized void loadMessages(int node, Vector sent,
+					      Vector received)
+	{
+	    int start = listStart(NODE_SENT_MESSAGES, node);
+	    int end = listStart(NODE_SENT_MESSAGES, node + 1);
+	    for (int j = start; j < end; j++)
+		sent.addElement(message(listEntry(NODE_SENT_MESSAGES, j)));
+
+	    start = listStart(NODE_RECEIVED_MESSAGES, node);
+	    end = listStart(NODE_RECEIVED_MESSAGES, node + 1);
+	    for (int j = start; j < end; j++)
+		received.addElement(message(listEntry(NODE_RECEIVED_MESSAGES,
+						      j)));
+	}
+
+
+	private int offset(int section) throws IOException
+	{
+	    if (sectionOffsets[section] < 0)
+		throw new IOException("snapshot section " + section +
+				      " missing");
+	    return sectionOffsets[section];
+	}
+
+
+	private int size(int section) throws IOException
+	{
+	    return buf.getInt(offset(section));
+	}
+
+
+	/**
+	   Positions the buffer at the start of the given section and
+	   returns the number of entries in it.
+	**/
+	private int section(int section) throws IOException
+	{
+	    buf.position(offset(section));
+	    return buf.getInt();
+	}
+
+
+	// A link table holds the number of owners n, then n + 1
+	// offsets, then the entries.
+
+	private int listStart(int section, int owner)
+	{
+	    return buf.getInt(sectionOffsets[section] + 4 + 4 * owner);
+	}
+
+
+	private int listSize(int section, int owner)
+	{
+	    return listStart(section, owner + 1) - listStart(section, owner);
+	}
+
+
+	private int listEntry(int section, int entry)
+	{
+	    int base = sectionOffsets[section];
+	    int n = buf.getInt(base);
+	    return buf.getInt(base + 4 + 4 * (n + 1) + 4 * entry);
+	}
+
+
+	private String string(int id)
+	{
+	    if (id < 0)
+		return null;
+	    if (strings[id] == null) {
+		int base = sectionOffsets[STRINGS];
+		int n = strings.length;
+		int start = buf.getInt(base + 4 + 4 * id);
+		int end = buf.getInt(base + 4 + 4 * (id + 1));
+		byte[] utf = new byte[end - start];
+		ByteBuffer b = buf.duplicate();
+		b.position(base + 4 + 4 * (n + 1) + start);
+		b.get(utf);
+		try {
+		    strings[id] = new String(utf, "UTF-8");
+		}
+		catch (UnsupportedEncodingException ex) {
+		    throw new RuntimeException(ex.getMessage());
+		}
+	    }
+	    return strings[id];
+	}
+
+
+	/**
+	   Returns the message with the given id, reading its columns
+	   from the messages section if it hasn't been read yet.
+	**/
+	private Message message(int id)
+	{
+	    if (id < 0)
+		return null;
+	    if (messages[id] == null) {
+		int n = messages.length;
+		int p = sectionOffsets[MESSAGES] + 4;
+		messages[id] = new Message(
+		    string(buf.getInt(p + 4 * id)),
+		    string(buf.getInt(p + 4 * n + 4 * id)),
+		    toDateTime(buf.getLong(p + 8 * n + 8 * id)),
+		    (WorkspaceNode)
+		    entity(nodes, buf.getInt(p + 16 * n + 4 * id)),
+		    (MessageType)
+		    entity(messageTypes, buf.getInt(p + 20 * n + 4 * id)),
+		    (WorkspaceNode)
+		    entity(nodes, buf.getInt(p + 24 * n + 4 * id)),
+		    (MessageType)
+		    entity(messageTypes, buf.getInt(p + 28 * n + 4 * id)),
+		    (Role) entity(roles, buf.getInt(p + 32 * n + 4 * id)));
+	    }
+	    return messages[id];
+	}
+
+
+	private int[] ints(int n)
+	{
+	    int[] column = new int[n];
+	    for (int i = 0; i < n; i++)
+		column[i] = buf.getInt();
+	    return column;
+	}
+
+
+	private String[] strings(int n)
+	{
+	    int[] ids = ints(n);
+	    String[] column = new String[n];
+	    for (int i = 0; i < n; i++)
+		column[i] = string(ids[i]);
+	    return column;
+	}
+
+
+	private DateTime[] dateTimes(int n)
+	{
+	    DateTime[] column = new DateTime[n];
+	    for (int i = 0; i < n; i++)
+		column[i] = toDateTime(buf.getLong());
+	    return column;
+	}
+
+
+	private Object entity(Object[] entities, int id)
+	{
+	    return (id < 0) ? null : entities[id];
+	}
+
+
+	private void readNodes() throws IOException
+	{
+	    int n = section(NODES);
+	    String[] workspace = strings(n);
+	    String[] owner = strings(n);
+	    String[] name = strings(n);
+	    String[] goal = strings(n);
+	    String[] workgroup = strings(n);
+	    DateTime[] created = dateTimes(n);
+	    int[] parent = ints(n);
+
+	    nodes = new WorkspaceNode[n];
+	    for (int i = 0; i < n; i++) {
+		int flags = buf.get();
+		if ((flags & SPECIAL) != 0)
+		    nodes[i] = new WorkspaceNode(name[i], true);
+		else {
+		    nodes[i] = new WorkspaceNode(workspace[i], owner[i]);
+		    nodes[i].restore(created[i], goal[i], workgroup[i]);
+		    if ((flags & LONG_NAME) != 0)
+			nodes[i].setLongDisplayName();
+		}
+		nodes[i].fixed = (flags & FIXED) != 0;
+		nodes[i].visible = (flags & VISIBLE) != 0;
+		nodes[i].focus = (flags & FOCUS) != 0;
+	    }
+	    for (int i = 0; i < n; i++)
+		nodes[i].setParent((WorkspaceNode) entity(nodes, parent[i]));
+	    for (int i = 0; i < n; i++)
+		nodes[i].x = buf.getDouble();
+	    for (int i = 0; i < n; i++)
+		nodes[i].y = buf.getDouble();
+
+	    int[] absDensity = ints(n);
+	    int[] evolutionObjects = ints(n);
+	    float[] evolutionWeeks = new float[n];
+	    for (int i = 0; i < n; i++)
+		evolutionWeeks[i] = buf.getFloat();
+	    float[] evolutionRecency = new float[n];
+	    for (int i = 0; i < n; i++)
+		evolutionRecency[i] = buf.getFloat();
+	    for (int i = 0; i < n; i++)
+		nodes[i].restoreMeasures(absDensity[i], evolutionObjects[i],
+					 evolutionWeeks[i],
+					 evolutionRecency[i],
+					 buf.getFloat());
+	}
+
+
+	private void readRoles() throws IOException
+	{
+	    int n = section(ROLES);
+	    int[] workspace = ints(n);
+	    String[] name = strings(n);
+	    DateTime[] created = dateTimes(n);
+
+	    roles = new Role[n];
+	    for (int i = 0; i < n; i++)
+		roles[i] = new Role((WorkspaceNode)
+				    entity(nodes, workspace[i]),
+				    name[i], created[i]);
+	}
+
+
+	private void readParticipants() throws IOException
+	{
+	    int n = section(PARTICIPANTS);
+	    int[] workspace = ints(n);
+	    String[] name = strings(n);
+	    int[] role = ints(n);
+	    DateTime[] created = dateTimes(n);
+
+	    participants = new Participant[n];
+	    for (int i = 0; i < n; i++)
+		participants[i] =
+		    new Participant((WorkspaceNode)
+				    entity(nodes, workspace[i]), name[i],
+				    (Role) entity(roles, role[i]),
+				    created[i]);
+	}
+
+
+	private void readObjects() throws IOException
+	{
+	    int n = section(OBJECTS);
+	    byte[] kind = new byte[n];
+	    buf.get(kind);
+	    int[] workspace = ints(n);
+	    String[] folder = strings(n);
+	    String[] name = strings(n);
+	    String[] url = strings(n);
+	    DateTime[] created = dateTimes(n);
+
+	    objects = new WorkspaceObject[n];
+	    for (int i = 0; i < n; i++) {
+		WorkspaceNode ws =
+		    (WorkspaceNode) entity(nodes, workspace[i]);
+		if (kind[i] == WorkspaceElement.DOCUMENT)
+		    objects[i] = new Document(ws, folder[i], name[i],
+					      url[i], created[i]);
+		else if (kind[i] == WorkspaceElement.DISCUSSION)
+		    objects[i] = new Discussion(ws, folder[i], name[i],
+						url[i], created[i]);
+		else
+		    objects[i] = new Action(ws, folder[i], name[i],
+					    url[i], created[i]);
+	    }
+	}
+
+
+	private void readMessageTypes() throws IOException
+	{
+	    int n = section(MESSAGE_TYPES);
+	    int[] workspace = ints(n);
+	    String[] type = strings(n);
+
+	    messageTypes = new MessageType[n];
+	    for (int i = 0; i < n; i++)
+		messageTypes[i] =
+		    new MessageType((WorkspaceNode)
+				    entity(nodes, workspace[i]), type[i]);
+	}
+
+
+	private void readMessageRules() throws IOException
+	{
+	    int n = section(MESSAGE_RULES);
+	    int[] srcWorkspace = ints(n);
+	    int[] srcType = ints(n);
+	    int[] targetWorkspace = ints(n);
+	    int[] targetType = ints(n);
+	    int[] targetRole = ints(n);
+
+	    messageRules = new MessageRule[n];
+	    for (int i = 0; i < n; i++)
+		messageRules[i] = new MessageRule(
+		    (WorkspaceNode) entity(nodes, srcWorkspace[i]),
+		    (MessageType) entity(messageTypes, srcType[i]),
+		    (WorkspaceNode) entity(nodes, targetWorkspace[i]),
+		    (MessageType) entity(messageTypes, targetType[i]),
+		    (Role) entity(roles, targetRole[i]));
+	}
+
+
+	private void readLinks() throws IOException
+	{
+	    int n = section(LINKS);
+	    int[] from = ints(n);
+	    int[] to = ints(n);
+	    byte[] type = new byte[n];
+	    buf.get(type);
+	    byte[] arrowMode = new byte[n];
+	    buf.get(arrowMode);
+	    int[] weight = ints(n);
+	    byte[] visible = new byte[n];
+	    buf.get(visible);
+
+	    links = new WorkspaceLink[n];
+	    for (int i = 0; i < n; i++) {
+		links[i] = new WorkspaceLink((WorkspaceNode)
+					     entity(nodes, from[i]),
+					     (WorkspaceNode)
+					     entity(nodes, to[i]),
+					     type[i], arrowMode[i],
+					     weight[i], 0);
+		links[i].visible = (visible[i] != 0);
+	    }
+	    for (int i = 0; i < n; i++)
+		links[i].length = buf.getDouble();
+	}
+
+
+	private void readLists(int section, Vector[] lists,
+			       Object[] entities)
+	    throws IOException
+	{
+	    int n = section(section);
+	    int[] offsets = ints(n + 1);
+	    for (int i = 0; i < n; i++)
+		for (int j = offsets[i]; j < offsets[i + 1]; j++)
+		    lists[i].addElement(entity(entities, buf.getInt()));
+	}
+    }
+}